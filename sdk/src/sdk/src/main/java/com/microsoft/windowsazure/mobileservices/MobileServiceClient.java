@@ -43,7 +43,6 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.google.gson.JsonSerializer;
 import com.google.gson.annotations.SerializedName;
 import com.microsoft.windowsazure.mobileservices.authentication.CustomTabsLoginManager;
@@ -81,6 +80,10 @@ import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Entry point for Microsoft Azure Mobile app interactions
@@ -102,6 +105,19 @@ public class MobileServiceClient {
      * Custom API Url
      */
     private static final String CUSTOM_API_URL = "api/";
+    /**
+     * Number of threads of the default executor of sync calls
+     */
+    private static final int DEFAULT_SYNC_THREADS = 4;
+    /**
+     * Number of threads of the default executor of network sync calls
+     */
+    private static final int DEFAULT_SYNC_NETWORK_THREADS = 4;
+    /**
+     * Time after which an idle thread of the default executors of sync calls
+     * ends, in seconds
+     */
+    private static final long DEFAULT_SYNC_THREAD_KEEP_ALIVE = 30;
 
     /**
      * Chrome Custom Tabs Login methods
@@ -144,6 +160,14 @@ public class MobileServiceClient {
      * MobileServicePush used for push notifications
      */
     private MobileServicePush mPush;
+    /**
+     * Executor of the local sync table calls, created on first use
+     */
+    private Executor mSyncExecutor;
+    /**
+     * Executor of the sync calls that reach the server, created on first use
+     */
+    private Executor mSyncNetworkExecutor;
 
     /*
     *  prefix for login endpoints. If not set defaults to /.auth/login
@@ -241,6 +265,9 @@ public class MobileServiceClient {
     private MobileServiceClient(MobileServiceClient client) {
         initialize(client.getAppUrl(), client.getCurrentUser(), client.getGsonBuilder(), client.getContext(),
                 client.getOkHttpClientFactory(), client.getLoginUriPrefix(), client.getAlternateLoginHost());
+
+        mSyncExecutor = client.getSyncExecutor();
+        mSyncNetworkExecutor = client.getSyncNetworkExecutor();
     }
 
     /**
@@ -1392,32 +1419,15 @@ public class MobileServiceClient {
             features.add(MobileServiceFeatures.AdditionalQueryParameters);
         }
 
-        final SettableFuture<JsonElement> future = SettableFuture.create();
-        ListenableFuture<ServiceFilterResponse> internalFuture = invokeApiInternal(apiName, content, httpMethod, requestHeaders, parameters, features);
-
-        Futures.addCallback(internalFuture, new FutureCallback<ServiceFilterResponse>() {
-            @Override
-            public void onFailure(Throwable e) {
-                future.setException(e);
-            }
-
-            @Override
-            public void onSuccess(ServiceFilterResponse response) {
-
-                String content = response.getContent();
-
-                if (content == null) {
-                    future.set(null);
-
-                    return;
-                }
-
-                JsonElement json = new JsonParser().parse(content);
-                future.set(json);
-            }
-        }, MoreExecutors.directExecutor());
+        if (apiName == null || apiName.trim().equals("")) {
+            SettableFuture<JsonElement> future = SettableFuture.create();
+            future.setException(new IllegalArgumentException("apiName cannot be null"));
+            return future;
+        }
 
-        return future;
+        // The JSON response is parsed while it is streamed, without buffering it
+        MobileServiceHttpClient httpClient = new MobileServiceHttpClient(this);
+        return httpClient.requestJson(CUSTOM_API_URL + apiName, content, httpMethod, requestHeaders, parameters, features);
     }
 
     /**
@@ -1722,12 +1732,96 @@ public class MobileServiceClient {
     }
 
     /**
-     * Sets the AndroidHttpClientFactory
+     * Sets the AndroidHttpClientFactory. The factory is shared by tables, custom
+     * APIs, login and push, so it should return the same OkHttpClient for every
+     * request to reuse pooled connections
      */
     public void setAndroidHttpClientFactory(OkHttpClientFactory mOkHttpClientFactory) {
         this.mOkHttpClientFactory = mOkHttpClientFactory;
     }
 
+    /**
+     * Gets the Executor that runs the local calls of sync tables, such as
+     * insert, lookUp, read, update, delete and purge. By default, the calls
+     * run on a pool of 4 threads, shared with the clients created by
+     * withFilter, and wait in line when all the threads are busy. Pulls and
+     * pushes run on the network executor instead, so that they do not hold
+     * up the local calls.
+     *
+     * @return the Executor of local sync calls
+     */
+    public synchronized Executor getSyncExecutor() {
+        if (mSyncExecutor == null) {
+            // idle threads end after a while, so the pool costs nothing between calls
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_SYNC_THREADS, DEFAULT_SYNC_THREADS, DEFAULT_SYNC_THREAD_KEEP_ALIVE,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+            executor.allowCoreThreadTimeOut(true);
+
+            mSyncExecutor = executor;
+        }
+
+        return mSyncExecutor;
+    }
+
+    /**
+     * Sets the Executor that runs the local calls of sync tables, such as
+     * insert, lookUp, read, update, delete and purge. A direct executor runs
+     * each call on the calling thread, which suits callers that are already
+     * off the main thread. Calls must not wait for other sync calls on a
+     * thread of the Executor, since the pending calls may need that thread.
+     *
+     * @param executor the Executor of local sync calls
+     */
+    public synchronized void setSyncExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor cannot be null");
+        }
+
+        mSyncExecutor = executor;
+    }
+
+    /**
+     * Gets the Executor that runs the sync calls that reach the server: the
+     * pulls, pushes and initialize of the sync context and the pulls of sync
+     * tables. It also runs the table workers of pullAll and the partition
+     * workers of partitioned pulls. By default, the calls run on a pool of 4
+     * threads, shared with the clients created by withFilter, and wait in
+     * line when all the threads are busy.
+     *
+     * @return the Executor of network sync calls
+     */
+    public synchronized Executor getSyncNetworkExecutor() {
+        if (mSyncNetworkExecutor == null) {
+            // idle threads end after a while, so the pool costs nothing between calls
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_SYNC_NETWORK_THREADS, DEFAULT_SYNC_NETWORK_THREADS,
+                    DEFAULT_SYNC_THREAD_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+            executor.allowCoreThreadTimeOut(true);
+
+            mSyncNetworkExecutor = executor;
+        }
+
+        return mSyncNetworkExecutor;
+    }
+
+    /**
+     * Sets the Executor that runs the sync calls that reach the server, such
+     * as pull, push and initialize, and the workers of pullAll and of
+     * partitioned pulls. The Executor can have any number of threads: a call
+     * never waits for a task it started on the Executor before the task
+     * starts, a partitioned pull works through its partitions on its own
+     * thread while the other workers wait in line. With a direct executor,
+     * each call runs on the calling thread.
+     *
+     * @param executor the Executor of network sync calls
+     */
+    public synchronized void setSyncNetworkExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor cannot be null");
+        }
+
+        mSyncNetworkExecutor = executor;
+    }
+
     /**
      * Gets the MobileServicePush used for push notifications
      */
@@ -0,0 +1,44 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * JsonResponseReader.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Reads a JSON response while it is streamed
+ *
+ * @param <T> The type of the result
+ */
+public interface JsonResponseReader<T> {
+    /**
+     * Reads the response content. Invoked on a background thread
+     *
+     * @param reader   The reader positioned at the start of the content, or null
+     *                 if the response has no content
+     * @param response The response being read
+     * @return The result
+     * @throws Exception
+     */
+    public T read(JsonReader reader, ServiceFilterResponse response) throws Exception;
+}
@@ -28,7 +28,9 @@ import android.util.Pair;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.JsonElement;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.MobileServiceFeatures;
 
 import java.io.UnsupportedEncodingException;
@@ -125,16 +127,108 @@ public class MobileServiceHttpClient {
                                                            EnumSet<MobileServiceFeatures> features) {
         final SettableFuture<ServiceFilterResponse> future = SettableFuture.create();
 
-        if (path == null || path.trim().equals("")) {
-            future.setException(new IllegalArgumentException("request path cannot be null"));
+        ServiceFilterRequestImpl request;
+
+        try {
+            request = createRequest(path, content, httpMethod, requestHeaders, parameters, features);
+        } catch (IllegalArgumentException e) {
+            future.setException(e);
             return future;
         }
 
-        if (httpMethod == null || httpMethod.trim().equals("")) {
-            future.setException(new IllegalArgumentException("httpMethod cannot be null"));
+        MobileServiceConnection conn = mClient.createConnection();
+
+        new RequestAsyncTask(request, conn) {
+            @Override
+            protected void onPostExecute(ServiceFilterResponse response) {
+                if (mTaskException != null) {
+                    future.setException(mTaskException);
+                } else {
+                    future.set(response);
+                }
+            }
+        }.executeTask();
+
+        return future;
+    }
+
+    /**
+     * Makes a request over HTTP and parses the JSON response. The response
+     * body is streamed into the parser on the background thread instead of
+     * being buffered first
+     *
+     * @param path           The path of the request URI
+     * @param content        The byte array to send as the request body
+     * @param httpMethod     The HTTP Method used to invoke the API
+     * @param requestHeaders The extra headers to send in the request
+     * @param parameters     The query string parameters sent in the request
+     * @param features       The features used in the request
+     */
+    public ListenableFuture<JsonElement> requestJson(String path, byte[] content, String httpMethod,
+                                                     List<Pair<String, String>> requestHeaders, List<Pair<String, String>> parameters,
+                                                     EnumSet<MobileServiceFeatures> features) {
+        final SettableFuture<JsonElement> future = SettableFuture.create();
+
+        ServiceFilterRequestImpl request;
+
+        try {
+            request = createRequest(path, content, httpMethod, requestHeaders, parameters, features);
+        } catch (IllegalArgumentException e) {
+            future.setException(e);
             return future;
         }
 
+        request.setStreamResponse(true);
+
+        MobileServiceConnection conn = mClient.createConnection();
+
+        new RequestAsyncTask(request, conn) {
+            private JsonElement mResult;
+
+            @Override
+            protected void onResponseReceived(ServiceFilterResponse response) throws Exception {
+                try {
+                    mResult = ServiceFilterResponseImpl.readJsonContent(response);
+                } catch (Exception e) {
+                    throw new MobileServiceException("Error while retrieving data from response.", e, response);
+                }
+            }
+
+            @Override
+            protected void onPostExecute(ServiceFilterResponse response) {
+                if (mTaskException != null) {
+                    future.setException(mTaskException);
+                } else {
+                    future.set(mResult);
+                }
+            }
+        }.executeTask();
+
+        return future;
+    }
+
+    /**
+     * Creates the request to send over HTTP
+     *
+     * @param path           The path of the request URI
+     * @param content        The byte array to send as the request body
+     * @param httpMethod     The HTTP Method used to invoke the API
+     * @param requestHeaders The extra headers to send in the request
+     * @param parameters     The query string parameters sent in the request
+     * @param features       The features used in the request
+     * @throws IllegalArgumentException if the path or method are not valid
+     */
+    private ServiceFilterRequestImpl createRequest(String path, byte[] content, String httpMethod,
+                                                   List<Pair<String, String>> requestHeaders, List<Pair<String, String>> parameters,
+                                                   EnumSet<MobileServiceFeatures> features) {
+        if (path == null || path.trim().equals("")) {
+            throw new IllegalArgumentException("request path cannot be null");
+        }
+
+        if (httpMethod == null || httpMethod.trim().equals("")) {
+            throw new IllegalArgumentException("httpMethod cannot be null");
+        }
+
         Uri.Builder uriBuilder = Uri.parse(mClient.getAppUrl().toString()).buildUpon();
         uriBuilder.path(path);
 
@@ -159,8 +253,7 @@ public class MobileServiceHttpClient {
         } else if (httpMethod.equalsIgnoreCase(HttpConstants.DeleteMethod)) {
             request = ServiceFilterRequestImpl.delete(mClient.getOkHttpClientFactory(), url, content);
         } else {
-            future.setException(new IllegalArgumentException("httpMethod not supported"));
-            return future;
+            throw new IllegalArgumentException("httpMethod not supported");
         }
 
         String featuresHeader = MobileServiceFeatures.featuresToString(features);
@@ -190,19 +283,6 @@ public class MobileServiceHttpClient {
             }
         }
 
-        MobileServiceConnection conn = mClient.createConnection();
-
-        new RequestAsyncTask(request, conn) {
-            @Override
-            protected void onPostExecute(ServiceFilterResponse response) {
-                if (mTaskException != null) {
-                    future.setException(mTaskException);
-                } else {
-                    future.set(response);
-                }
-            }
-        }.executeTask();
-
-        return future;
+        return request;
     }
-}
+}
\ No newline at end of file
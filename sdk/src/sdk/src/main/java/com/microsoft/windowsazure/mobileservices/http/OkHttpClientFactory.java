@@ -31,9 +31,11 @@ import okhttp3.OkHttpClient;
 public interface OkHttpClientFactory {
 
     /**
-     * Creates a new AndroidHttpClient
+     * Gets the OkHttpClient used to execute a request. This method is invoked
+     * once per request, so implementations should return a shared instance
+     * to reuse pooled connections
      *
-     * @return A new AndroidHttpClient
+     * @return An OkHttpClient
      */
     public OkHttpClient createOkHttpClient();
 }
\ No newline at end of file
@@ -23,26 +23,127 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices.http;
 
+import okhttp3.ConnectionPool;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.Response;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Default implementation for OkHttpClientFactory
+ * Default implementation for OkHttpClientFactory.
+ * A single OkHttpClient is created lazily and shared by every request, so
+ * connections, the dispatcher and the TLS session cache are reused
  */
 public class OkHttpClientFactoryImpl implements OkHttpClientFactory {
 
+    /**
+     * Default maximum number of idle connections kept in the pool
+     */
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+
+    /**
+     * Default time an idle connection is kept alive, in seconds
+     */
+    public static final long DEFAULT_KEEP_ALIVE_DURATION_SECONDS = 300;
+
+    private final int mMaxIdleConnections;
+
+    private final long mKeepAliveDuration;
+
+    private final TimeUnit mKeepAliveTimeUnit;
+
+    private final boolean mHttp2Enabled;
+
+    /**
+     * The shared client, created on first use
+     */
+    private volatile OkHttpClient mOkHttpClient;
+
+    /**
+     * Constructor using the default connection pool settings and HTTP/2 enabled
+     */
+    public OkHttpClientFactoryImpl() {
+        this(DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_KEEP_ALIVE_DURATION_SECONDS, TimeUnit.SECONDS, true);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxIdleConnections The maximum number of idle connections kept in the pool
+     * @param keepAliveDuration  The time an idle connection is kept before being evicted
+     * @param timeUnit           The unit of keepAliveDuration
+     * @param http2Enabled       True to negotiate HTTP/2 when the server supports it,
+     *                           false to use HTTP/1.1 only
+     */
+    public OkHttpClientFactoryImpl(int maxIdleConnections, long keepAliveDuration, TimeUnit timeUnit, boolean http2Enabled) {
+        if (maxIdleConnections < 0) {
+            throw new IllegalArgumentException("maxIdleConnections cannot be negative");
+        }
+
+        if (keepAliveDuration <= 0) {
+            throw new IllegalArgumentException("keepAliveDuration must be greater than zero");
+        }
+
+        if (timeUnit == null) {
+            throw new IllegalArgumentException("timeUnit cannot be null");
+        }
+
+        mMaxIdleConnections = maxIdleConnections;
+        mKeepAliveDuration = keepAliveDuration;
+        mKeepAliveTimeUnit = timeUnit;
+        mHttp2Enabled = http2Enabled;
+    }
+
     @Override
     public OkHttpClient createOkHttpClient() {
+        OkHttpClient okClient = mOkHttpClient;
 
-        OkHttpClient okClient = new OkHttpClient();
-        //okClient.networkInterceptors().add(new UserAgentInterceptor(MobileServiceConnection.getUserAgent()));
+        if (okClient == null) {
+            synchronized (this) {
+                okClient = mOkHttpClient;
+
+                if (okClient == null) {
+                    okClient = buildOkHttpClient();
+                    mOkHttpClient = okClient;
+                }
+            }
+        }
 
         return okClient;
     }
 
+    /**
+     * Evicts all idle connections from the shared connection pool.
+     * In-flight requests are not affected
+     */
+    public void evictIdleConnections() {
+        OkHttpClient okClient = mOkHttpClient;
+
+        if (okClient != null) {
+            okClient.connectionPool().evictAll();
+        }
+    }
+
+    private OkHttpClient buildOkHttpClient() {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(mMaxIdleConnections, mKeepAliveDuration, mKeepAliveTimeUnit));
+
+        if (mHttp2Enabled) {
+            builder.protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        } else {
+            builder.protocols(Collections.singletonList(Protocol.HTTP_1_1));
+        }
+
+        //builder.addNetworkInterceptor(new UserAgentInterceptor(MobileServiceConnection.getUserAgent()));
+
+        return builder.build();
+    }
+
     private class UserAgentInterceptor implements Interceptor {
 
         private final String userAgent;
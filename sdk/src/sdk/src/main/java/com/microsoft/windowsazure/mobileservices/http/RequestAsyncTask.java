@@ -70,15 +70,29 @@ public abstract class RequestAsyncTask extends AsyncTask<Void, Void, ServiceFilt
         }
     }
 
+    /**
+     * Invoked on the background thread when the response is received, before
+     * onPostExecute. Subclasses can override it to read streamed content off
+     * the UI thread
+     *
+     * @param response The received response
+     * @throws Exception
+     */
+    protected void onResponseReceived(ServiceFilterResponse response) throws Exception {
+    }
+
     @Override
     protected ServiceFilterResponse doInBackground(Void... params) {
         // Call start method that executes the request
         ServiceFilterResponse response = null;
         try {
             response = mConnection.start(mRequest).get();
+            onResponseReceived(response);
             return response;
         } catch (Exception e) {
-            if (e.getCause() instanceof MobileServiceException) {
+            if (e instanceof MobileServiceException) {
+                mTaskException = (MobileServiceException) e;
+            } else if (e.getCause() instanceof MobileServiceException) {
                 mTaskException = (MobileServiceException) e.getCause();
             } else {
                 mTaskException = new MobileServiceException(e);
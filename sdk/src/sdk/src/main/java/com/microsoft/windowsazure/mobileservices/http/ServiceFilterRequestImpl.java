@@ -55,6 +55,11 @@ public class ServiceFilterRequestImpl implements ServiceFilterRequest {
 
     private OkHttpClientFactory mOkHttpClientFactory;
 
+    /**
+     * Indicates whether the response content is streamed instead of buffered
+     */
+    private boolean mStreamResponse;
+
     private static final MediaType JSON
             = MediaType.parse(MobileServiceConnection.JSON_CONTENTTYPE);
 
@@ -158,15 +163,34 @@ public class ServiceFilterRequestImpl implements ServiceFilterRequest {
 
     @Override
     public ServiceFilterResponse execute() throws Exception {
-        // Execute request
+        // Execute request on the client-scoped OkHttpClient, so pooled
+        // connections are reused across requests
         OkHttpClient client = mOkHttpClientFactory.createOkHttpClient();
 
         final Response response = client.newCall(mRequest).execute();
 
-        ServiceFilterResponse serviceFilterResponse = new ServiceFilterResponseImpl(response);
+        ServiceFilterResponse serviceFilterResponse = new ServiceFilterResponseImpl(response, mStreamResponse);
         return serviceFilterResponse;
     }
     
+    /**
+     * Indicates whether the response content is streamed instead of buffered
+     */
+    public boolean isStreamResponse() {
+        return mStreamResponse;
+    }
+
+    /**
+     * Sets whether the response content is streamed. A streamed response keeps
+     * the body open so it can be parsed as it arrives, and only buffers it
+     * if a filter or caller asks for the content
+     *
+     * @param streamResponse True to stream the response content
+     */
+    public void setStreamResponse(boolean streamResponse) {
+        mStreamResponse = streamResponse;
+    }
+
     @Override
     public Headers getHeaders() {
         return mRequest.headers();
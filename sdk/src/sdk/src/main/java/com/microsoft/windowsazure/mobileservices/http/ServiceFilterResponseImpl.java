@@ -23,22 +23,29 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices.http;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import okhttp3.Headers;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 import okhttp3.internal.http.StatusLine;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.util.zip.GZIPInputStream;
 
 /**
  * ServiceFilterResponse implementation
  */
-public class ServiceFilterResponseImpl implements ServiceFilterResponse {
+public class ServiceFilterResponseImpl implements ServiceFilterResponse, Closeable {
     /**
      * The original response
      */
@@ -49,6 +56,11 @@ public class ServiceFilterResponseImpl implements ServiceFilterResponse {
      */
     private byte[] mResponseContent;
 
+    /**
+     * Indicates the response body is still open and has not been read
+     */
+    private boolean mContentPending;
+
     /**
      * Constructor
      *
@@ -57,15 +69,84 @@ public class ServiceFilterResponseImpl implements ServiceFilterResponse {
      * @throws IllegalStateException
      */
     public ServiceFilterResponseImpl(Response response) throws IllegalStateException, IOException {
+        this(response, false);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param response      The request's response
+     * @param streamContent True to keep the response body open so it can be read
+     *                      through getContentStream or getJsonReader; the body
+     *                      is only buffered if getContent or getRawContent is
+     *                      invoked
+     * @throws java.io.IOException
+     * @throws IllegalStateException
+     */
+    public ServiceFilterResponseImpl(Response response, boolean streamContent) throws IllegalStateException, IOException {
         mResponse = response;
         mResponseContent = null;
+        mContentPending = false;
+
+        if (streamContent && response != null && response.body() != null) {
+            mContentPending = true;
+        } else {
+            bufferContent();
+        }
+    }
+
+    /**
+     * Reads a JSON response into a JsonElement. Streamed responses are parsed
+     * directly from the response body, without buffering it
+     *
+     * @param response The response to read
+     * @return The parsed content, or null if the response has no content
+     * @throws IOException
+     */
+    public static JsonElement readJsonContent(ServiceFilterResponse response) throws IOException {
+        JsonReader reader = createJsonReader(response);
+
+        if (reader == null) {
+            return null;
+        }
+
+        try {
+            return new JsonParser().parse(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Creates a JsonReader over a response's content. Streamed responses are
+     * read directly from the response body. The caller is responsible for
+     * closing the returned reader
+     *
+     * @param response The response to read
+     * @return The JsonReader, or null if the response has no content
+     * @throws IOException
+     */
+    public static JsonReader createJsonReader(ServiceFilterResponse response) throws IOException {
+        if (response instanceof ServiceFilterResponseImpl) {
+            return ((ServiceFilterResponseImpl) response).getJsonReader();
+        }
+
+        String content = response.getContent();
+
+        if (content == null) {
+            return null;
+        }
+
+        return new JsonReader(new StringReader(content));
+    }
 
+    private void bufferContent() throws IOException {
         try {
             // Get the response's content
             ResponseBody entity = mResponse.body();
 
             if (entity != null) {
-                InputStream instream = getUngzippedContent(response);
+                InputStream instream = getUngzippedContent(mResponse);
 
                 ByteArrayOutputStream out = new ByteArrayOutputStream();
                 byte[] buffer = new byte[1024];
@@ -81,13 +162,79 @@ public class ServiceFilterResponseImpl implements ServiceFilterResponse {
             } else {
                 mResponseContent = null;
             }
-        }finally {
-            if (response != null && response.body() != null) {
-                response.body().close();
+        } finally {
+            if (mResponse != null && mResponse.body() != null) {
+                mResponse.body().close();
             }
         }
     }
 
+    private synchronized void ensureContentBuffered() {
+        if (mContentPending) {
+            mContentPending = false;
+
+            try {
+                bufferContent();
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to read the response content", e);
+            }
+        }
+    }
+
+    /**
+     * Gets the response's content as a stream, decompressing gzip content on
+     * the fly. For a streamed response the body can only be read once, and the
+     * caller is responsible for closing the returned stream
+     *
+     * @return The content stream, or null if the response has no content
+     * @throws IOException
+     */
+    public synchronized InputStream getContentStream() throws IOException {
+        if (mContentPending) {
+            mContentPending = false;
+
+            return getUngzippedContent(mResponse);
+        }
+
+        return mResponseContent != null ? new ByteArrayInputStream(mResponseContent) : null;
+    }
+
+    /**
+     * Gets a JsonReader over the response's content. The caller is responsible
+     * for closing the returned reader
+     *
+     * @return The JsonReader, or null if the response has no content
+     * @throws IOException
+     */
+    public JsonReader getJsonReader() throws IOException {
+        InputStream contentStream = getContentStream();
+
+        if (contentStream == null) {
+            return null;
+        }
+
+        return new JsonReader(new InputStreamReader(contentStream, MobileServiceClient.UTF8_ENCODING));
+    }
+
+    /**
+     * Indicates whether the response's content is still streamed and has not
+     * been read yet
+     */
+    public synchronized boolean isContentPending() {
+        return mContentPending;
+    }
+
+    /**
+     * Releases the response body if it has not been read
+     */
+    @Override
+    public synchronized void close() {
+        if (mContentPending) {
+            mContentPending = false;
+            mResponse.body().close();
+        }
+    }
+
     @Override
     public Headers getHeaders() {
         return mResponse.headers();
@@ -95,6 +242,8 @@ public class ServiceFilterResponseImpl implements ServiceFilterResponse {
 
     @Override
     public String getContent() {
+        ensureContentBuffered();
+
         if (mResponseContent != null) {
             String responseContent = null;
             try {
@@ -109,6 +258,8 @@ public class ServiceFilterResponseImpl implements ServiceFilterResponse {
 
     @Override
     public byte[] getRawContent() {
+        ensureContentBuffered();
+
         return mResponseContent;
     }
 
@@ -35,16 +35,18 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.MobileServiceFeatures;
 import com.microsoft.windowsazure.mobileservices.http.HttpConstants;
+import com.microsoft.windowsazure.mobileservices.http.JsonResponseReader;
 import com.microsoft.windowsazure.mobileservices.http.MobileServiceConnection;
 import com.microsoft.windowsazure.mobileservices.http.MobileServiceHttpClient;
 import com.microsoft.windowsazure.mobileservices.http.RequestAsyncTask;
-import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequestImpl;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponseImpl;
 import com.microsoft.windowsazure.mobileservices.table.query.ExecutableJsonQuery;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryODataWriter;
@@ -130,23 +132,65 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
 
         String url = null;
         try {
-            String filtersUrl = QueryODataWriter.getRowFilter(query);
-            url = mClient.getAppUrl().toString() + TABLES_URL + URLEncoder.encode(mTableName, MobileServiceClient.UTF8_ENCODING);
+            url = getQueryUrl(query);
+        } catch (UnsupportedEncodingException e) {
+            future.setException(e);
+            return future;
+        }
 
-            if (filtersUrl.length() > 0) {
-                url += "?$filter=" + filtersUrl + QueryODataWriter.getRowSetModifiers(query);
-            } else {
-                String rowSetModifiers = QueryODataWriter.getRowSetModifiers(query);
+        return executeUrlQuery(url, getQueryFeatures(query));
+    }
 
-                if (rowSetModifiers.length() > 0) {
-                    url += "?" + QueryODataWriter.getRowSetModifiers(query).substring(1);
-                }
-            }
+    /**
+     * Retrieves a set of rows from the table using a query, and reads the
+     * response while it is streamed
+     *
+     * @param query          The query used to retrieve the rows
+     * @param responseReader The reader invoked on a background thread to
+     *                       consume the response content
+     */
+    public <T> ListenableFuture<T> execute(final Query query, final JsonResponseReader<T> responseReader) {
+        final SettableFuture<T> future = SettableFuture.create();
+
+        String url = null;
+        try {
+            url = getQueryUrl(query);
         } catch (UnsupportedEncodingException e) {
             future.setException(e);
             return future;
         }
 
+        return executeGetRecords(url, getQueryFeatures(query), responseReader);
+    }
+
+    /**
+     * Builds the request URL for a query
+     *
+     * @param query The query used to retrieve the rows
+     */
+    private String getQueryUrl(Query query) throws UnsupportedEncodingException {
+        String filtersUrl = QueryODataWriter.getRowFilter(query);
+        String url = mClient.getAppUrl().toString() + TABLES_URL + URLEncoder.encode(mTableName, MobileServiceClient.UTF8_ENCODING);
+
+        if (filtersUrl.length() > 0) {
+            url += "?$filter=" + filtersUrl + QueryODataWriter.getRowSetModifiers(query);
+        } else {
+            String rowSetModifiers = QueryODataWriter.getRowSetModifiers(query);
+
+            if (rowSetModifiers.length() > 0) {
+                url += "?" + QueryODataWriter.getRowSetModifiers(query).substring(1);
+            }
+        }
+
+        return url;
+    }
+
+    /**
+     * Gets the features used by a query request
+     *
+     * @param query The query used to retrieve the rows
+     */
+    private EnumSet<MobileServiceFeatures> getQueryFeatures(Query query) {
         EnumSet<MobileServiceFeatures> features = mFeatures.clone();
         if (query != null) {
             List<Pair<String, String>> userParameters = query.getUserDefinedParameters();
@@ -155,7 +199,7 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
             }
         }
 
-        return executeUrlQuery(url, features);
+        return features;
     }
 
     /**
@@ -169,6 +213,35 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
         return executeUrlQuery(nextLink, mFeatures.clone());
     }
 
+    /**
+     * Retrieves a set of rows using the Next Link Url (Continuation Token),
+     * and reads the response while it is streamed
+     *
+     * @param nextLink       The Next Link to make the request
+     * @param responseReader The reader invoked on a background thread to
+     *                       consume the response content
+     */
+    public <T> ListenableFuture<T> execute(final String nextLink, final JsonResponseReader<T> responseReader) {
+        return executeGetRecords(nextLink, mFeatures.clone(), responseReader);
+    }
+
+    /**
+     * Gets the Next Link Url (Continuation Token) sent in the Link header of
+     * a response
+     *
+     * @param headers The response headers
+     * @return The Next Link, or null if the response is the last page
+     */
+    public static String getNextLink(Headers headers) {
+        String nextLinkHeaderValue = getHeaderValue(headers, "Link");
+
+        if (nextLinkHeaderValue == null) {
+            return null;
+        }
+
+        return nextLinkHeaderValue.replace("; rel=next", "");
+    }
+
     /**
      * Make the request to the mobile service witht the query URL
      *
@@ -189,14 +262,12 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
             @Override
             public void onSuccess(Pair<JsonElement, ServiceFilterResponse> result) {
 
-                String nextLinkHeaderValue = getHeaderValue(result.second.getHeaders(), "Link");
+                String nextLink = getNextLink(result.second.getHeaders());
 
-                if (nextLinkHeaderValue != null){
+                if (nextLink != null){
 
                     JsonObject jsonResult = new JsonObject();
 
-                    String nextLink = nextLinkHeaderValue.replace("; rel=next", "");
-
                     jsonResult.addProperty("nextLink", nextLink);
                     jsonResult.add("results", result.first);
 
@@ -942,9 +1013,37 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
      * @param features The features used in this request
      */
     private ListenableFuture<Pair<JsonElement, ServiceFilterResponse>> executeGetRecords(final String url, EnumSet<MobileServiceFeatures> features) {
-        final SettableFuture<Pair<JsonElement, ServiceFilterResponse>> future = SettableFuture.create();
+        return executeGetRecords(url, features, new JsonResponseReader<Pair<JsonElement, ServiceFilterResponse>>() {
+            @Override
+            public Pair<JsonElement, ServiceFilterResponse> read(JsonReader reader, ServiceFilterResponse response) throws Exception {
+                if (reader == null) {
+                    throw new MobileServiceException("Error while retrieving data from response.", response);
+                }
+
+                // Parse the results while the content is read
+                JsonElement results = new JsonParser().parse(reader);
+
+                return Pair.create(results, response);
+            }
+        });
+    }
+
+    /**
+     * Retrieves a set of rows from using the specified URL, reading the
+     * response while it is streamed
+     *
+     * @param url            The URL used to retrieve the rows
+     * @param features       The features used in this request
+     * @param responseReader The reader invoked on a background thread to
+     *                       consume the response content
+     */
+    private <T> ListenableFuture<T> executeGetRecords(final String url, EnumSet<MobileServiceFeatures> features, final JsonResponseReader<T> responseReader) {
+        final SettableFuture<T> future = SettableFuture.create();
 
-        ServiceFilterRequest request = ServiceFilterRequestImpl.get(mClient.getOkHttpClientFactory(), url);
+        ServiceFilterRequestImpl request = ServiceFilterRequestImpl.get(mClient.getOkHttpClientFactory(), url);
+
+        // Stream the response content into the reader instead of buffering it
+        request.setStreamResponse(true);
 
         String featuresHeader = MobileServiceFeatures.featuresToString(features);
         if (featuresHeader != null) {
@@ -952,24 +1051,31 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
         }
 
         MobileServiceConnection conn = mClient.createConnection();
-        // Create AsyncTask to execute the request and parse the results
+        // Create AsyncTask to execute the request and read the results
         new RequestAsyncTask(request, conn) {
+            private T mResults;
+
+            @Override
+            protected void onResponseReceived(ServiceFilterResponse response) throws Exception {
+                JsonReader reader = ServiceFilterResponseImpl.createJsonReader(response);
+
+                try {
+                    mResults = responseReader.read(reader, response);
+                } catch (MobileServiceException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new MobileServiceException("Error while retrieving data from response.", e, response);
+                } finally {
+                    if (reader != null) {
+                        reader.close();
+                    }
+                }
+            }
+
             @Override
             protected void onPostExecute(ServiceFilterResponse response) {
                 if (mTaskException == null && response != null) {
-                    JsonElement results = null;
-
-                    try {
-                        // Parse the results using the given Entity class
-                        String content = response.getContent();
-                        JsonElement json = new JsonParser().parse(content);
-
-                        results = json;
-
-                        future.set(Pair.create(results, response));
-                    } catch (Exception e) {
-                        future.setException(new MobileServiceException("Error while retrieving data from response.", e, response));
-                    }
+                    future.set(mResults);
                 } else {
                     future.setException(mTaskException);
                 }
@@ -979,7 +1085,7 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
         return future;
     }
 
-    private String getHeaderValue(Headers headers, String headerName) {
+    private static String getHeaderValue(Headers headers, String headerName) {
 
         if (headers == null) {
             return null;
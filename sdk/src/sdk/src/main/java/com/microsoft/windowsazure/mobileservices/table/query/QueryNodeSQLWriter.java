@@ -25,8 +25,11 @@ package com.microsoft.windowsazure.mobileservices.table.query;
 
 import com.microsoft.windowsazure.mobileservices.table.serialization.DateSerializer;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Query node visitor used to generate SQL filter.
@@ -34,11 +37,44 @@ import java.util.List;
 public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
     private StringBuilder mBuilder;
 
+    private List<Object> mArguments;
+
+    private String mFullTextTableName;
+
+    private Collection<String> mFullTextColumnNames;
+
     /**
      * Constructor for QueryNodeSQLWriter
      */
     QueryNodeSQLWriter() {
+        this(null);
+    }
+
+    /**
+     * Constructor for QueryNodeSQLWriter
+     *
+     * @param arguments           the list that receives the values of the
+     *                            constants, written as numbered parameters
+     * @param fullTextTableName   the full text index table of the queried table
+     * @param fullTextColumnNames the normalized names of the columns covered by
+     *                            the full text index
+     */
+    QueryNodeSQLWriter(List<Object> arguments, String fullTextTableName, Collection<String> fullTextColumnNames) {
+        this(arguments);
+        this.mFullTextTableName = fullTextTableName;
+        this.mFullTextColumnNames = fullTextColumnNames;
+    }
+
+    /**
+     * Constructor for QueryNodeSQLWriter
+     *
+     * @param arguments the list that receives the values of the constants,
+     *                  written as numbered parameters. If null, the constants
+     *                  are written inline.
+     */
+    QueryNodeSQLWriter(List<Object> arguments) {
         this.mBuilder = new StringBuilder();
+        this.mArguments = arguments;
     }
 
     private static String getSQLOperator(UnaryOperatorNode node) {
@@ -323,6 +359,138 @@ public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
         }
     }
 
+    /**
+     * Builds a full text MATCH expression selecting a superset of the rows
+     * whose text matches the value with LIKE. The simple tokenizer splits the
+     * text on ASCII characters other than letters and digits, so only the
+     * words of the value known to start a word of the text are used: all of
+     * them for startswith, the ones after the first separator for substringof.
+     * The last word is matched as a prefix unless the value ends with a
+     * separator. Like LIKE, the tokenizer only folds the case of ASCII
+     * letters, so the other letters are kept as they are.
+     *
+     * @param value      the value matched with LIKE
+     * @param startsWith true if the value is matched at the start of the text
+     * @return the MATCH expression, or null if the full text index can not
+     * narrow the search
+     */
+    static String getFullTextMatchExpression(String value, boolean startsWith) {
+        // LIKE wildcards can stand for word characters
+        if (value == null || value.indexOf('%') != -1 || value.indexOf('_') != -1) {
+            return null;
+        }
+
+        List<String> words = new ArrayList<String>();
+        StringBuilder word = new StringBuilder();
+
+        boolean keepFirstWord = startsWith || (value.length() > 0 && isFullTextSeparator(value.charAt(0)));
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (isFullTextSeparator(c)) {
+                if (word.length() > 0) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                }
+            } else {
+                word.append(c);
+            }
+        }
+
+        boolean lastWordIsPrefix = word.length() > 0;
+
+        if (lastWordIsPrefix) {
+            words.add(word.toString());
+        }
+
+        if (!keepFirstWord && !words.isEmpty()) {
+            words.remove(0);
+        }
+
+        if (words.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder expression = new StringBuilder();
+
+        for (int i = 0; i < words.size(); i++) {
+            if (i > 0) {
+                expression.append(" ");
+            }
+
+            expression.append("\"");
+            expression.append(toAsciiLowerCase(words.get(i)));
+
+            if (lastWordIsPrefix && i == words.size() - 1) {
+                expression.append("*");
+            }
+
+            expression.append("\"");
+        }
+
+        return expression.toString();
+    }
+
+    private static String toAsciiLowerCase(String word) {
+        StringBuilder result = new StringBuilder(word.length());
+
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+
+            result.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+
+        return result.toString();
+    }
+
+    private static boolean isFullTextSeparator(char c) {
+        return c < 128 && !Character.isLetterOrDigit(c);
+    }
+
+    /**
+     * Gets the filter on the full text index that narrows a startswith or
+     * substringof call on a covered column, or null if there is none
+     */
+    private String getFullTextFilter(FunctionCallNode node) {
+        if (this.mArguments == null || this.mFullTextTableName == null || this.mFullTextColumnNames == null) {
+            return null;
+        }
+
+        FunctionCallKind kind = node.getFunctionCallKind();
+        List<QueryNode> arguments = node.getArguments();
+
+        if ((kind != FunctionCallKind.StartsWith && kind != FunctionCallKind.SubstringOf) || arguments.size() != 2) {
+            return null;
+        }
+
+        // startswith(field, value), substringof(value, field)
+        QueryNode field = kind == FunctionCallKind.StartsWith ? arguments.get(0) : arguments.get(1);
+        QueryNode value = kind == FunctionCallKind.StartsWith ? arguments.get(1) : arguments.get(0);
+
+        if (!(field instanceof FieldNode) || !(value instanceof ConstantNode) || !(((ConstantNode) value).getValue() instanceof String)) {
+            return null;
+        }
+
+        String columnName = ((FieldNode) field).getFieldName().trim().toLowerCase(Locale.getDefault());
+
+        if (!this.mFullTextColumnNames.contains(columnName)) {
+            return null;
+        }
+
+        String expression = getFullTextMatchExpression((String) ((ConstantNode) value).getValue(), kind == FunctionCallKind.StartsWith);
+
+        if (expression == null) {
+            return null;
+        }
+
+        this.mArguments.add(expression);
+
+        // rows are matched by id, as VACUUM can renumber the rowids of the table
+        return "\"id\" IN (SELECT \"" + QuerySQLWriter.FULL_TEXT_ID_COLUMN + "\" FROM \"" + this.mFullTextTableName + "\" WHERE \"" + columnName + "\" MATCH ?"
+                + this.mArguments.size() + ")";
+    }
+
     /**
      * Gets the StringBuilder with the SQL representation of the node
      */
@@ -330,9 +498,43 @@ public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
         return this.mBuilder;
     }
 
+    /**
+     * Gets the value bound to a numbered parameter for a constant, or null if
+     * the constant has to be written inline
+     */
+    private static Object getArgument(Object value) {
+        if (value instanceof String) {
+            return value;
+        } else if (value instanceof Date) {
+            return DateSerializer.serialize((Date) value);
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? 1L : 0L;
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        } else if (value instanceof Double || value instanceof Float) {
+            return ((Number) value).doubleValue();
+        }
+
+        return null;
+    }
+
     @Override
     public QueryNode visit(ConstantNode node) {
         Object value = node.getValue();
+
+        if (this.mArguments != null) {
+            Object argument = getArgument(value);
+
+            if (argument != null) {
+                // numbered, as function formats can repeat or reorder their arguments
+                this.mArguments.add(argument);
+                this.mBuilder.append("?");
+                this.mBuilder.append(this.mArguments.size());
+
+                return node;
+            }
+        }
+
         String constant = value != null ? value.toString() : "NULL";
 
         if (value instanceof String) {
@@ -404,14 +606,25 @@ public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
         for (int index = 0; index < arguments.size(); index++) {
             QueryNode argument = arguments.get(index);
 
-            QueryNodeSQLWriter internalVisitor = new QueryNodeSQLWriter();
+            QueryNodeSQLWriter internalVisitor = new QueryNodeSQLWriter(this.mArguments);
 
             argument.accept(internalVisitor);
 
             args[index] = internalVisitor.getBuilder().toString();
         }
 
-        this.mBuilder.append(String.format(format, args));
+        String fullTextFilter = getFullTextFilter(node);
+
+        if (fullTextFilter != null) {
+            // the index narrows the rows, the original condition keeps the exact semantics
+            this.mBuilder.append("(");
+            this.mBuilder.append(fullTextFilter);
+            this.mBuilder.append(" AND ");
+            this.mBuilder.append(String.format(format, args));
+            this.mBuilder.append(")");
+        } else {
+            this.mBuilder.append(String.format(format, args));
+        }
 
         return node;
     }
@@ -27,10 +27,18 @@ import android.util.Pair;
 
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
 
 public class QuerySQLWriter {
 
+    /**
+     * The column of a full text index table that holds the id of the indexed
+     * row, which identifies the row even if the table's rowids change
+     */
+    public static final String FULL_TEXT_ID_COLUMN = "__itemid";
+
     /**
      * @return the SQL string representation of the query's select clause
      */
@@ -72,6 +80,43 @@ public class QuerySQLWriter {
         return sqlWriter.getBuilder().toString();
     }
 
+    /**
+     * @param arguments the list that receives the values bound to the
+     *                  numbered parameters of the where clause
+     * @return the SQL string representation of the query's where clause, with
+     * its constants written as numbered parameters
+     */
+    public static String getWhereClause(Query query, List<Object> arguments) throws MobileServiceException {
+        QueryNodeSQLWriter sqlWriter = new QueryNodeSQLWriter(arguments);
+
+        if (query != null && query.getQueryNode() != null) {
+            query.getQueryNode().accept(sqlWriter);
+        }
+
+        return sqlWriter.getBuilder().toString();
+    }
+
+    /**
+     * @param arguments           the list that receives the values bound to
+     *                            the numbered parameters of the where clause
+     * @param fullTextTableName   the full text index table of the queried table
+     * @param fullTextColumnNames the normalized names of the columns covered by
+     *                            the full text index
+     * @return the SQL string representation of the query's where clause, with
+     * its constants written as numbered parameters and its startswith and
+     * substringof calls on covered columns narrowed by the full text index
+     */
+    public static String getWhereClause(Query query, List<Object> arguments, String fullTextTableName, Collection<String> fullTextColumnNames)
+            throws MobileServiceException {
+        QueryNodeSQLWriter sqlWriter = new QueryNodeSQLWriter(arguments, fullTextTableName, fullTextColumnNames);
+
+        if (query != null && query.getQueryNode() != null) {
+            query.getQueryNode().accept(sqlWriter);
+        }
+
+        return sqlWriter.getBuilder().toString();
+    }
+
     /**
      * @return the SQL string representation of the query's order by clause
      */
@@ -118,4 +163,30 @@ public class QuerySQLWriter {
 
         return result;
     }
+
+    /**
+     * @param arguments the list that receives the values bound to the
+     *                  numbered parameters of the limit clause
+     * @return the SQL string representation of the query's limit clause, in
+     * the form LIMIT ? OFFSET ?, or null if the query is not paged
+     */
+    public static String getLimitClause(Query query, List<Object> arguments) {
+        String result = null;
+
+        int limit = query != null ? query.getTop() : 0;
+        int offset = query != null ? (query.getSkip() >= 0 ? query.getSkip() : 0) : 0;
+
+        if (limit > 0 || offset > 0) {
+            // a negative limit returns all the rows after the offset
+            arguments.add((long) (limit > 0 ? limit : -1));
+            String limitParameter = "?" + arguments.size();
+
+            arguments.add((long) offset);
+            String offsetParameter = "?" + arguments.size();
+
+            result = "LIMIT " + limitParameter + " OFFSET " + offsetParameter;
+        }
+
+        return result;
+    }
 }
\ No newline at end of file
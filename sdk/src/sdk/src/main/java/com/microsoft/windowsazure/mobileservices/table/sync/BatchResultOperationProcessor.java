@@ -0,0 +1,159 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * BatchResultOperationProcessor.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync;
+
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceConflictExceptionJson;
+import com.microsoft.windowsazure.mobileservices.table.MobileServicePreconditionFailedExceptionJson;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.DeleteOperation;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.InsertOperation;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.RemoteTableOperationProcessor;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.UpdateOperation;
+import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServicePushBatchResult;
+
+import java.nio.charset.Charset;
+
+import okhttp3.Headers;
+import okhttp3.Protocol;
+import okhttp3.internal.http.StatusLine;
+
+/**
+ * Processes a table operation that failed in a push batch. The first visit
+ * throws the error of the batch result, as the remote table would have for the
+ * operation pushed alone, so the sync handler can resolve it. Later visits,
+ * such as a retry by the handler, send the operation to the remote table.
+ */
+class BatchResultOperationProcessor extends RemoteTableOperationProcessor {
+    private MobileServicePushBatchResult mResult;
+    private boolean mReplayed;
+    private boolean mSent;
+
+    /**
+     * Constructor for BatchResultOperationProcessor
+     *
+     * @param client the mobile service client
+     * @param item   the item sent for the operation
+     * @param result the failed result of the operation in the batch
+     */
+    BatchResultOperationProcessor(MobileServiceClient client, JsonObject item, MobileServicePushBatchResult result) {
+        super(client, item);
+        this.mResult = result;
+    }
+
+    @Override
+    public JsonObject visit(InsertOperation operation) throws Throwable {
+        replayResult();
+
+        return super.visit(operation);
+    }
+
+    @Override
+    public JsonObject visit(UpdateOperation operation) throws Throwable {
+        replayResult();
+
+        return super.visit(operation);
+    }
+
+    @Override
+    public JsonObject visit(DeleteOperation operation) throws Throwable {
+        replayResult();
+
+        return super.visit(operation);
+    }
+
+    /**
+     * @return true if the operation was sent again to the remote table
+     */
+    boolean wasSent() {
+        return this.mSent;
+    }
+
+    private void replayResult() throws Throwable {
+        if (!this.mReplayed) {
+            this.mReplayed = true;
+            throw getResultError();
+        }
+
+        this.mSent = true;
+    }
+
+    /**
+     * @return the exception the remote table throws for the status of the
+     * batch result
+     */
+    private Throwable getResultError() {
+        Integer statusCode = this.mResult.getStatusCode();
+        JsonObject serverItem = this.mResult.getServerItem();
+
+        if (statusCode == null) {
+            return new MobileServiceException(this.mResult.getErrorMessage());
+        }
+
+        MobileServiceException exception = new MobileServiceException(this.mResult.getErrorMessage(), new BatchResultResponse(statusCode, serverItem));
+
+        if (statusCode == 412) {
+            return new MobileServicePreconditionFailedExceptionJson(exception, serverItem);
+        } else if (statusCode == 409) {
+            return new MobileServiceConflictExceptionJson(exception, serverItem);
+        }
+
+        return exception;
+    }
+
+    /**
+     * The response of an operation of a batch, with the server item as content
+     */
+    private static class BatchResultResponse implements ServiceFilterResponse {
+        private StatusLine mStatus;
+        private String mContent;
+
+        private BatchResultResponse(int statusCode, JsonObject serverItem) {
+            this.mStatus = new StatusLine(Protocol.HTTP_1_1, statusCode, "");
+            this.mContent = serverItem != null ? serverItem.toString() : null;
+        }
+
+        @Override
+        public Headers getHeaders() {
+            return Headers.of();
+        }
+
+        @Override
+        public String getContent() {
+            return this.mContent;
+        }
+
+        @Override
+        public byte[] getRawContent() {
+            return this.mContent != null ? this.mContent.getBytes(Charset.forName("UTF-8")) : null;
+        }
+
+        @Override
+        public StatusLine getStatus() {
+            return this.mStatus;
+        }
+    }
+}
@@ -35,6 +35,7 @@ import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
 
 import java.util.EnumSet;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -74,7 +75,7 @@ public class MobileServiceJsonSyncTable {
         final MobileServiceJsonSyncTable thisTable = this;
         final SettableFuture<Void> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        thisTable.mClient.getSyncNetworkExecutor().execute(new Runnable() {
 
             @Override
             public void run() {
@@ -86,7 +87,48 @@ public class MobileServiceJsonSyncTable {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
+
+        return result;
+    }
+
+    /**
+     * Performs a query against the remote table and stores results, pulling
+     * partitions of the table concurrently.
+     *
+     * @param query          an optional query to filter results
+     * @param queryId        an optional query id, to pull incrementally. Each
+     *                       partition keeps its own watermark.
+     * @param partitions     the partition filters, see {@link com.microsoft.windowsazure.mobileservices.table.sync.pull.PullPartitions}
+     * @param maxConcurrency the maximum number of partitions pulled at the
+     *                       same time
+     * @return A ListenableFuture that is done when results have been pulled.
+     */
+    public ListenableFuture<Void> pull(final Query query, final String queryId, final List<Query> partitions, final int maxConcurrency) {
+        if (partitions == null || partitions.isEmpty()) {
+            throw new IllegalArgumentException("At least one partition is required.");
+        }
+
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Pull concurrency must be greater than 0.");
+        }
+
+        final MobileServiceJsonSyncTable thisTable = this;
+        final SettableFuture<Void> result = SettableFuture.create();
+
+        thisTable.mClient.getSyncNetworkExecutor().execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    thisTable.mClient.getSyncContext().pull(thisTable.mName, query, queryId, partitions, maxConcurrency);
+
+                    result.set(null);
+                } catch (Throwable throwable) {
+                    result.setException(throwable);
+                }
+            }
+        });
 
         return result;
     }
@@ -112,7 +154,7 @@ public class MobileServiceJsonSyncTable {
         final MobileServiceJsonSyncTable thisTable = this;
         final SettableFuture<Void> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        thisTable.mClient.getSyncExecutor().execute(new Runnable() {
 
             @Override
             public void run() {
@@ -124,7 +166,7 @@ public class MobileServiceJsonSyncTable {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
 
         return result;
     }
@@ -141,7 +183,7 @@ public class MobileServiceJsonSyncTable {
         final MobileServiceJsonSyncTable thisTable = this;
         final SettableFuture<JsonObject> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        thisTable.mClient.getSyncExecutor().execute(new Runnable() {
 
             @Override
             public void run() {
@@ -153,7 +195,7 @@ public class MobileServiceJsonSyncTable {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
 
         return result;
     }
@@ -169,7 +211,7 @@ public class MobileServiceJsonSyncTable {
         final MobileServiceJsonSyncTable thisTable = this;
         final SettableFuture<JsonElement> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        thisTable.mClient.getSyncExecutor().execute(new Runnable() {
 
             @Override
             public void run() {
@@ -181,7 +223,7 @@ public class MobileServiceJsonSyncTable {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
 
         return result;
     }
@@ -196,7 +238,7 @@ public class MobileServiceJsonSyncTable {
         final MobileServiceJsonSyncTable thisTable = this;
         final SettableFuture<JsonObject> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        thisTable.mClient.getSyncExecutor().execute(new Runnable() {
 
             @Override
             public void run() {
@@ -208,7 +250,7 @@ public class MobileServiceJsonSyncTable {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
 
         return result;
     }
@@ -224,7 +266,7 @@ public class MobileServiceJsonSyncTable {
         final MobileServiceJsonSyncTable thisTable = this;
         final SettableFuture<Void> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        thisTable.mClient.getSyncExecutor().execute(new Runnable() {
 
             @Override
             public void run() {
@@ -236,7 +278,7 @@ public class MobileServiceJsonSyncTable {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
 
         return result;
     }
@@ -252,7 +294,7 @@ public class MobileServiceJsonSyncTable {
         final MobileServiceJsonSyncTable thisTable = this;
         final SettableFuture<Void> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        thisTable.mClient.getSyncExecutor().execute(new Runnable() {
 
             @Override
             public void run() {
@@ -264,7 +306,7 @@ public class MobileServiceJsonSyncTable {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
 
         return result;
     }
@@ -280,7 +322,7 @@ public class MobileServiceJsonSyncTable {
         final MobileServiceJsonSyncTable thisTable = this;
         final SettableFuture<Void> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        thisTable.mClient.getSyncExecutor().execute(new Runnable() {
 
             @Override
             public void run() {
@@ -292,7 +334,7 @@ public class MobileServiceJsonSyncTable {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
 
         return result;
     }
@@ -23,10 +23,13 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices.table.sync;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
@@ -39,6 +42,8 @@ import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStore;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceStreamingLocalStore;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.StreamedRowsResult;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.DeleteOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.InsertOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.LocalTableOperationProcessor;
@@ -49,13 +54,19 @@ import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOper
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationKind;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.UpdateOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.pull.IncrementalPullStrategy;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.MobileServicePullFailedException;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.MobileServicePullProgressListener;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.MobileServicePullRequest;
 import com.microsoft.windowsazure.mobileservices.table.sync.pull.PullStrategy;
+import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServicePushBatchEncoder;
+import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServicePushBatchResult;
 import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServicePushCompletionResult;
 import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServicePushFailedException;
 import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServicePushStatus;
 import com.microsoft.windowsazure.mobileservices.table.sync.queue.OperationErrorList;
 import com.microsoft.windowsazure.mobileservices.table.sync.queue.OperationQueue;
 import com.microsoft.windowsazure.mobileservices.table.sync.queue.OperationQueue.Bookmark;
+import com.microsoft.windowsazure.mobileservices.table.sync.queue.OperationQueueMetrics;
 import com.microsoft.windowsazure.mobileservices.table.sync.synchandler.MobileServiceSyncHandler;
 import com.microsoft.windowsazure.mobileservices.table.sync.synchandler.MobileServiceSyncHandlerException;
 import com.microsoft.windowsazure.mobileservices.threading.MultiLockDictionary;
@@ -64,14 +75,32 @@ import com.microsoft.windowsazure.mobileservices.threading.MultiReadWriteLockDic
 import com.microsoft.windowsazure.mobileservices.threading.MultiReadWriteLockDictionary.MultiReadWriteLock;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -81,6 +110,20 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * Provides a way to synchronize local database with remote database.
  */
 public class MobileServiceSyncContext {
+    /**
+     * Default maximum number of tables pulled at the same time by pullAll
+     */
+    public static final int DEFAULT_PULL_CONCURRENCY = 4;
+    /**
+     * Minimum number of threads of the executor of sync tasks
+     */
+    private static final int SYNC_TASK_THREADS = 4;
+    /**
+     * Time after which an idle thread of the executor of sync tasks ends, in
+     * seconds
+     */
+    private static final long SYNC_TASK_THREAD_KEEP_ALIVE = 30;
+
     private SettableFuture<Void> mInitialized;
     private MobileServiceClient mClient;
     private MobileServiceLocalStore mStore;
@@ -129,6 +172,57 @@ public class MobileServiceSyncContext {
      * Semaphore to signal that there are currently no pending push requests
      */
     private Semaphore mPushSRConsumerIdle;
+    /**
+     * Number of pulled pages that can wait to be written while the next ones
+     * are requested, or 0 to pull one page at a time
+     */
+    private volatile int mPullPrefetchDepth;
+    /**
+     * True if pulls keep the local version of items with pending operations
+     * instead of pushing first
+     */
+    private volatile boolean mPullSkipsPendingItems;
+    /**
+     * Encoder of the batches sent by push, or null to push one operation per
+     * request
+     */
+    private volatile MobileServicePushBatchEncoder mPushBatchEncoder;
+    /**
+     * Maximum number of operations sent in a push batch
+     */
+    private volatile int mPushBatchSize;
+    /**
+     * Maximum number of operations pushed at the same time
+     */
+    private volatile int mPushConcurrency = 1;
+    /**
+     * True if pushed updates only contain the changed properties
+     */
+    private volatile boolean mPushDeltaUpdates;
+    /**
+     * Number of pushed operations whose results and queue removals are
+     * committed in one store transaction
+     */
+    private volatile int mPushCommitSize = 1;
+    /**
+     * Bytes of item content sent by the push in progress
+     */
+    private final AtomicLong mPushedBytes = new AtomicLong();
+    /**
+     * Time during which concurrent local operations are gathered into one
+     * store transaction, in milliseconds
+     */
+    private volatile long mQueueGroupCommitWindow;
+    /**
+     * Ids of the items changed locally since each pull in progress started,
+     * by table. Pulled rows of these items are not written.
+     */
+    private final Map<String, List<Set<String>>> mPullChangedItemIds = new HashMap<String, List<Set<String>>>();
+    /**
+     * Executor of the tasks that pulls and pushes wait for, created on first
+     * use. The tasks never wait for other tasks, so the pool is bounded.
+     */
+    private ThreadPoolExecutor mSyncTaskExecutor;
 
     /**
      * Constructor for MobileServiceSyncContext
@@ -158,6 +252,231 @@ public class MobileServiceSyncContext {
         return this.mStore;
     }
 
+    /**
+     * Sets how many pulled pages can wait to be written to the local store
+     * while the next pages are requested. With a depth greater than 0, each
+     * page is read into memory, the next page is requested as soon as its
+     * continuation is known, and the rows are written on the pulling thread
+     * meanwhile. Requests stop when that many pages are waiting. With 0, the
+     * default, pages are requested one at a time and streamed into stores
+     * that support it.
+     *
+     * @param depth the number of pages, or 0 to disable prefetching
+     */
+    public void setPullPrefetchDepth(int depth) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Prefetch depth cannot be negative.");
+        }
+
+        this.mPullPrefetchDepth = depth;
+    }
+
+    /**
+     * @return the number of pulled pages that can wait to be written
+     */
+    public int getPullPrefetchDepth() {
+        return this.mPullPrefetchDepth;
+    }
+
+    /**
+     * Sets how pulls handle tables with pending operations. By default, the
+     * pending operations are pushed before the table is pulled. When pending
+     * items are skipped, the table is pulled without pushing, and the pulled
+     * rows of items with a pending operation are ignored, so that the local
+     * changes are kept until they are pushed.
+     *
+     * @param skipPendingItems true to pull without pushing first
+     */
+    public void setPullSkipsPendingItems(boolean skipPendingItems) {
+        this.mPullSkipsPendingItems = skipPendingItems;
+    }
+
+    /**
+     * @return true if pulls skip the items with pending operations instead of
+     * pushing first
+     */
+    public boolean getPullSkipsPendingItems() {
+        return this.mPullSkipsPendingItems;
+    }
+
+    /**
+     * Sets how push sends the pending operations. With an encoder, consecutive
+     * operations on the same table are sent together, in queue order, in a
+     * single request to the encoder's custom API, up to maxBatchSize
+     * operations per request. The result of each operation is applied as if
+     * it had been pushed alone. A batch is sent without calling the sync
+     * handler's executeTableOperation, but each failed operation is then
+     * passed to it with a processor whose first visit throws the error of
+     * the batch result, as the remote table would have. The handler can
+     * resolve the error, or visit the processor again to send the operation
+     * alone. Operations still failed are reported to the sync handler's
+     * onPushComplete as table operation errors. With a null encoder, the
+     * default, each operation is sent in its own request.
+     *
+     * @param encoder      the batch encoder, or null to disable batching
+     * @param maxBatchSize the maximum number of operations per request
+     */
+    public void setPushBatching(MobileServicePushBatchEncoder encoder, int maxBatchSize) {
+        if (encoder != null && maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1.");
+        }
+
+        this.mPushBatchSize = maxBatchSize;
+        this.mPushBatchEncoder = encoder;
+    }
+
+    /**
+     * @return the encoder of the batches sent by push, or null if batching is
+     * disabled
+     */
+    public MobileServicePushBatchEncoder getPushBatchEncoder() {
+        return this.mPushBatchEncoder;
+    }
+
+    /**
+     * @return the maximum number of operations sent in a push batch
+     */
+    public int getPushBatchSize() {
+        return this.mPushBatchSize;
+    }
+
+    /**
+     * Sets how many operations push sends at the same time, when push
+     * batching is disabled. Operations on the same item are always pushed one
+     * after the other, in queue order, but operations on different items can
+     * complete in any order. Each operation is removed from the queue once its
+     * result is saved, so an interrupted push only sends again the operations
+     * that did not complete. A network or authentication error stops the
+     * dispatch of new operations, and the push ends once the operations
+     * already sent complete. With a concurrency greater than 1, the sync
+     * handler's executeTableOperation is called from several threads of an
+     * internal pool, sized to the concurrency, at the same time, so the
+     * handler must be thread-safe. The default is 1.
+     *
+     * @param concurrency the maximum number of operations in flight
+     */
+    public void setPushConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1.");
+        }
+
+        this.mPushConcurrency = concurrency;
+    }
+
+    /**
+     * @return the maximum number of operations pushed at the same time
+     */
+    public int getPushConcurrency() {
+        return this.mPushConcurrency;
+    }
+
+    /**
+     * Sets how updates are pushed. By default, the whole item is sent. With
+     * delta updates, an update only sends the id, the version and the
+     * properties changed locally since the item was last pushed or pulled.
+     * Removed properties are sent as null. Updates whose changes are not
+     * known, such as updates queued before the changes were tracked, still
+     * send the whole item. The bytes sent by a push are reported by
+     * MobileServicePushCompletionResult.getUploadedBytes.
+     *
+     * @param deltaUpdates true to only send the changed properties
+     */
+    public void setPushDeltaUpdates(boolean deltaUpdates) {
+        this.mPushDeltaUpdates = deltaUpdates;
+    }
+
+    /**
+     * @return true if pushed updates only contain the changed properties
+     */
+    public boolean getPushDeltaUpdates() {
+        return this.mPushDeltaUpdates;
+    }
+
+    /**
+     * Sets how push saves its results. The server result of a pushed
+     * operation and the removal of the operation from the queue are written
+     * in a single store transaction. With a commit size greater than 1, the
+     * results of that many operations are written in the same transaction.
+     * Until then, the pushed items stay locked, so local changes to them wait,
+     * and the operations stay in the store. No record of the operations the
+     * server already applied is kept, so a push interrupted by a crash sends
+     * up to commitSize of them again once the queue is loaded: an insert
+     * then fails with a conflict, and an update of an item whose version
+     * changed with a precondition failure, which the sync handler has to
+     * resolve. A local operation or a pull that waits for the push makes the
+     * pending results be written at once. The default is 1.
+     *
+     * @param commitSize the number of operations per transaction
+     */
+    public void setPushCommitSize(int commitSize) {
+        if (commitSize < 1) {
+            throw new IllegalArgumentException("Commit size must be at least 1.");
+        }
+
+        this.mPushCommitSize = commitSize;
+    }
+
+    /**
+     * @return the number of pushed operations committed in one transaction
+     */
+    public int getPushCommitSize() {
+        return this.mPushCommitSize;
+    }
+
+    /**
+     * Sets how local operations are committed. Each insert, update or delete
+     * writes the item and its queued operation in a single store transaction.
+     * With a group commit window, the operations made by other threads while
+     * the first one waits for the window are written in the same transaction,
+     * and every caller returns once that transaction is committed. If the
+     * transaction fails, the operations are committed again one by one, so
+     * that only the failing ones report an error. The default window is 0,
+     * which commits each operation on its calling thread. Local operations
+     * must not be made from a thread that holds a store transaction while a
+     * window is set.
+     *
+     * @param windowMillis the window in milliseconds, or 0 to disable group commit
+     */
+    public void setOperationQueueGroupCommitWindow(long windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("The group commit window cannot be negative.");
+        }
+
+        this.mQueueGroupCommitWindow = windowMillis;
+
+        OperationQueue opQueue = this.mOpQueue;
+
+        if (opQueue != null) {
+            opQueue.setGroupCommitWindow(windowMillis);
+        }
+    }
+
+    /**
+     * @return the group commit window of local operations, in milliseconds
+     */
+    public long getOperationQueueGroupCommitWindow() {
+        return this.mQueueGroupCommitWindow;
+    }
+
+    /**
+     * Gets metrics of the queue of pending operations, such as the time taken
+     * to load it and the number of queued items held in memory.
+     *
+     * @return the metrics
+     * @throws Throwable
+     */
+    public OperationQueueMetrics getOperationQueueMetrics() throws Throwable {
+        this.mInitLock.readLock().lock();
+
+        try {
+            ensureCorrectlyInitialized();
+
+            return this.mOpQueue.getMetrics();
+        } finally {
+            this.mInitLock.readLock().unlock();
+        }
+    }
+
     /**
      * @return an instance of MobileServiceSyncHandler.
      *
@@ -244,6 +563,8 @@ public class MobileServiceSyncContext {
 
             this.mStore.upsert(tableOperationError.getTableName(), item, true);
 
+            onItemChangedLocally(tableOperationError.getTableName(), tableOperationError.getItemId());
+
             removeTableOperation(tableOperationError);
 
         } finally {
@@ -287,6 +608,8 @@ public class MobileServiceSyncContext {
 
             this.mStore.delete(tableOperationError.getTableName(), tableOperationError.getItemId());
 
+            onItemChangedLocally(tableOperationError.getTableName(), tableOperationError.getItemId());
+
             removeTableOperation(tableOperationError);
 
         } finally {
@@ -333,6 +656,8 @@ public class MobileServiceSyncContext {
             }
 
             this.mOpQueue.updateOperationAndItem(tableOperationError, operationType, item);
+
+            onItemChangedLocally(tableOperationError.getTableName(), tableOperationError.getItemId());
         } finally {
             try {
                 this.mInitLock.readLock().unlock();
@@ -392,7 +717,7 @@ public class MobileServiceSyncContext {
         final MobileServiceSyncContext thisContext = this;
         final SettableFuture<Void> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        thisContext.mClient.getSyncNetworkExecutor().execute(new Runnable() {
 
             @Override
             public void run() {
@@ -404,7 +729,7 @@ public class MobileServiceSyncContext {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
 
         return result;
     }
@@ -418,7 +743,7 @@ public class MobileServiceSyncContext {
         final MobileServiceSyncContext thisContext = this;
         final SettableFuture<Void> result = SettableFuture.create();
 
-        new Thread(new Runnable() {
+        thisContext.mClient.getSyncNetworkExecutor().execute(new Runnable() {
 
             @Override
             public void run() {
@@ -430,7 +755,130 @@ public class MobileServiceSyncContext {
                     result.setException(throwable);
                 }
             }
-        }).start();
+        });
+
+        return result;
+    }
+
+    /**
+     * Pulls several tables, with at most DEFAULT_PULL_CONCURRENCY tables
+     * pulled at the same time.
+     *
+     * @param requests the pull of each table
+     * @return A ListenableFuture that is done when all the tables have been
+     * pulled. It fails with a MobileServicePullFailedException if the pull
+     * of any table failed.
+     */
+    public ListenableFuture<Void> pullAll(List<MobileServicePullRequest> requests) {
+        return pullAll(requests, DEFAULT_PULL_CONCURRENCY, null);
+    }
+
+    /**
+     * Pulls several tables, with a limited number of tables pulled at the same
+     * time. The pull of a table does not stop the pulls of the other tables
+     * when it fails. The tables are pulled on the network executor of the
+     * client, see MobileServiceClient.setSyncNetworkExecutor.
+     *
+     * @param requests       the pull of each table
+     * @param maxConcurrency the maximum number of tables pulled at the same time
+     * @param listener       an optional listener notified as each table completes
+     * @return A ListenableFuture that is done when all the tables have been
+     * pulled. It fails with a MobileServicePullFailedException if the pull
+     * of any table failed.
+     */
+    public ListenableFuture<Void> pullAll(List<MobileServicePullRequest> requests, int maxConcurrency, MobileServicePullProgressListener listener) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Pull concurrency must be greater than 0.");
+        }
+
+        return executePulls(requests, maxConcurrency, listener, null, false);
+    }
+
+    /**
+     * Runs pull requests on the network executor of the client, with at most
+     * maxConcurrency of them running at the same time. Each worker takes the
+     * next request not yet taken, so a worker that starts after the others
+     * have taken all the requests has nothing to do.
+     *
+     * @param requests       the pull requests
+     * @param maxConcurrency the maximum number of requests run at the same time
+     * @param listener       an optional listener notified as each request completes
+     * @param skippedItemIds null to run each request as a complete pull, or
+     *                       the items skipped by the pull the requests are
+     *                       partitions of, to run the request query only
+     * @param runOnThisThread true to run one of the workers on this thread
+     *                       before returning, so that the requests complete
+     *                       even if the other workers wait in line for a
+     *                       thread the caller holds
+     */
+    private ListenableFuture<Void> executePulls(List<MobileServicePullRequest> requests, int maxConcurrency,
+                                                final MobileServicePullProgressListener listener, final Set<String> skippedItemIds,
+                                                boolean runOnThisThread) {
+        final SettableFuture<Void> result = SettableFuture.create();
+
+        int workerCount = Math.min(maxConcurrency, requests.size());
+
+        if (workerCount == 0) {
+            result.set(null);
+            return result;
+        }
+
+        final Queue<MobileServicePullRequest> pendingRequests = new ConcurrentLinkedQueue<MobileServicePullRequest>(requests);
+        final Map<MobileServicePullRequest, Throwable> errors = Collections.synchronizedMap(new LinkedHashMap<MobileServicePullRequest, Throwable>());
+        final AtomicInteger remainingRequests = new AtomicInteger(requests.size());
+
+        Runnable worker = new Runnable() {
+
+            @Override
+            public void run() {
+                MobileServicePullRequest request;
+
+                while ((request = pendingRequests.poll()) != null) {
+                    try {
+                        Throwable error = null;
+
+                        try {
+                            if (skippedItemIds == null) {
+                                pull(request.getTableName(), request.getQuery(), request.getQueryId());
+                            } else {
+                                processPull(request.getTableName(), request.getQuery(), request.getQueryId(), skippedItemIds);
+                            }
+                        } catch (Throwable throwable) {
+                            error = throwable;
+                            errors.put(request, throwable);
+                        }
+
+                        if (listener == null) {
+                            continue;
+                        }
+
+                        if (error == null) {
+                            listener.onPullCompleted(request);
+                        } else {
+                            listener.onPullFailed(request, error);
+                        }
+                    } finally {
+                        if (remainingRequests.decrementAndGet() == 0) {
+                            if (errors.isEmpty()) {
+                                result.set(null);
+                            } else {
+                                result.setException(new MobileServicePullFailedException(errors));
+                            }
+                        }
+                    }
+                }
+            }
+        };
+
+        Executor executor = this.mClient.getSyncNetworkExecutor();
+
+        for (int i = runOnThisThread ? 1 : 0; i < workerCount; i++) {
+            executor.execute(worker);
+        }
+
+        if (runOnThisThread) {
+            worker.run();
+        }
 
         return result;
     }
@@ -442,6 +890,23 @@ public class MobileServiceSyncContext {
      * @param query     an optional query to filter results
      */
     void pull(String tableName, Query query, String queryId) throws Throwable {
+        pull(tableName, query, queryId, null, 1);
+    }
+
+    /**
+     * Performs a query against the remote table and stores results, pulling
+     * partitions of the table concurrently.
+     *
+     * @param tableName      the remote table name
+     * @param query          an optional query to filter results
+     * @param queryId        an optional query id, to pull incrementally. Each
+     *                       partition keeps its own watermark.
+     * @param partitions     the partition filters, or null to pull the query
+     *                       as a single page stream
+     * @param maxConcurrency the maximum number of partitions pulled at the
+     *                       same time
+     */
+    void pull(String tableName, Query query, String queryId, List<Query> partitions, int maxConcurrency) throws Throwable {
         this.mInitLock.readLock().lock();
 
         try {
@@ -452,7 +917,8 @@ public class MobileServiceSyncContext {
             boolean busyPullDone = false;
 
             while (!busyPullDone) {
-                ListenableFuture<Void> pushFuture = null;
+                boolean pushFirst = false;
+                Set<String> skippedItemIds = null;
 
                 // prevent Coffman Circular wait condition: lock resources in
                 // same order, independent of unlock order. Op then Table then
@@ -468,10 +934,12 @@ public class MobileServiceSyncContext {
                     try {
                         int pendingTable = this.mOpQueue.countPending(invTableName);
 
-                        if (pendingTable > 0) {
-                            pushFuture = push();
+                        if (pendingTable > 0 && !this.mPullSkipsPendingItems) {
+                            pushFirst = true;
                         } else {
-                            processPull(invTableName, query, queryId);
+                            // local changes made from now on are tracked, and
+                            // the table is only locked while each page is written
+                            skippedItemIds = beginPullTracking(invTableName, this.mOpQueue.getPendingItemIds(invTableName));
                         }
                     } finally {
                         this.mTableLockMap.unLockWrite(multiRWLock);
@@ -480,13 +948,21 @@ public class MobileServiceSyncContext {
                     this.mOpLock.readLock().unlock();
                 }
 
-                if (pushFuture != null) {
+                if (pushFirst) {
+                    // pushed on this thread, since the pull may already run
+                    // on a thread of the sync executor
+                    pushContext();
+                } else {
                     try {
-                        pushFuture.get();
-                    } catch (ExecutionException e) {
-                        throw e.getCause();
+                        if (partitions != null) {
+                            processPartitionedPull(invTableName, query, queryId, partitions, maxConcurrency, skippedItemIds);
+                        } else {
+                            processPull(invTableName, query, queryId, skippedItemIds);
+                        }
+                    } finally {
+                        endPullTracking(invTableName, skippedItemIds);
                     }
-                } else {
+
                     busyPullDone = true;
                 }
             }
@@ -654,6 +1130,7 @@ public class MobileServiceSyncContext {
                         this.mTableLockMap = new MultiReadWriteLockDictionary<String>();
 
                         this.mOpQueue = OperationQueue.load(this.mStore);
+                        this.mOpQueue.setGroupCommitWindow(this.mQueueGroupCommitWindow);
                         this.mPushSRQueue = new LinkedList<PushSyncRequest>();
                         this.mOpErrorList = OperationErrorList.load(this.mStore);
 
@@ -724,7 +1201,53 @@ public class MobileServiceSyncContext {
         }
     }
 
-    private void processPull(String tableName, Query query, String queryId) throws Throwable {
+    private void processPartitionedPull(String tableName, Query query, String queryId, List<Query> partitions, int maxConcurrency,
+                                        Set<String> skippedItemIds) throws Throwable {
+        if (query == null) {
+            query = QueryOperations.tableName(tableName).top(1000);
+        }
+
+        List<MobileServicePullRequest> requests = new ArrayList<MobileServicePullRequest>();
+
+        for (int i = 0; i < partitions.size(); i++) {
+            Query partitionQuery = query.deepClone();
+            Query partition = partitions.get(i).deepClone();
+
+            if (partitionQuery.getQueryNode() != null) {
+                Query filter = QueryOperations.query(query.deepClone()).and(QueryOperations.query(partition));
+                partitionQuery.setQueryNode(filter.getQueryNode());
+            } else {
+                partitionQuery.setQueryNode(partition.getQueryNode());
+            }
+
+            // the watermark of each partition is saved under its own id
+            String partitionQueryId = queryId != null ? queryId + "_" + i : null;
+
+            requests.add(new MobileServicePullRequest(tableName, partitionQuery, partitionQueryId));
+        }
+
+        try {
+            // this thread pulls partitions too, and then only waits for the
+            // partitions pulled by workers that started
+            executePulls(requests, maxConcurrency, null, skippedItemIds, true).get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Pulls a table. The table is only locked while each page is written, so
+     * that local changes can be made between pages. The pulled rows of the
+     * items with pending operations when the pull started, or changed locally
+     * since, are not written, and the local versions are kept.
+     *
+     * @param tableName      the local table name
+     * @param query          an optional query to filter results
+     * @param queryId        an optional query id, to pull incrementally
+     * @param skippedItemIds the ids of the items whose pulled rows are not
+     *                       written, updated as the items change locally
+     */
+    private void processPull(String tableName, Query query, String queryId, Set<String> skippedItemIds) throws Throwable {
 
         try {
 
@@ -748,32 +1271,31 @@ public class MobileServiceSyncContext {
 
             strategy.initialize();
 
-            JsonArray elements = null;
-
-            do {
-
-                JsonElement result = table.execute(strategy.getLastQuery()).get();
+            int prefetchDepth = this.mPullPrefetchDepth;
 
-                if (result != null) {
+            if (prefetchDepth > 0) {
+                processPipelinedPull(tableName, table, strategy, prefetchDepth, skippedItemIds);
+                return;
+            }
 
-                    if (result.isJsonObject()) {
-                        JsonObject jsonObject = result.getAsJsonObject();
+            if (this.mStore instanceof MobileServiceStreamingLocalStore) {
+                processStreamedPull(tableName, table, strategy, (MobileServiceStreamingLocalStore) this.mStore, skippedItemIds);
+                return;
+            }
 
-                        if (jsonObject.has("results") && jsonObject.get("results").isJsonArray()) {
-                            elements = jsonObject.get("results").getAsJsonArray();
-                        }
+            JsonElement result;
+            JsonArray elements;
 
-                    } else if (result.isJsonArray()) {
-                        elements = result.getAsJsonArray();
-                    }
+            do {
 
-                    processElements(tableName, elements);
+                result = executePage(table, strategy).get();
+                elements = getPageElements(result);
 
-                    strategy.onResultsProcessed(elements);
-                }
+                strategy.onPageRead(elements);
 
+                processPage(tableName, strategy, elements, skippedItemIds);
             }
-            while (strategy.moveToNextPage(elements.size()));
+            while (strategy.moveToNextPage(elements.size(), getNextLink(result)));
 
         } catch (ExecutionException e) {
             throw e.getCause();
@@ -782,55 +1304,253 @@ public class MobileServiceSyncContext {
         }
     }
 
-    private void processElements(String tableName, JsonArray elements) throws Throwable {
-        if (elements != null) {
-
-            List<JsonObject> updatedJsonObjects = new ArrayList<JsonObject>();
-            List<String> deletedIds = new ArrayList<String>();
+    private void processStreamedPull(String tableName, MobileServiceJsonTable table, PullStrategy strategy, MobileServiceStreamingLocalStore store,
+                                     Set<String> skippedItemIds) throws Throwable {
+        PullPageReader pageReader = new PullPageReader(this, store, tableName, strategy, skippedItemIds);
 
+        StreamedRowsResult result;
 
-            for (JsonElement element : elements) {
+        do {
+            String nextLink = strategy.getNextLink();
 
-                JsonObject jsonObject = element.getAsJsonObject();
-                JsonElement elementId = jsonObject.get(MobileServiceSystemColumns.Id);
+            // each page is copied as it arrives, then its rows are written
+            // into the store with the table locked
+            if (nextLink != null) {
+                result = table.execute(nextLink, pageReader).get();
+            } else {
+                result = table.execute(strategy.getLastQuery(), pageReader).get();
+            }
+        }
+        while (strategy.moveToNextPage(result.getCount(), pageReader.getNextLink()));
+    }
 
-                if (elementId == null) {
-                    continue;
-                }
+    private void processPipelinedPull(String tableName, MobileServiceJsonTable table, PullStrategy strategy, int prefetchDepth,
+                                      Set<String> skippedItemIds) throws Throwable {
+        // the pages are requested ahead on the sync task executor and
+        // written on this thread
+        PrefetchedPages pages = new PrefetchedPages(table, strategy, prefetchDepth, getSyncTaskExecutor(1));
 
-                if (isDeleted(jsonObject)) {
-                    deletedIds.add(elementId.getAsString());
-                } else {
-                    updatedJsonObjects.add(jsonObject);
-                }
-            }
+        pages.start();
 
-            if (deletedIds.size() > 0) {
-                this.mStore.delete(tableName,
-                        deletedIds.toArray(new String[deletedIds.size()]));
-            }
+        try {
+            JsonArray elements;
 
-            if (updatedJsonObjects.size() > 0) {
-                this.mStore.upsert(tableName,
-                        updatedJsonObjects.toArray(new JsonObject[updatedJsonObjects.size()]), true);
+            while ((elements = pages.take()) != null) {
+                processPage(tableName, strategy, elements, skippedItemIds);
             }
+        } finally {
+            pages.stop();
         }
     }
 
-    private void processPurge(String tableName, Query query) throws MobileServiceLocalStoreException {
-        if (query == null) {
-            query = QueryOperations.tableName(tableName);
-        } else if (query.getTableName() == null || !query.getTableName().equals(tableName)) {
-            query = query.tableName(tableName);
+    /**
+     * Requests the next page of a pull, with the continuation link sent by
+     * the server if there is one
+     */
+    private static ListenableFuture<JsonElement> executePage(MobileServiceJsonTable table, PullStrategy strategy) {
+        String nextLink = strategy.getNextLink();
+
+        if (nextLink != null) {
+            return table.execute(nextLink);
         }
 
-        this.mStore.delete(query);
+        return table.execute(strategy.getLastQuery());
     }
 
-    private void waitPendingPushSR() throws InterruptedException {
-        this.mPushSRLock.lock();
+    private static String getNextLink(JsonElement result) {
+        if (result != null && result.isJsonObject()) {
+            JsonElement nextLink = result.getAsJsonObject().get("nextLink");
 
-        try {
+            if (nextLink != null && nextLink.isJsonPrimitive()) {
+                return nextLink.getAsString();
+            }
+        }
+
+        return null;
+    }
+
+    private static JsonArray getPageElements(JsonElement result) {
+        JsonArray elements = null;
+
+        if (result != null) {
+
+            if (result.isJsonObject()) {
+                JsonObject jsonObject = result.getAsJsonObject();
+
+                if (jsonObject.has("results") && jsonObject.get("results").isJsonArray()) {
+                    elements = jsonObject.get("results").getAsJsonArray();
+                }
+
+            } else if (result.isJsonArray()) {
+                elements = result.getAsJsonArray();
+            }
+        }
+
+        return elements != null ? elements : new JsonArray();
+    }
+
+    private void processPage(String tableName, PullStrategy strategy, JsonArray elements, Set<String> skippedItemIds) throws MobileServiceLocalStoreException {
+        MultiReadWriteLock<String> pageLock = lockPullPage(tableName);
+
+        try {
+            // the page and the pull strategy state are committed together
+            this.mStore.beginTransaction();
+
+            try {
+                processElements(tableName, elements, skippedItemIds);
+
+                strategy.onResultsProcessed(elements);
+
+                this.mStore.setTransactionSuccessful();
+            } finally {
+                this.mStore.endTransaction();
+            }
+        } finally {
+            unlockPullPage(pageLock);
+        }
+    }
+
+    /**
+     * Locks a table while a pulled page is written. Local changes to the
+     * table wait until the page is written, and the items changed before
+     * are skipped by the page.
+     *
+     * @param tableName the local table name
+     * @return the lock to release with unlockPullPage
+     */
+    MultiReadWriteLock<String> lockPullPage(String tableName) {
+        // prevent Coffman Circular wait condition: lock resources in
+        // same order, independent of unlock order. Op then Table then
+        // Id.
+
+        // get SHARED access to op lock
+        this.mOpLock.readLock().lock();
+
+        try {
+            // get EXCLUSIVE access to table lock
+            return this.mTableLockMap.lockWrite(tableName);
+        } catch (RuntimeException e) {
+            this.mOpLock.readLock().unlock();
+            throw e;
+        }
+    }
+
+    void unlockPullPage(MultiReadWriteLock<String> pageLock) {
+        try {
+            this.mTableLockMap.unLockWrite(pageLock);
+        } finally {
+            this.mOpLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Starts tracking the items changed locally during a pull
+     *
+     * @param tableName       the local table name
+     * @param pendingItemIds the ids of the items with pending operations
+     * @return the ids of the items to skip, updated as the items change
+     */
+    private Set<String> beginPullTracking(String tableName, Set<String> pendingItemIds) {
+        Set<String> changedItemIds = Collections.synchronizedSet(new HashSet<String>(pendingItemIds));
+
+        synchronized (this.mPullChangedItemIds) {
+            List<Set<String>> tablePulls = this.mPullChangedItemIds.get(tableName);
+
+            if (tablePulls == null) {
+                tablePulls = new ArrayList<Set<String>>();
+                this.mPullChangedItemIds.put(tableName, tablePulls);
+            }
+
+            tablePulls.add(changedItemIds);
+        }
+
+        return changedItemIds;
+    }
+
+    private void endPullTracking(String tableName, Set<String> changedItemIds) {
+        synchronized (this.mPullChangedItemIds) {
+            List<Set<String>> tablePulls = this.mPullChangedItemIds.get(tableName);
+
+            if (tablePulls != null) {
+                tablePulls.remove(changedItemIds);
+
+                if (tablePulls.isEmpty()) {
+                    this.mPullChangedItemIds.remove(tableName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records a local change to an item, so that the pulls of the table in
+     * progress don't overwrite it. Must be called while holding the table lock.
+     */
+    private void onItemChangedLocally(String tableName, String itemId) {
+        synchronized (this.mPullChangedItemIds) {
+            List<Set<String>> tablePulls = this.mPullChangedItemIds.get(tableName);
+
+            if (tablePulls != null) {
+                for (Set<String> changedItemIds : tablePulls) {
+                    changedItemIds.add(itemId);
+                }
+            }
+        }
+    }
+
+    private void processElements(String tableName, JsonArray elements, Set<String> skippedItemIds) throws MobileServiceLocalStoreException {
+        if (elements != null) {
+
+            List<JsonObject> updatedJsonObjects = new ArrayList<JsonObject>();
+            List<String> deletedIds = new ArrayList<String>();
+
+
+            for (JsonElement element : elements) {
+
+                JsonObject jsonObject = element.getAsJsonObject();
+                JsonElement elementId = jsonObject.get(MobileServiceSystemColumns.Id);
+
+                if (elementId == null) {
+                    continue;
+                }
+
+                // the local version is kept when the item changed locally
+                if (skippedItemIds != null && skippedItemIds.contains(elementId.getAsString())) {
+                    continue;
+                }
+
+                if (isDeleted(jsonObject)) {
+                    deletedIds.add(elementId.getAsString());
+                } else {
+                    updatedJsonObjects.add(jsonObject);
+                }
+            }
+
+            if (deletedIds.size() > 0) {
+                this.mStore.delete(tableName,
+                        deletedIds.toArray(new String[deletedIds.size()]));
+            }
+
+            if (updatedJsonObjects.size() > 0) {
+                this.mStore.upsert(tableName,
+                        updatedJsonObjects.toArray(new JsonObject[updatedJsonObjects.size()]), true);
+            }
+        }
+    }
+
+    private void processPurge(String tableName, Query query) throws MobileServiceLocalStoreException {
+        if (query == null) {
+            query = QueryOperations.tableName(tableName);
+        } else if (query.getTableName() == null || !query.getTableName().equals(tableName)) {
+            query = query.tableName(tableName);
+        }
+
+        this.mStore.delete(query);
+    }
+
+    private void waitPendingPushSR() throws InterruptedException {
+        this.mPushSRLock.lock();
+
+        try {
             if (this.mPushSRQueue != null && !this.mPushSRQueue.isEmpty()) {
                 this.mPushSRConsumerIdle = new Semaphore(0, true);
             }
@@ -875,116 +1595,565 @@ public class MobileServiceSyncContext {
         }
     }
 
-    private void pushOperations(Bookmark bookmark) throws MobileServicePushFailedException {
-        MobileServicePushCompletionResult pushCompletionResult = new MobileServicePushCompletionResult();
+    private void pushOperations(Bookmark bookmark) throws MobileServicePushFailedException {
+        MobileServicePushCompletionResult pushCompletionResult = new MobileServicePushCompletionResult();
+
+        List<TableOperation> failedOperations = new ArrayList<>();
+
+        MobileServicePushBatchEncoder batchEncoder = this.mPushBatchEncoder;
+        int concurrency = this.mPushConcurrency;
+
+        this.mPushedBytes.set(0);
+
+        try {
+            if (batchEncoder != null) {
+                pushOperationBatches(bookmark, batchEncoder, this.mPushBatchSize, pushCompletionResult, failedOperations);
+            } else if (concurrency > 1) {
+                pushOperationsConcurrently(bookmark, concurrency, pushCompletionResult, failedOperations);
+            } else {
+                pushOperationsOneByOne(bookmark, pushCompletionResult, failedOperations);
+            }
+
+            if (pushCompletionResult.getStatus() == null) {
+                pushCompletionResult.setStatus(MobileServicePushStatus.Complete);
+            }
+
+            pushCompletionResult.setUploadedBytes(this.mPushedBytes.get());
+
+            List<TableOperationError> errors = this.mOpErrorList.getAll();
+            for (TableOperationError error : errors) {
+                error.setContext(this);
+            }
+            pushCompletionResult.setOperationErrors(errors);
+
+            this.mOpErrorList.clear();
+
+            this.mHandler.onPushComplete(pushCompletionResult);
+
+        } catch (Throwable internalError) {
+            pushCompletionResult.setStatus(MobileServicePushStatus.InternalError);
+            pushCompletionResult.setInternalError(internalError);
+            pushCompletionResult.setUploadedBytes(this.mPushedBytes.get());
+        }
+
+        if (pushCompletionResult.getStatus() != MobileServicePushStatus.Complete) {
+            if (failedOperations.size() > 0) {
+                //Reload Queue with pending error operations
+                this.mOpLock.writeLock().lock();
+
+                try {
+                    for (TableOperation failedOperation : failedOperations) {
+                        this.mOpQueue.enqueue(failedOperation);
+                    }
+                } catch (Throwable throwable) {
+                } finally {
+                    this.mOpLock.writeLock().unlock();
+                }
+            }
+            throw new MobileServicePushFailedException(pushCompletionResult);
+        }
+    }
+
+    private void pushOperationsOneByOne(Bookmark bookmark, MobileServicePushCompletionResult pushCompletionResult, List<TableOperation> failedOperations)
+            throws Throwable {
+        PushCommitBuffer buffer = new PushCommitBuffer();
+
+        try {
+            LockProtectedOperation lockedOp = peekAndLock(bookmark, buffer);
+
+            TableOperation operation = lockedOp != null ? lockedOp.getOperation() : null;
+
+            while (operation != null) {
+                // the locks are released once the result is committed
+                buffer.addLockedOperation(lockedOp);
+
+                JsonObject result = null;
+
+                try {
+                    result = pushOperation(operation);
+                } catch (MobileServiceLocalStoreException localStoreException) {
+                    pushCompletionResult.setStatus(MobileServicePushStatus.CancelledByLocalStoreError);
+
+                    operation.setOperationState(MobileServiceTableOperationState.Failed);
+                    break;
+                } catch (MobileServiceSyncHandlerException syncHandlerException) {
+                    MobileServicePushStatus cancelReason = getPushCancelReason(syncHandlerException);
+
+                    operation.setOperationState(MobileServiceTableOperationState.Failed);
+
+                    if (cancelReason != null) {
+                        pushCompletionResult.setStatus(cancelReason);
+                        break;
+                    } else {
+                        this.mOpErrorList.add(getTableOperationError(operation, syncHandlerException));
+                        failedOperations.add(operation);
+                    }
+                }
+
+                bookmark.dequeueDeferred();
+
+                buffer.addCompleted(operation, result);
+
+                commitPushedIfFull(buffer);
+
+                lockedOp = peekAndLock(bookmark, buffer);
+
+                operation = lockedOp != null ? lockedOp.getOperation() : null;
+            }
+        } catch (MobileServiceLocalStoreException localStoreException) {
+            setPushCancelStatus(pushCompletionResult, MobileServicePushStatus.CancelledByLocalStoreError);
+        } finally {
+            commitPushed(buffer, pushCompletionResult);
+        }
+    }
+
+    private void pushOperationsConcurrently(Bookmark bookmark, int concurrency, MobileServicePushCompletionResult pushCompletionResult,
+                                            List<TableOperation> failedOperations) throws Throwable {
+        CompletionService<PushedOperation> completionService = new ExecutorCompletionService<PushedOperation>(getSyncTaskExecutor(concurrency));
+
+        // locks are taken and released on this thread only, the operations
+        // in flight and their tasks are keyed by operation id
+        Map<String, LockProtectedOperation> inFlight = new HashMap<String, LockProtectedOperation>();
+        Map<String, Future<PushedOperation>> inFlightTasks = new HashMap<String, Future<PushedOperation>>();
+
+        PushCommitBuffer buffer = new PushCommitBuffer();
+
+        try {
+            boolean cancelled = false;
+
+            while (true) {
+                while (!cancelled && inFlight.size() < concurrency) {
+                    LockProtectedOperation lockedOp = peekAndLockNext(bookmark, inFlight, buffer);
+
+                    if (lockedOp == null) {
+                        break;
+                    }
+
+                    final TableOperation operation = lockedOp.getOperation();
+
+                    inFlight.put(operation.getId(), lockedOp);
+
+                    inFlightTasks.put(operation.getId(), completionService.submit(new Callable<PushedOperation>() {
+                        @Override
+                        public PushedOperation call() {
+                            try {
+                                return new PushedOperation(operation, pushOperation(operation), null);
+                            } catch (Throwable throwable) {
+                                return new PushedOperation(operation, null, throwable);
+                            }
+                        }
+                    }));
+                }
+
+                if (inFlight.isEmpty()) {
+                    break;
+                }
+
+                PushedOperation pushedOp = completionService.take().get();
+
+                TableOperation operation = pushedOp.getOperation();
+                Throwable error = pushedOp.getError();
+
+                LockProtectedOperation lockedOp = inFlight.remove(operation.getId());
+                inFlightTasks.remove(operation.getId());
+
+                // the locks are released once the result is committed
+                buffer.addLockedOperation(lockedOp);
+
+                if (error == null) {
+                    bookmark.dequeueDeferred(operation);
+
+                    buffer.addCompleted(operation, pushedOp.getResult());
+                } else if (error instanceof MobileServiceLocalStoreException) {
+                    operation.setOperationState(MobileServiceTableOperationState.Failed);
+
+                    setPushCancelStatus(pushCompletionResult, MobileServicePushStatus.CancelledByLocalStoreError);
+                    cancelled = true;
+                } else if (error instanceof MobileServiceSyncHandlerException) {
+                    MobileServicePushStatus cancelReason = getPushCancelReason((MobileServiceSyncHandlerException) error);
+
+                    operation.setOperationState(MobileServiceTableOperationState.Failed);
+
+                    if (cancelReason != null) {
+                        setPushCancelStatus(pushCompletionResult, cancelReason);
+                        cancelled = true;
+                    } else {
+                        this.mOpErrorList.add(getTableOperationError(operation, error));
+                        failedOperations.add(operation);
+
+                        bookmark.dequeueDeferred(operation);
+
+                        buffer.addCompleted(operation, null);
+                    }
+                } else {
+                    throw error;
+                }
+
+                commitPushedIfFull(buffer);
+            }
+        } catch (MobileServiceLocalStoreException localStoreException) {
+            setPushCancelStatus(pushCompletionResult, MobileServicePushStatus.CancelledByLocalStoreError);
+        } finally {
+            // the push failed with operations in flight: they are cancelled
+            // instead of waited for, since a request may never answer. Their
+            // results are dropped and the operations stay queued, so one that
+            // reached the server is sent again, as after a network error
+            for (Future<PushedOperation> task : inFlightTasks.values()) {
+                task.cancel(true);
+            }
+
+            for (LockProtectedOperation lockedOp : inFlight.values()) {
+                unlockOperation(lockedOp);
+            }
+
+            commitPushed(buffer, pushCompletionResult);
+        }
+    }
+
+    private static void setPushCancelStatus(MobileServicePushCompletionResult pushCompletionResult, MobileServicePushStatus status) {
+        if (pushCompletionResult.getStatus() == null) {
+            pushCompletionResult.setStatus(status);
+        }
+    }
+
+    /**
+     * Locks the next bookmarked operation that is not in flight. While other
+     * operations are in flight, their table locks are held, so the op lock is
+     * only taken if it is free, to avoid waiting on a pull that waits for one
+     * of those table locks.
+     *
+     * @return the locked operation, or null if there is none, if the op lock
+     * is busy, or if the next operation is on an item already in flight
+     */
+    private LockProtectedOperation peekAndLockNext(Bookmark bookmark, Map<String, LockProtectedOperation> inFlight, PushCommitBuffer buffer)
+            throws MobileServiceLocalStoreException {
+        LockProtectedOperation lockedOp = null;
+
+        Lock opLock = this.mOpLock.writeLock();
+
+        if (inFlight.isEmpty()) {
+            lockOpForPush(buffer);
+        } else if (!opLock.tryLock()) {
+            return null;
+        }
+
+        try {
+            TableOperation next = null;
+
+            for (TableOperation operation : bookmark.peekAll(inFlight.size() + 1)) {
+                if (!inFlight.containsKey(operation.getId())) {
+                    next = operation;
+                    break;
+                }
+            }
+
+            if (next != null && !isItemInFlight(next, inFlight)) {
+                // get SHARED access to table lock
+                MultiReadWriteLock<String> tableLock = this.mTableLockMap.lockRead(next.getTableName());
+
+                // get EXCLUSIVE access to id lock
+                MultiLock<String> idLock = lockItem(next);
+
+                lockedOp = new LockProtectedOperation(next, tableLock, idLock);
+            }
+        } finally {
+            opLock.unlock();
+        }
+
+        return lockedOp;
+    }
+
+    private static boolean isItemInFlight(TableOperation operation, Map<String, LockProtectedOperation> inFlight) {
+        for (LockProtectedOperation lockedOp : inFlight.values()) {
+            if (lockedOp.getOperation().getTableItemId().equals(operation.getTableItemId())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void unlockOperation(LockProtectedOperation lockedOp) {
+        try {
+            this.mIdLockMap.unLock(lockedOp.getIdLock());
+        } finally {
+            this.mTableLockMap.unLockRead(lockedOp.getTableLock());
+        }
+    }
+
+    /**
+     * Pushes an operation
+     *
+     * @return the server result to save, or null if there is none
+     */
+    private JsonObject pushOperation(TableOperation operation) throws MobileServiceLocalStoreException, MobileServiceSyncHandlerException {
+        operation.setOperationState(MobileServiceTableOperationState.Attempted);
+
+        JsonObject item = getPushItem(operation);
+
+        if (operation.getKind() != TableOperationKind.Delete && item != null) {
+            countPushedBytes(MobileServiceJsonTable.removeSystemProperties(item));
+        }
+
+        return this.mHandler.executeTableOperation(new RemoteTableOperationProcessor(this.mClient, item), operation);
+    }
+
+    private void pushOperationBatches(Bookmark bookmark, MobileServicePushBatchEncoder encoder, int batchSize,
+                                      MobileServicePushCompletionResult pushCompletionResult, List<TableOperation> failedOperations) throws Throwable {
+        PushCommitBuffer buffer = new PushCommitBuffer();
+
+        try {
+            LockProtectedBatch lockedBatch = peekAndLockBatch(bookmark, batchSize, buffer);
+
+            while (lockedBatch != null) {
+                // the locks are released once the results are committed
+                buffer.addLockedBatch(lockedBatch);
+
+                if (!pushOperationBatch(bookmark, encoder, lockedBatch.getOperations(), buffer, pushCompletionResult, failedOperations)) {
+                    break;
+                }
+
+                commitPushedIfFull(buffer);
+
+                lockedBatch = peekAndLockBatch(bookmark, batchSize, buffer);
+            }
+        } catch (MobileServiceLocalStoreException localStoreException) {
+            setPushCancelStatus(pushCompletionResult, MobileServicePushStatus.CancelledByLocalStoreError);
+        } finally {
+            commitPushed(buffer, pushCompletionResult);
+        }
+    }
+
+    /**
+     * Pushes a batch of operations on the same table and dequeues them
+     *
+     * @return false if the push was cancelled
+     */
+    private boolean pushOperationBatch(Bookmark bookmark, MobileServicePushBatchEncoder encoder, List<TableOperation> operations, PushCommitBuffer buffer,
+                                       MobileServicePushCompletionResult pushCompletionResult, List<TableOperation> failedOperations) throws Throwable {
+        String tableName = operations.get(0).getTableName();
+
+        List<JsonObject> items = new ArrayList<JsonObject>(operations.size());
+
+        try {
+            for (TableOperation operation : operations) {
+                operation.setOperationState(MobileServiceTableOperationState.Attempted);
+
+                JsonObject item = getPushItem(operation);
+
+                if (item != null && operation.getKind() == TableOperationKind.Insert) {
+                    item = MobileServiceJsonTable.removeSystemProperties(item);
+                }
+
+                items.add(item);
+            }
+        } catch (MobileServiceLocalStoreException localStoreException) {
+            pushCompletionResult.setStatus(MobileServicePushStatus.CancelledByLocalStoreError);
+
+            setOperationsState(operations, MobileServiceTableOperationState.Failed);
+            return false;
+        }
 
-        List<TableOperation> failedOperations = new ArrayList<>();
+        List<MobileServicePushBatchResult> results = null;
+        Throwable batchError = null;
 
         try {
-            LockProtectedOperation lockedOp = peekAndLock(bookmark);
+            JsonElement body = encoder.encode(tableName, operations, items);
 
-            TableOperation operation = lockedOp != null ? lockedOp.getOperation() : null;
+            countPushedBytes(body);
 
-            while (operation != null) {
-                try {
-                    try {
-                        pushOperation(operation);
-                    } catch (MobileServiceLocalStoreException localStoreException) {
-                        pushCompletionResult.setStatus(MobileServicePushStatus.CancelledByLocalStoreError);
+            JsonElement response = this.mClient.invokeApi(encoder.getApiName(), body).get();
 
-                        operation.setOperationState(MobileServiceTableOperationState.Failed);
-                        break;
-                    } catch (MobileServiceSyncHandlerException syncHandlerException) {
-                        MobileServicePushStatus cancelReason = getPushCancelReason(syncHandlerException);
+            results = encoder.decode(response, operations);
+        } catch (ExecutionException ex) {
+            batchError = ex.getCause();
 
-                        operation.setOperationState(MobileServiceTableOperationState.Failed);
+            MobileServicePushStatus cancelReason = getPushCancelReason(batchError);
 
-                        if (cancelReason != null) {
-                            pushCompletionResult.setStatus(cancelReason);
-                            break;
-                        } else {
-                            this.mOpErrorList.add(getTableOperationError(operation, syncHandlerException));
-                            failedOperations.add(operation);
+            if (cancelReason != null) {
+                pushCompletionResult.setStatus(cancelReason);
+
+                setOperationsState(operations, MobileServiceTableOperationState.Failed);
+                return false;
+            }
+        } catch (InterruptedException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            batchError = ex;
+        }
+
+        for (int i = 0; i < operations.size(); i++) {
+            TableOperation operation = operations.get(i);
+
+            try {
+                JsonObject resultItem = null;
+
+                if (batchError != null) {
+                    operation.setOperationState(MobileServiceTableOperationState.Failed);
+
+                    this.mOpErrorList.add(getTableOperationError(operation, batchError));
+                    failedOperations.add(operation);
+                } else {
+                    MobileServicePushBatchResult result = results.get(i);
+
+                    boolean isDeleted = operation.getKind() == TableOperationKind.Delete;
+
+                    if (result.isSuccessful() || (isDeleted && result.getStatusCode() != null && result.getStatusCode() == 404)) {
+                        if (!isDeleted) {
+                            resultItem = result.getItem();
                         }
-                    }
+                    } else {
+                        // the sync handler sees the failure as if the
+                        // operation had been pushed alone, and can resolve it
+                        BatchResultOperationProcessor processor = new BatchResultOperationProcessor(this.mClient, items.get(i), result);
 
-                    bookmark.dequeue();
+                        try {
+                            resultItem = this.mHandler.executeTableOperation(processor, operation);
+                        } catch (MobileServiceSyncHandlerException syncHandlerException) {
+                            MobileServicePushStatus cancelReason = getPushCancelReason(syncHandlerException);
 
-                } finally {
-                    try {
-                        this.mIdLockMap.unLock(lockedOp.getIdLock());
-                    } finally {
-                        this.mTableLockMap.unLockRead(lockedOp.getTableLock());
+                            operation.setOperationState(MobileServiceTableOperationState.Failed);
+
+                            if (cancelReason != null) {
+                                pushCompletionResult.setStatus(cancelReason);
+                                return false;
+                            }
+
+                            // the batch result is reported, unless the
+                            // handler sent the operation again
+                            if (processor.wasSent()) {
+                                this.mOpErrorList.add(getTableOperationError(operation, syncHandlerException));
+                            } else {
+                                this.mOpErrorList.add(getTableOperationError(operation, result));
+                            }
+
+                            failedOperations.add(operation);
+                        }
                     }
                 }
 
-                lockedOp = peekAndLock(bookmark);
+                bookmark.dequeueDeferred();
 
-                operation = lockedOp != null ? lockedOp.getOperation() : null;
-            }
+                buffer.addCompleted(operation, resultItem);
+            } catch (MobileServiceLocalStoreException localStoreException) {
+                pushCompletionResult.setStatus(MobileServicePushStatus.CancelledByLocalStoreError);
 
-            if (pushCompletionResult.getStatus() == null) {
-                pushCompletionResult.setStatus(MobileServicePushStatus.Complete);
+                operation.setOperationState(MobileServiceTableOperationState.Failed);
+                return false;
             }
+        }
 
-            List<TableOperationError> errors = this.mOpErrorList.getAll();
-            for (TableOperationError error : errors) {
-                error.setContext(this);
-            }
-            pushCompletionResult.setOperationErrors(errors);
+        return true;
+    }
 
-            this.mOpErrorList.clear();
+    /**
+     * @return the item sent to push an operation, with only the changed
+     * properties of an update if delta updates are enabled
+     */
+    private JsonObject getPushItem(TableOperation operation) throws MobileServiceLocalStoreException {
+        if (operation.getKind() == TableOperationKind.Delete) {
+            return operation.getItem();
+        }
 
-            this.mHandler.onPushComplete(pushCompletionResult);
+        JsonObject item = this.mStore.lookup(operation.getTableName(), operation.getItemId());
 
-        } catch (Throwable internalError) {
-            pushCompletionResult.setStatus(MobileServicePushStatus.InternalError);
-            pushCompletionResult.setInternalError(internalError);
+        if (item != null && this.mPushDeltaUpdates && operation.getKind() == TableOperationKind.Update) {
+            Set<String> changedProperties = ((UpdateOperation) operation).getChangedProperties();
+
+            if (changedProperties != null) {
+                item = getChangedItem(item, changedProperties);
+            }
         }
 
-        if (pushCompletionResult.getStatus() != MobileServicePushStatus.Complete) {
-            if (failedOperations.size() > 0) {
-                //Reload Queue with pending error operations
-                this.mOpLock.writeLock().lock();
+        return item;
+    }
 
-                try {
-                    for (TableOperation failedOperation : failedOperations) {
-                        this.mOpQueue.enqueue(failedOperation);
-                    }
-                } catch (Throwable throwable) {
-                } finally {
-                    this.mOpLock.writeLock().unlock();
-                }
+    private static JsonObject getChangedItem(JsonObject item, Set<String> changedProperties) {
+        JsonObject changedItem = new JsonObject();
+
+        Set<String> removedProperties = new HashSet<String>(changedProperties);
+
+        for (Map.Entry<String, JsonElement> property : item.entrySet()) {
+            String name = property.getKey();
+            String invName = name.toLowerCase(Locale.getDefault());
+
+            if (name.equals(MobileServiceSystemColumns.Id) || name.equalsIgnoreCase(MobileServiceSystemColumns.Version)
+                    || removedProperties.remove(invName)) {
+                changedItem.add(name, property.getValue() != null ? property.getValue() : JsonNull.INSTANCE);
             }
-            throw new MobileServicePushFailedException(pushCompletionResult);
         }
+
+        // changed properties that the item no longer has were removed
+        for (String name : removedProperties) {
+            changedItem.add(name, JsonNull.INSTANCE);
+        }
+
+        return changedItem;
     }
 
-    private void pushOperation(TableOperation operation) throws MobileServiceLocalStoreException, MobileServiceSyncHandlerException {
-        operation.setOperationState(MobileServiceTableOperationState.Attempted);
+    private void countPushedBytes(JsonElement content) {
+        try {
+            this.mPushedBytes.addAndGet(content.toString().getBytes("UTF-8").length);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-        JsonObject item;
-        if(operation.getKind() == TableOperationKind.Delete){
-            item = operation.getItem();
-        } else {
-            item = this.mStore.lookup(operation.getTableName(), operation.getItemId());
+    private static void setOperationsState(List<TableOperation> operations, MobileServiceTableOperationState state) {
+        for (TableOperation operation : operations) {
+            operation.setOperationState(state);
         }
+    }
 
-        JsonObject result = this.mHandler.executeTableOperation(new RemoteTableOperationProcessor(this.mClient, item), operation);
+    private LockProtectedBatch peekAndLockBatch(Bookmark bookmark, int batchSize, PushCommitBuffer buffer) throws MobileServiceLocalStoreException {
+        LockProtectedBatch lockedBatch = null;
 
-        if (result != null) {
-            this.mStore.upsert(operation.getTableName(), result, true);
+        // prevent Coffman Circular wait condition: lock resources in same
+        // order, independent of unlock order. Op then Table then Id.
+
+        // get EXCLUSIVE access to op lock, for a short time
+        lockOpForPush(buffer);
+
+        try {
+            List<TableOperation> operations = bookmark.peek(batchSize);
+
+            if (!operations.isEmpty()) {
+                // all the operations of a batch are on the same table
+                MultiReadWriteLock<String> tableLock = this.mTableLockMap.lockRead(operations.get(0).getTableName());
+
+                List<MultiLock<String>> idLocks = new ArrayList<MultiLock<String>>(operations.size());
+
+                for (TableOperation operation : operations) {
+                    idLocks.add(lockItem(operation));
+                }
+
+                lockedBatch = new LockProtectedBatch(operations, tableLock, idLocks);
+            }
+        } finally {
+            this.mOpLock.writeLock().unlock();
+        }
+
+        return lockedBatch;
+    }
+
+    private void unlockBatch(LockProtectedBatch lockedBatch) {
+        try {
+            for (MultiLock<String> idLock : lockedBatch.getIdLocks()) {
+                this.mIdLockMap.unLock(idLock);
+            }
+        } finally {
+            this.mTableLockMap.unLockRead(lockedBatch.getTableLock());
         }
     }
 
-    private LockProtectedOperation peekAndLock(Bookmark bookmark) {
+    private LockProtectedOperation peekAndLock(Bookmark bookmark, PushCommitBuffer buffer) throws MobileServiceLocalStoreException {
         LockProtectedOperation lockedOp = null;
 
         // prevent Coffman Circular wait condition: lock resources in same
         // order, independent of unlock order. Op then Table then Id.
 
         // get EXCLUSIVE access to op lock, for a short time
-        this.mOpLock.writeLock().lock();
+        lockOpForPush(buffer);
 
         try {
             TableOperation operation = bookmark.peek();
@@ -1005,10 +2174,73 @@ public class MobileServiceSyncContext {
         return lockedOp;
     }
 
+    /**
+     * Takes the op lock to peek the next operations. While results wait to be
+     * committed, their locks are held, and a local operation or a pull that
+     * holds the op lock may wait for them, so the op lock is only waited for
+     * once the pending results are committed.
+     */
+    private void lockOpForPush(PushCommitBuffer buffer) throws MobileServiceLocalStoreException {
+        Lock opLock = this.mOpLock.writeLock();
+
+        if (buffer.hasLocks()) {
+            if (opLock.tryLock()) {
+                return;
+            }
+
+            commitPushed(buffer);
+        }
+
+        opLock.lock();
+    }
+
+    /**
+     * Saves the server results of the buffered operations and removes them
+     * from the queue in one store transaction, then releases their locks
+     */
+    private void commitPushed(PushCommitBuffer buffer) throws MobileServiceLocalStoreException {
+        try {
+            this.mOpQueue.commitDeferred(buffer.getResults());
+        } finally {
+            try {
+                for (LockProtectedOperation lockedOp : buffer.getLockedOperations()) {
+                    unlockOperation(lockedOp);
+                }
+
+                for (LockProtectedBatch lockedBatch : buffer.getLockedBatches()) {
+                    unlockBatch(lockedBatch);
+                }
+            } finally {
+                buffer.clear();
+            }
+        }
+    }
+
+    private void commitPushedIfFull(PushCommitBuffer buffer) throws MobileServiceLocalStoreException {
+        if (buffer.getCompletedCount() >= this.mPushCommitSize) {
+            commitPushed(buffer);
+        }
+    }
+
+    /**
+     * Commits the operations still buffered when a push ends. If the commit
+     * fails, the push is cancelled and the operations stay in the store, to
+     * be pushed again once the queue is loaded.
+     */
+    private void commitPushed(PushCommitBuffer buffer, MobileServicePushCompletionResult pushCompletionResult) {
+        try {
+            commitPushed(buffer);
+        } catch (MobileServiceLocalStoreException localStoreException) {
+            setPushCancelStatus(pushCompletionResult, MobileServicePushStatus.CancelledByLocalStoreError);
+        }
+    }
+
     private MobileServicePushStatus getPushCancelReason(MobileServiceSyncHandlerException syncHandlerException) {
-        MobileServicePushStatus reason = null;
+        return getPushCancelReason(syncHandlerException.getCause());
+    }
 
-        Throwable innerException = syncHandlerException.getCause();
+    private MobileServicePushStatus getPushCancelReason(Throwable innerException) {
+        MobileServicePushStatus reason = null;
 
         if (innerException instanceof MobileServiceException) {
             MobileServiceException msEx = (MobileServiceException) innerException;
@@ -1052,6 +2284,20 @@ public class MobileServiceSyncContext {
                 serverResponse, serverItem);
     }
 
+    private TableOperationError getTableOperationError(TableOperation operation, MobileServicePushBatchResult result) throws MobileServiceLocalStoreException {
+        JsonObject clientItem;
+
+        if (operation.getKind() == TableOperationKind.Delete)
+            clientItem = operation.getItem();
+        else
+            clientItem = this.mStore.lookup(operation.getTableName(), operation.getItemId());
+
+        JsonObject serverItem = result.getServerItem();
+
+        return new TableOperationError(operation.getId(), operation.getKind(), operation.getTableName(), operation.getItemId(), clientItem,
+                result.getErrorMessage(), result.getStatusCode(), serverItem != null ? serverItem.toString() : null, serverItem);
+    }
+
     private void processOperation(TableOperation operation, JsonObject item) throws Throwable {
         this.mInitLock.readLock().lock();
 
@@ -1072,8 +2318,10 @@ public class MobileServiceSyncContext {
                     MultiLock<String> idLock = lockItem(operation);
 
                     try {
-                        operation.accept(new LocalTableOperationProcessor(this.mStore, item));
-                        this.mOpQueue.enqueue(operation);
+                        // the local change and the queued operation are committed together
+                        this.mOpQueue.enqueue(operation, new LocalTableOperationProcessor(this.mStore, item));
+
+                        onItemChangedLocally(operation.getTableName(), operation.getItemId());
                     } finally {
                         this.mIdLockMap.unLock(idLock);
                     }
@@ -1088,6 +2336,30 @@ public class MobileServiceSyncContext {
         }
     }
 
+    /**
+     * Gets the Executor of the tasks that pulls and pushes start and wait
+     * for: the reading of prefetched pages and the operations of concurrent
+     * pushes. They run apart from the network executor, whose threads may all
+     * be waiting for them. The pool grows to the number of threads asked for.
+     *
+     * @param minThreads the number of tasks that must be able to run at the
+     *                   same time
+     */
+    private synchronized Executor getSyncTaskExecutor(int minThreads) {
+        int threads = Math.max(minThreads, SYNC_TASK_THREADS);
+
+        if (this.mSyncTaskExecutor == null) {
+            this.mSyncTaskExecutor = new ThreadPoolExecutor(threads, threads, SYNC_TASK_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+            this.mSyncTaskExecutor.allowCoreThreadTimeOut(true);
+        } else if (this.mSyncTaskExecutor.getMaximumPoolSize() < threads) {
+            this.mSyncTaskExecutor.setMaximumPoolSize(threads);
+            this.mSyncTaskExecutor.setCorePoolSize(threads);
+        }
+
+        return this.mSyncTaskExecutor;
+    }
+
     private MultiLock<String> lockItem(TableOperation operation) {
         return lockItem(operation.getTableName(), operation.getItemId());
     }
@@ -1096,6 +2368,134 @@ public class MobileServiceSyncContext {
         return this.mIdLockMap.lock(tableName + "/" + itemId);
     }
 
+    /**
+     * The pages of a pipelined pull. Each page is requested when the previous
+     * one is read, until the last page or until depth pages wait to be taken.
+     * Taking a page resumes the requests.
+     */
+    private static class PrefetchedPages {
+        private final MobileServiceJsonTable mTable;
+        private final PullStrategy mStrategy;
+        private final int mDepth;
+        private final Executor mExecutor;
+        private final Queue<JsonArray> mPages = new LinkedList<JsonArray>();
+        private boolean mRequesting;
+        private boolean mLastPageRead;
+        private boolean mStopped;
+        private Throwable mError;
+
+        /**
+         * @param executor the Executor that reads the responses and requests
+         *                 the next pages
+         */
+        PrefetchedPages(MobileServiceJsonTable table, PullStrategy strategy, int depth, Executor executor) {
+            this.mTable = table;
+            this.mStrategy = strategy;
+            this.mDepth = depth;
+            this.mExecutor = executor;
+        }
+
+        void start() {
+            synchronized (this) {
+                this.mRequesting = true;
+            }
+
+            requestNextPage();
+        }
+
+        /**
+         * Stops the requests of the next pages
+         */
+        synchronized void stop() {
+            this.mStopped = true;
+        }
+
+        /**
+         * Waits for the next page
+         *
+         * @return the page, or null after the last page
+         */
+        JsonArray take() throws Throwable {
+            JsonArray elements;
+            boolean resume;
+
+            synchronized (this) {
+                while (this.mPages.isEmpty() && this.mError == null && !this.mLastPageRead) {
+                    this.wait();
+                }
+
+                if (this.mError != null) {
+                    throw this.mError;
+                }
+
+                elements = this.mPages.poll();
+
+                if (elements == null) {
+                    return null;
+                }
+
+                resume = !this.mRequesting && !this.mLastPageRead;
+
+                if (resume) {
+                    this.mRequesting = true;
+                }
+            }
+
+            if (resume) {
+                requestNextPage();
+            }
+
+            return elements;
+        }
+
+        private void requestNextPage() {
+            final PrefetchedPages thisPages = this;
+
+            Futures.addCallback(executePage(this.mTable, this.mStrategy), new FutureCallback<JsonElement>() {
+                @Override
+                public void onSuccess(JsonElement result) {
+                    boolean requestMore;
+
+                    try {
+                        JsonArray elements = getPageElements(result);
+
+                        // the next page can be requested before this one is written
+                        thisPages.mStrategy.onPageRead(elements);
+
+                        boolean hasNextPage = thisPages.mStrategy.moveToNextPage(elements.size(), getNextLink(result));
+
+                        synchronized (thisPages) {
+                            thisPages.mPages.add(elements);
+                            thisPages.mLastPageRead = !hasNextPage;
+                            thisPages.mRequesting = hasNextPage && !thisPages.mStopped && thisPages.mPages.size() < thisPages.mDepth;
+
+                            requestMore = thisPages.mRequesting;
+
+                            thisPages.notifyAll();
+                        }
+                    } catch (Throwable throwable) {
+                        onFailure(throwable);
+                        return;
+                    }
+
+                    if (requestMore) {
+                        requestNextPage();
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                    synchronized (thisPages) {
+                        thisPages.mError = throwable;
+                        thisPages.mRequesting = false;
+
+                        thisPages.notifyAll();
+                    }
+                }
+            }, this.mExecutor);
+        }
+    }
+
     private static class PushSyncRequest {
         private Bookmark mBookmark;
         private Semaphore mSignalDone;
@@ -1147,4 +2547,122 @@ public class MobileServiceSyncContext {
             return this.mIdLock;
         }
     }
+
+    private static class PushedOperation {
+        private TableOperation mOperation;
+        private JsonObject mResult;
+        private Throwable mError;
+
+        private PushedOperation(TableOperation operation, JsonObject result, Throwable error) {
+            this.mOperation = operation;
+            this.mResult = result;
+            this.mError = error;
+        }
+
+        private TableOperation getOperation() {
+            return this.mOperation;
+        }
+
+        private JsonObject getResult() {
+            return this.mResult;
+        }
+
+        private Throwable getError() {
+            return this.mError;
+        }
+    }
+
+    private static class LockProtectedBatch {
+        private List<TableOperation> mOperations;
+        private MultiReadWriteLock<String> mTableLock;
+        private List<MultiLock<String>> mIdLocks;
+
+        private LockProtectedBatch(List<TableOperation> operations, MultiReadWriteLock<String> tableLock, List<MultiLock<String>> idLocks) {
+            this.mOperations = operations;
+            this.mTableLock = tableLock;
+            this.mIdLocks = idLocks;
+        }
+
+        private List<TableOperation> getOperations() {
+            return this.mOperations;
+        }
+
+        private MultiReadWriteLock<String> getTableLock() {
+            return this.mTableLock;
+        }
+
+        private List<MultiLock<String>> getIdLocks() {
+            return this.mIdLocks;
+        }
+    }
+
+    /**
+     * Pushed operations whose results are not committed yet, and the locks
+     * held until they are
+     */
+    private static class PushCommitBuffer {
+        private List<LockProtectedOperation> mLockedOperations;
+        private List<LockProtectedBatch> mLockedBatches;
+        private Map<String, List<JsonObject>> mResults;
+        private int mCompletedCount;
+
+        private PushCommitBuffer() {
+            this.mLockedOperations = new ArrayList<LockProtectedOperation>();
+            this.mLockedBatches = new ArrayList<LockProtectedBatch>();
+            this.mResults = new HashMap<String, List<JsonObject>>();
+        }
+
+        private void addLockedOperation(LockProtectedOperation lockedOp) {
+            this.mLockedOperations.add(lockedOp);
+        }
+
+        private void addLockedBatch(LockProtectedBatch lockedBatch) {
+            this.mLockedBatches.add(lockedBatch);
+        }
+
+        /**
+         * Adds a dequeued operation, and its server result if there is one
+         */
+        private void addCompleted(TableOperation operation, JsonObject result) {
+            if (result != null) {
+                List<JsonObject> tableResults = this.mResults.get(operation.getTableName());
+
+                if (tableResults == null) {
+                    tableResults = new ArrayList<JsonObject>();
+                    this.mResults.put(operation.getTableName(), tableResults);
+                }
+
+                tableResults.add(result);
+            }
+
+            this.mCompletedCount++;
+        }
+
+        private boolean hasLocks() {
+            return !this.mLockedOperations.isEmpty() || !this.mLockedBatches.isEmpty();
+        }
+
+        private List<LockProtectedOperation> getLockedOperations() {
+            return this.mLockedOperations;
+        }
+
+        private List<LockProtectedBatch> getLockedBatches() {
+            return this.mLockedBatches;
+        }
+
+        private Map<String, List<JsonObject>> getResults() {
+            return this.mResults;
+        }
+
+        private int getCompletedCount() {
+            return this.mCompletedCount;
+        }
+
+        private void clear() {
+            this.mLockedOperations.clear();
+            this.mLockedBatches.clear();
+            this.mResults.clear();
+            this.mCompletedCount = 0;
+        }
+    }
 }
@@ -94,6 +94,22 @@ public class MobileServiceSyncTable<E> {
         return result;
     }
 
+    /**
+     * Performs a query against the remote table and stores results, pulling
+     * partitions of the table concurrently.
+     *
+     * @param query          an optional query to filter results
+     * @param queryId        an optional query id, to pull incrementally. Each
+     *                       partition keeps its own watermark.
+     * @param partitions     the partition filters, see {@link com.microsoft.windowsazure.mobileservices.table.sync.pull.PullPartitions}
+     * @param maxConcurrency the maximum number of partitions pulled at the
+     *                       same time
+     * @return A ListenableFuture that is done when results have been pulled.
+     */
+    public ListenableFuture<Void> pull(Query query, String queryId, List<Query> partitions, int maxConcurrency) {
+        return this.mInternalTable.pull(query, queryId, partitions, maxConcurrency);
+    }
+
     /**
      * Performs a query against the remote table and stores results.
      *
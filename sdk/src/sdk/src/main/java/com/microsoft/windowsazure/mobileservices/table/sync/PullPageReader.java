@@ -0,0 +1,302 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * PullPageReader.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.microsoft.windowsazure.mobileservices.http.JsonResponseReader;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceJsonTable;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.PullStrategy;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceStreamingLocalStore;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.StreamedRowsResult;
+import com.microsoft.windowsazure.mobileservices.threading.MultiReadWriteLockDictionary.MultiReadWriteLock;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.Set;
+
+/**
+ * Reads a page of a pull response and writes its rows into the local store
+ * without building a tree of the page. The streamed page is first copied as
+ * is, in memory or in a temporary file for large pages, so that the table is
+ * not locked while the response arrives. The rows of a page and the pull
+ * strategy state are then committed in a single unit of work, with the table
+ * locked.
+ */
+class PullPageReader implements JsonResponseReader<StreamedRowsResult> {
+
+    /**
+     * Size above which a page is copied to a temporary file instead of
+     * memory, in bytes
+     */
+    private static final int SPOOL_MEMORY_LIMIT = 1024 * 1024;
+
+    private static final String UTF8_ENCODING = "UTF-8";
+
+    private MobileServiceSyncContext mContext;
+
+    private MobileServiceStreamingLocalStore mStore;
+
+    private String mTableName;
+
+    private PullStrategy mStrategy;
+
+    private Set<String> mSkippedItemIds;
+
+    private String mNextLink;
+
+    /**
+     * Constructor for PullPageReader
+     *
+     * @param context        the sync context that locks the table
+     * @param store          the local store
+     * @param tableName      the local table name
+     * @param strategy       the pull strategy notified of the processed rows
+     * @param skippedItemIds the ids of the items whose rows are not written
+     */
+    PullPageReader(MobileServiceSyncContext context, MobileServiceStreamingLocalStore store, String tableName, PullStrategy strategy,
+                   Set<String> skippedItemIds) {
+        this.mContext = context;
+        this.mStore = store;
+        this.mTableName = tableName;
+        this.mStrategy = strategy;
+        this.mSkippedItemIds = skippedItemIds;
+    }
+
+    /**
+     * @return the continuation link sent with the last page read, or null
+     */
+    String getNextLink() {
+        return this.mNextLink;
+    }
+
+    @Override
+    public StreamedRowsResult read(JsonReader reader, ServiceFilterResponse response) throws Exception {
+        this.mNextLink = MobileServiceJsonTable.getNextLink(response.getHeaders());
+
+        if (reader == null) {
+            return writePage(null);
+        }
+
+        PageSpool spool = new PageSpool();
+
+        try {
+            // the page is read from the network before the table is locked
+            JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(spool, UTF8_ENCODING)));
+            writer.setLenient(true);
+
+            copyValue(reader, writer);
+
+            writer.close();
+
+            JsonReader spooledReader = new JsonReader(new InputStreamReader(spool.openInputStream(), UTF8_ENCODING));
+
+            try {
+                return writePage(spooledReader);
+            } finally {
+                spooledReader.close();
+            }
+        } finally {
+            spool.delete();
+        }
+    }
+
+    private StreamedRowsResult writePage(JsonReader reader) throws Exception {
+        MultiReadWriteLock<String> pageLock = this.mContext.lockPullPage(this.mTableName);
+
+        try {
+            this.mStore.beginTransaction();
+
+            try {
+                StreamedRowsResult result = readRows(reader);
+
+                this.mStrategy.onResultsProcessed(result);
+
+                this.mStore.setTransactionSuccessful();
+
+                return result;
+            } finally {
+                this.mStore.endTransaction();
+            }
+        } finally {
+            this.mContext.unlockPullPage(pageLock);
+        }
+    }
+
+    private StreamedRowsResult readRows(JsonReader reader) throws Exception {
+        StreamedRowsResult result = null;
+
+        if (reader != null) {
+            JsonToken token = reader.peek();
+
+            if (token == JsonToken.BEGIN_ARRAY) {
+                result = this.mStore.upsertFromServer(this.mTableName, reader, this.mSkippedItemIds);
+            } else if (token == JsonToken.BEGIN_OBJECT) {
+                // results wrapped with the inline count
+                reader.beginObject();
+
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+
+                    if (name.equals("results") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        result = this.mStore.upsertFromServer(this.mTableName, reader, this.mSkippedItemIds);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+
+                reader.endObject();
+            }
+        }
+
+        return result != null ? result : new StreamedRowsResult(0, null, null);
+    }
+
+    /**
+     * Copies the next value of a reader, numbers keeping their literal form
+     */
+    private static void copyValue(JsonReader reader, JsonWriter writer) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                writer.beginArray();
+
+                while (reader.hasNext()) {
+                    copyValue(reader, writer);
+                }
+
+                reader.endArray();
+                writer.endArray();
+                break;
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                writer.beginObject();
+
+                while (reader.hasNext()) {
+                    writer.name(reader.nextName());
+                    copyValue(reader, writer);
+                }
+
+                reader.endObject();
+                writer.endObject();
+                break;
+            case STRING:
+                writer.value(reader.nextString());
+                break;
+            case NUMBER:
+                writer.jsonValue(reader.nextString());
+                break;
+            case BOOLEAN:
+                writer.value(reader.nextBoolean());
+                break;
+            case NULL:
+                reader.nextNull();
+                writer.nullValue();
+                break;
+            default:
+                throw new IllegalStateException("Unexpected JSON token: " + reader.peek());
+        }
+    }
+
+    /**
+     * Copy of a page, kept in memory up to SPOOL_MEMORY_LIMIT bytes and in a
+     * temporary file beyond
+     */
+    private static class PageSpool extends OutputStream {
+        private ByteArrayOutputStream mMemory = new ByteArrayOutputStream();
+        private File mFile;
+        private OutputStream mFileStream;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            if (this.mFile == null && this.mMemory.size() + length > SPOOL_MEMORY_LIMIT) {
+                this.mFile = File.createTempFile("pullpage", ".json");
+                this.mFileStream = new BufferedOutputStream(new FileOutputStream(this.mFile));
+
+                this.mMemory.writeTo(this.mFileStream);
+                this.mMemory = null;
+            }
+
+            if (this.mFileStream != null) {
+                this.mFileStream.write(buffer, offset, length);
+            } else {
+                this.mMemory.write(buffer, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (this.mFileStream != null) {
+                this.mFileStream.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.mFileStream != null) {
+                this.mFileStream.close();
+            }
+        }
+
+        InputStream openInputStream() throws IOException {
+            if (this.mFile != null) {
+                return new BufferedInputStream(new FileInputStream(this.mFile));
+            }
+
+            return new ByteArrayInputStream(this.mMemory.toByteArray());
+        }
+
+        void delete() {
+            if (this.mFileStream != null) {
+                try {
+                    this.mFileStream.close();
+                } catch (IOException e) {
+                    // the file is deleted anyway
+                }
+            }
+
+            if (this.mFile != null) {
+                this.mFile.delete();
+            }
+        }
+    }
+}
@@ -27,6 +27,7 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -47,6 +48,17 @@ public interface MobileServiceLocalStore {
      */
     void defineTable(String tableName, Map<String, ColumnDataType> columns) throws MobileServiceLocalStoreException;
 
+    /**
+     * Defines an index to be created on initialization. Indexes are created
+     * only if missing, and indexes that are no longer defined are dropped.
+     *
+     * @param tableName   the table name
+     * @param columnNames the names of the indexed columns, in index order
+     * @param unique      true if the indexed values must be unique
+     * @throws MobileServiceLocalStoreException
+     */
+    void defineIndex(String tableName, List<String> columnNames, boolean unique) throws MobileServiceLocalStoreException;
+
     /**
      * Retrieve results from the local store.
      *
@@ -111,4 +123,29 @@ public interface MobileServiceLocalStore {
      * @throws MobileServiceLocalStoreException
      */
     void delete(Query query) throws MobileServiceLocalStoreException;
+
+    /**
+     * Begins a unit of work. The writes made on the calling thread, to any
+     * table, until the matching endTransaction call are committed together.
+     * Units of work can be nested.
+     *
+     * @throws MobileServiceLocalStoreException
+     */
+    void beginTransaction() throws MobileServiceLocalStoreException;
+
+    /**
+     * Marks the current unit of work as successful, so that endTransaction
+     * commits it.
+     *
+     * @throws MobileServiceLocalStoreException
+     */
+    void setTransactionSuccessful() throws MobileServiceLocalStoreException;
+
+    /**
+     * Ends the current unit of work. It is committed if it was marked as
+     * successful, and rolled back otherwise.
+     *
+     * @throws MobileServiceLocalStoreException
+     */
+    void endTransaction() throws MobileServiceLocalStoreException;
 }
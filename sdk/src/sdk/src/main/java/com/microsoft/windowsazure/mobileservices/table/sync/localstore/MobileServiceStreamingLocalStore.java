@@ -0,0 +1,48 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * MobileServiceStreamingLocalStore.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
+
+import com.google.gson.stream.JsonReader;
+
+import java.util.Set;
+
+/**
+ * A local store able to ingest rows coming from the server directly from a
+ * JSON stream, without building intermediate JsonObject trees.
+ */
+public interface MobileServiceStreamingLocalStore extends MobileServiceLocalStore {
+    /**
+     * Reads a JSON array of rows coming from the server and applies it to a
+     * local table. Rows flagged as deleted are removed, and the others are
+     * inserted or replaced. All the writes are done in a single transaction.
+     *
+     * @param tableName      the local table name
+     * @param reader         a reader positioned at the start of the JSON array
+     * @param skippedItemIds the ids of the items whose rows are read but not
+     *                       applied, or null
+     * @return a summary of the rows read
+     * @throws MobileServiceLocalStoreException
+     */
+    StreamedRowsResult upsertFromServer(String tableName, JsonReader reader, Set<String> skippedItemIds) throws MobileServiceLocalStoreException;
+}
@@ -27,34 +27,83 @@ import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseErrorHandler;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
+import android.text.TextUtils;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemColumns;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.query.QuerySQLWriter;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 /**
  * Implements MobileServiceLocalStore backed by an SQLite DB
  */
-public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceLocalStore {
+public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceStreamingLocalStore {
+    private static final int STATEMENT_CACHE_SIZE = SQLiteDatabase.MAX_SQL_CACHE_SIZE;
+
+    private static final String INLINE_COUNT_COLUMN = "__inlinecount";
+
+    private static final String INDEX_PREFIX = "__ix_";
+    private static final String UNIQUE_INDEX_PREFIX = "__ux_";
+    private static final String FULL_TEXT_INDEX_PREFIX = "__fts_";
+
     private Map<String, Map<String, ColumnDataInfo>> mTables;
+    private Map<String, SQLiteRowDecoder> mRowDecoders;
+    private Map<String, Map<String, String>> mIndexes;
+    private Map<String, List<String>> mFullTextIndexes;
+    private Map<String, List<String>> mInitializedFullTextIndexes;
+    private SQLiteStatementCache mStatementCache;
     private int mConcurrencyCount;
     private Object mConcurrencyLock;
+    private boolean mPersistentConnection;
+    private SynchronousMode mSynchronousMode;
+    private int mCacheSize;
+
+    /**
+     * Values for the SQLite synchronous setting, which controls how often the
+     * database is flushed to disk
+     */
+    public enum SynchronousMode {
+        /**
+         * No flush, fastest but a power loss may corrupt the database
+         */
+        Off,
+        /**
+         * Flush at critical moments. Safe with write-ahead logging
+         */
+        Normal,
+        /**
+         * Flush on every commit. SQLite default
+         */
+        Full
+    }
 
     /**
      * Constructor for SQLiteLocalStore
@@ -71,6 +120,11 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
     public SQLiteLocalStore(Context context, String name, CursorFactory factory, int version) {
         super(context, name, factory, version);
         this.mTables = new HashMap<String, Map<String, ColumnDataInfo>>();
+        this.mRowDecoders = new HashMap<String, SQLiteRowDecoder>();
+        this.mIndexes = new HashMap<String, Map<String, String>>();
+        this.mFullTextIndexes = new HashMap<String, List<String>>();
+        this.mInitializedFullTextIndexes = new HashMap<String, List<String>>();
+        this.mStatementCache = new SQLiteStatementCache(STATEMENT_CACHE_SIZE);
         this.mConcurrencyCount = 0;
         this.mConcurrencyLock = new Object();
     }
@@ -93,6 +147,74 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
     public SQLiteLocalStore(Context context, String name, CursorFactory factory, int version, DatabaseErrorHandler errorHandler) {
         super(context, name, factory, version, errorHandler);
         this.mTables = new HashMap<String, Map<String, ColumnDataInfo>>();
+        this.mRowDecoders = new HashMap<String, SQLiteRowDecoder>();
+        this.mIndexes = new HashMap<String, Map<String, String>>();
+        this.mFullTextIndexes = new HashMap<String, List<String>>();
+        this.mInitializedFullTextIndexes = new HashMap<String, List<String>>();
+        this.mStatementCache = new SQLiteStatementCache(STATEMENT_CACHE_SIZE);
+        this.mConcurrencyCount = 0;
+        this.mConcurrencyLock = new Object();
+    }
+
+    /**
+     * Enables a long-lived connection: the database is opened once and kept
+     * open until {@link #close()} is called, instead of being closed whenever
+     * no operation is running. Write-ahead logging is enabled together with it,
+     * so readers do not block the writer. Must be called before initialize.
+     *
+     * @param enabled true to keep the database open
+     */
+    public void setPersistentConnection(boolean enabled) {
+        synchronized (mConcurrencyLock) {
+            this.mPersistentConnection = enabled;
+        }
+
+        this.setWriteAheadLoggingEnabled(enabled);
+    }
+
+    /**
+     * @return true if the database is kept open between operations
+     */
+    public boolean isPersistentConnection() {
+        synchronized (mConcurrencyLock) {
+            return this.mPersistentConnection;
+        }
+    }
+
+    /**
+     * Sets the SQLite synchronous level applied when the database is opened.
+     * Must be called before initialize.
+     *
+     * @param synchronousMode the synchronous level, or null to use the SQLite default
+     */
+    public void setSynchronousMode(SynchronousMode synchronousMode) {
+        this.mSynchronousMode = synchronousMode;
+    }
+
+    /**
+     * Sets the SQLite page cache size applied when the database is opened.
+     * Must be called before initialize.
+     *
+     * @param cacheSize the number of pages to cache, or 0 to use the SQLite default
+     */
+    public void setCacheSize(int cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Cache size cannot be negative.");
+        }
+
+        this.mCacheSize = cacheSize;
+    }
+
+    /**
+     * Closes the database. When a persistent connection is used, this must be
+     * called once the store is no longer needed
+     */
+    @Override
+    public void close() {
+        synchronized (mConcurrencyLock) {
+            this.mStatementCache.clear();
+            super.close();
+        }
     }
 
     @Override
@@ -101,6 +223,8 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         try {
             for (Entry<String, Map<String, ColumnDataInfo>> entry : this.mTables.entrySet()) {
                 createTableFromObject(db, entry.getKey(), entry.getValue());
+                createIndexes(db, entry.getKey());
+                createFullTextIndex(db, entry.getKey());
             }
         } catch (Throwable t) {
             throw new MobileServiceLocalStoreException(t);
@@ -114,7 +238,7 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         try {
             String invTableName = normalizeTableName(tableName);
 
-            Map<String, ColumnDataInfo> table = this.mTables.containsKey(invTableName) ? this.mTables.get(invTableName) : new HashMap<String, ColumnDataInfo>();
+            Map<String, ColumnDataInfo> table = this.mTables.containsKey(invTableName) ? this.mTables.get(invTableName) : new LinkedHashMap<String, ColumnDataInfo>();
             table.put("id", new ColumnDataInfo(ColumnDataType.String, "id"));
 
             for (String colName : columns.keySet()) {
@@ -129,6 +253,132 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
             }
 
             this.mTables.put(invTableName, table);
+
+            synchronized (this.mRowDecoders) {
+                this.mRowDecoders.clear();
+            }
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    @Override
+    public void defineIndex(String tableName, List<String> columnNames, boolean unique) throws MobileServiceLocalStoreException {
+        try {
+            String invTableName = normalizeTableName(tableName);
+
+            Map<String, ColumnDataInfo> table = this.mTables.get(invTableName);
+
+            if (table == null) {
+                throw new IllegalArgumentException("Table must be defined before its indexes.");
+            }
+
+            if (columnNames == null || columnNames.size() == 0) {
+                throw new IllegalArgumentException("Index must have at least one column.");
+            }
+
+            List<String> invColumnNames = normalizeColumnNames(columnNames);
+
+            for (String invColumnName : invColumnNames) {
+                if (!table.containsKey(invColumnName)) {
+                    throw new IllegalArgumentException("Column \"" + invColumnName + "\" is not defined in table \"" + invTableName + "\".");
+                }
+            }
+
+            String indexName = getIndexName(invTableName, invColumnNames, unique);
+
+            StringBuilder sql = new StringBuilder();
+
+            sql.append(unique ? "CREATE UNIQUE INDEX IF NOT EXISTS \"" : "CREATE INDEX IF NOT EXISTS \"");
+            sql.append(indexName);
+            sql.append("\" ON \"");
+            sql.append(invTableName);
+            sql.append("\" (");
+
+            String delimiter = "";
+
+            for (String invColumnName : invColumnNames) {
+                sql.append(delimiter);
+                sql.append("\"");
+                sql.append(invColumnName);
+                sql.append("\"");
+                delimiter = ",";
+            }
+
+            sql.append(")");
+
+            Map<String, String> indexes = this.mIndexes.containsKey(invTableName) ? this.mIndexes.get(invTableName) : new LinkedHashMap<String, String>();
+            indexes.put(indexName, sql.toString());
+
+            this.mIndexes.put(invTableName, indexes);
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    /**
+     * Gets the name of an index from its definition. Each name part is
+     * prefixed with its length, so that names with underscores cannot make
+     * two definitions share a name and skip one of the indexes.
+     */
+    private static String getIndexName(String invTableName, List<String> invColumnNames, boolean unique) {
+        StringBuilder indexName = new StringBuilder(unique ? UNIQUE_INDEX_PREFIX : INDEX_PREFIX);
+
+        appendIndexNamePart(indexName, invTableName);
+
+        for (String invColumnName : invColumnNames) {
+            indexName.append("_");
+            appendIndexNamePart(indexName, invColumnName);
+        }
+
+        return indexName.toString();
+    }
+
+    private static void appendIndexNamePart(StringBuilder indexName, String part) {
+        indexName.append(part.length());
+        indexName.append("_");
+        indexName.append(part);
+    }
+
+    /**
+     * Defines a full text index to be created on initialization, kept in a
+     * shadow FTS table that is updated together with the table. Filters on
+     * the covered columns with startswith, and with substringof when the
+     * searched text contains a word separator, are narrowed with the index
+     * instead of scanning the table. The index is kept by rowid, which a
+     * VACUUM of the database can renumber: initialization checks it against
+     * the table and rebuilds it if needed, so the store should be initialized
+     * again after a VACUUM, before it is written to.
+     *
+     * @param tableName   the table name
+     * @param columnNames the names of the indexed String columns
+     * @throws MobileServiceLocalStoreException
+     */
+    public void defineFullTextIndex(String tableName, List<String> columnNames) throws MobileServiceLocalStoreException {
+        try {
+            String invTableName = normalizeTableName(tableName);
+
+            Map<String, ColumnDataInfo> table = this.mTables.get(invTableName);
+
+            if (table == null) {
+                throw new IllegalArgumentException("Table must be defined before its indexes.");
+            }
+
+            if (columnNames == null || columnNames.size() == 0) {
+                throw new IllegalArgumentException("Index must have at least one column.");
+            }
+
+            List<String> invColumnNames = normalizeColumnNames(columnNames);
+
+            for (String invColumnName : invColumnNames) {
+                ColumnDataInfo column = table.get(invColumnName);
+
+                if (column == null || column.getColumnDataType() != ColumnDataType.String) {
+                    throw new IllegalArgumentException("Column \"" + invColumnName + "\" must be a String column of table \"" + invTableName + "\".");
+                }
+            }
+
+            this.mFullTextIndexes.put(invTableName, invColumnNames);
         } catch (Throwable t) {
             throw new MobileServiceLocalStoreException(t);
         }
@@ -144,15 +394,38 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
 
             Map<String, ColumnDataInfo> table = this.mTables.get(invTableName);
 
-            String[] columns = getColumns(query, table);
+            SQLiteRowDecoder rowDecoder = getRowDecoder(invTableName, table, query.getProjection());
+
+            String[] columns = rowDecoder.getColumns();
+
+            List<Object> arguments = new ArrayList<Object>();
 
-            String whereClause = getWhereClause(query);
+            String whereClause = getWhereClause(invTableName, query, arguments);
+
+            Object[] whereArguments = arguments.toArray();
 
             String orderByClause = QuerySQLWriter.getOrderByClause(query);
 
-            String limitClause = QuerySQLWriter.getLimitClause(query);
+            String limitClause = QuerySQLWriter.getLimitClause(query, arguments);
+
+            String[] queryColumns = columns;
+
+            if (query.hasInlineCount()) {
+                // the count is read by the same statement as the page, so
+                // both come from one snapshot without holding a transaction
+                queryColumns = Arrays.copyOf(columns, columns.length + 1);
+                queryColumns[columns.length] = "(" + getCountSql(invTableName, whereClause) + ") AS " + INLINE_COUNT_COLUMN;
+            }
 
-            Integer inlineCount = null;
+            String sql = SQLiteQueryBuilder.buildQueryString(false, invTableName, queryColumns, whereClause, null, null, orderByClause, null);
+
+            if (limitClause != null) {
+                sql += " " + limitClause;
+            }
+
+            CursorFactory cursorFactory = arguments.isEmpty() ? null : new BindArgumentsCursorFactory(arguments.toArray());
+
+            Long inlineCount = null;
 
             SQLiteDatabase db = this.getWritableDatabaseSynchronized();
 
@@ -160,30 +433,26 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
                 Cursor cursor = null;
 
                 try {
-                    if (query.hasInlineCount()) {
-                        cursor = db.query(invTableName, columns, whereClause, null, null, null, orderByClause, null);
-                        inlineCount = cursor.getCount();
+                    cursor = db.rawQueryWithFactory(cursorFactory, sql, null, invTableName);
 
-                        if (query.getSkip() > 0) {
-                            cursor.move(query.getSkip());
+                    while (cursor.moveToNext()) {
+                        if (inlineCount == null && query.hasInlineCount()) {
+                            inlineCount = cursor.getLong(columns.length);
                         }
-                    } else {
-                        cursor = db.query(invTableName, columns, whereClause, null, null, null, orderByClause, limitClause);
-                    }
-
-                    int limit = 0;
 
-                    while (!(query.getTop() > 0 && limit == query.getTop()) && cursor.moveToNext()) {
-                        JsonObject row = parseRow(cursor, table);
+                        JsonObject row = rowDecoder.decode(cursor);
                         rows.add(row);
-
-                        limit++;
                     }
                 } finally {
                     if (cursor != null && !cursor.isClosed()) {
                         cursor.close();
                     }
                 }
+
+                // an empty page has no row to carry the count
+                if (inlineCount == null && query.hasInlineCount()) {
+                    inlineCount = queryCount(db, invTableName, whereClause, whereArguments);
+                }
             } finally {
                 this.closeDatabaseSynchronized(db);
             }
@@ -211,16 +480,18 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
 
             Map<String, ColumnDataInfo> table = this.mTables.get(invTableName);
 
+            SQLiteRowDecoder rowDecoder = getRowDecoder(invTableName, table, null);
+
             SQLiteDatabase db = this.getWritableDatabaseSynchronized();
             
             try {
                 Cursor cursor = null;
 
                 try {
-                    cursor = db.query(invTableName, table.keySet().toArray(new String[0]), "id = '" + itemId + "'", null, null, null, null);
+                    cursor = db.query(invTableName, rowDecoder.getColumns(), "\"id\" = ?", new String[]{itemId}, null, null, null);
 
                     if (cursor.moveToNext()) {
-                        result = parseRow(cursor, table);
+                        result = rowDecoder.decode(cursor);
                     }
                 } finally {
                     if (cursor != null && !cursor.isClosed()) {
@@ -267,36 +538,151 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
 
             int pendingItems = itemsCount;
 
-            for (int i=0; i < pageCounts; i++) {
+            SQLiteDatabase db = this.getWritableDatabaseSynchronized();
 
-                int localPageSize = pageSize;
+            try {
+                // all the pages are committed together
+                db.beginTransaction();
 
-                if (pendingItems < pageSize) {
-                    localPageSize = pendingItems;
-                }
+                try {
+                    for (int i = 0; i < pageCounts; i++) {
+
+                        int localPageSize = pageSize;
+
+                        if (pendingItems < pageSize) {
+                            localPageSize = pendingItems;
+                        }
+
+                        JsonObject[] pageItems = new JsonObject[localPageSize];
+
+                        for (int j = 0; j < localPageSize; j++) {
+                            pageItems[j] = items[(i * pageSize) + j];
+                        }
+
+                        Statement statement = generateUpsertStatement(invTableName, pageItems, fromServer);
+
+                        if (fromServer && statement.sql.isEmpty())
+                            break;
 
-                JsonObject[] pageItems = new JsonObject[localPageSize];
+                        executeUpdate(db, statement.sql, statement.parameters.toArray());
 
-                for(int j=0; j < localPageSize; j++) {
-                    pageItems[j] = items[(i * pageSize) + j];
+                        pendingItems -= pageSize;
+                    }
+
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
                 }
+            } finally {
+                this.closeDatabaseSynchronized(db);
+            }
+
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
 
-                Statement statement = generateUpsertStatement(invTableName, pageItems, fromServer);
+    @Override
+    public StreamedRowsResult upsertFromServer(String tableName, JsonReader reader, Set<String> skippedItemIds) throws MobileServiceLocalStoreException {
+        try {
+            String invTableName = normalizeTableName(tableName);
 
-                if (fromServer && statement.sql.isEmpty())
-                    return;
+            Map<String, ColumnDataInfo> table = this.mTables.get(invTableName);
 
-                SQLiteDatabase db = this.getWritableDatabaseSynchronized();
+            // Stable column order, used to bind the values read from each row
+            String[] columnNames = table.keySet().toArray(new String[0]);
+            Map<String, Integer> columnIndexes = new HashMap<String, Integer>(columnNames.length);
+
+            for (int i = 0; i < columnNames.length; i++) {
+                columnIndexes.put(columnNames[i], i);
+            }
+
+            Object[] values = new Object[columnNames.length];
+            Set<String> deletedIds = new LinkedHashSet<String>();
+
+            int count = 0;
+            String lastItemId = null;
+            String lastUpdatedAt = null;
+
+            SQLiteDatabase db = this.getWritableDatabaseSynchronized();
+
+            try {
+                db.beginTransaction();
 
                 try {
-                    db.execSQL(statement.sql, statement.parameters.toArray());
+                    String upsertSql = generateUpsertSql(invTableName, columnNames);
+                    SQLiteStatement upsertStatement = this.mStatementCache.acquire(db, upsertSql);
+
+                    try {
+                        reader.beginArray();
+
+                        while (reader.hasNext()) {
+                            Arrays.fill(values, null);
+
+                            String itemId = null;
+                            String updatedAt = null;
+                            boolean deleted = false;
+
+                            reader.beginObject();
+
+                            while (reader.hasNext()) {
+                                String propertyName = reader.nextName();
+                                String invColumnName = propertyName.toLowerCase(Locale.getDefault());
+
+                                Object value = readValue(reader);
+
+                                if (propertyName.equals(MobileServiceSystemColumns.Id)) {
+                                    itemId = value != null ? value.toString() : null;
+                                } else if (propertyName.equals(MobileServiceSystemColumns.UpdatedAt)) {
+                                    updatedAt = value != null ? value.toString() : null;
+                                } else if (propertyName.equals(MobileServiceSystemColumns.Deleted)) {
+                                    deleted = value instanceof Long ? (Long) value > 0 : value != null && Boolean.parseBoolean(value.toString());
+                                }
+
+                                Integer columnIndex = columnIndexes.get(invColumnName);
+
+                                if (columnIndex != null) {
+                                    values[columnIndex] = value;
+                                }
+                            }
+
+                            reader.endObject();
+
+                            count++;
+                            lastItemId = itemId;
+                            lastUpdatedAt = updatedAt;
+
+                            if (itemId == null || (skippedItemIds != null && skippedItemIds.contains(itemId))) {
+                                continue;
+                            }
+
+                            if (deleted) {
+                                deletedIds.add(itemId);
+                            } else {
+                                // replacing the row supersedes an earlier delete in the same page
+                                deletedIds.remove(itemId);
+
+                                bindValues(upsertStatement, values);
+                                upsertStatement.executeInsert();
+                            }
+                        }
+
+                        reader.endArray();
+                    } finally {
+                        this.mStatementCache.release(upsertSql, upsertStatement);
+                    }
+
+                    deleteBatch(db, invTableName, deletedIds.toArray(new String[deletedIds.size()]));
+
+                    db.setTransactionSuccessful();
                 } finally {
-                    this.closeDatabaseSynchronized(db);
+                    db.endTransaction();
                 }
-
-                pendingItems -= pageSize;
+            } finally {
+                this.closeDatabaseSynchronized(db);
             }
 
+            return new StreamedRowsResult(count, lastItemId, lastUpdatedAt);
         } catch (Throwable t) {
             throw new MobileServiceLocalStoreException(t);
         }
@@ -310,7 +696,7 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
             SQLiteDatabase db = this.getWritableDatabaseSynchronized();
 
             try {
-                db.delete(invTableName, "id = '" + itemId + "'", null);
+                executeUpdate(db, generateDeleteSql(invTableName, 1), new Object[]{itemId});
             } finally {
                 this.closeDatabaseSynchronized(db);
             }
@@ -327,8 +713,14 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
             SQLiteDatabase db = this.getWritableDatabaseSynchronized();
 
             try {
-                for (String itemId : itemsIds) {
-                    db.delete(invTableName, "id = '" + itemId + "'", null);
+                db.beginTransaction();
+
+                try {
+                    deleteBatch(db, invTableName, itemsIds);
+
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
                 }
             } finally {
                 this.closeDatabaseSynchronized(db);
@@ -343,12 +735,16 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         try {
             String invTableName = normalizeTableName(query.getTableName());
 
-            String whereClause = getWhereClause(query);
+            List<Object> arguments = new ArrayList<Object>();
+
+            String whereClause = getWhereClause(invTableName, query, arguments);
+
+            String sql = "DELETE FROM \"" + invTableName + "\"" + (whereClause != null ? " WHERE " + whereClause : "");
 
             SQLiteDatabase db = this.getWritableDatabaseSynchronized();
 
             try {
-                db.delete(invTableName, whereClause, null);
+                executeUpdate(db, sql, arguments.toArray());
             } finally {
                 this.closeDatabaseSynchronized(db);
             }
@@ -357,6 +753,63 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         }
     }
 
+    @Override
+    public void beginTransaction() throws MobileServiceLocalStoreException {
+        try {
+            // the database is kept open until the matching endTransaction
+            SQLiteDatabase db = this.getWritableDatabaseSynchronized();
+
+            try {
+                db.beginTransaction();
+            } catch (Throwable t) {
+                this.closeDatabaseSynchronized(db);
+                throw t;
+            }
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    @Override
+    public void setTransactionSuccessful() throws MobileServiceLocalStoreException {
+        try {
+            this.getWritableDatabase().setTransactionSuccessful();
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    @Override
+    public void endTransaction() throws MobileServiceLocalStoreException {
+        try {
+            SQLiteDatabase db = this.getWritableDatabase();
+
+            try {
+                db.endTransaction();
+            } finally {
+                this.closeDatabaseSynchronized(db);
+            }
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+
+        // keeps the compiled plans of the statements held by the statement cache
+        db.setMaxSqlCacheSize(STATEMENT_CACHE_SIZE);
+
+        if (this.mSynchronousMode != null) {
+            db.execSQL("PRAGMA synchronous = " + this.mSynchronousMode.name().toUpperCase(Locale.US));
+        }
+
+        if (this.mCacheSize > 0) {
+            db.execSQL("PRAGMA cache_size = " + this.mCacheSize);
+        }
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
     }
@@ -447,62 +900,6 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         }
     }
 
-    private JsonObject parseRow(Cursor cursor, Map<String, ColumnDataInfo> table) {
-        JsonObject result = new JsonObject();
-
-        for (Entry<String, ColumnDataInfo> column : table.entrySet()) {
-            String columnName = column.getKey();
-            String originalColumnName = column.getValue().getOriginalName();
-
-            ColumnDataType columnDataType = column.getValue().getColumnDataType();
-            int columnIndex = cursor.getColumnIndex(columnName);
-
-            if (columnIndex != -1) {
-
-                switch (columnDataType) {
-                    case Boolean:
-                        boolean booleanValue = cursor.getInt(columnIndex) > 0 ? true : false;
-                        result.addProperty(originalColumnName, booleanValue);
-                        break;
-                    case Real:
-                        double doubleValue = cursor.getDouble(columnIndex);
-                        result.addProperty(originalColumnName, doubleValue);
-                        break;
-                    case Integer:
-                        int intValue = cursor.getInt(columnIndex);
-                        result.addProperty(originalColumnName, intValue);
-                        break;
-                    case String:
-                        String stringValue = cursor.getString(columnIndex);
-                        result.addProperty(originalColumnName, stringValue);
-                        break;
-                    case Date:
-                        String dateValue = cursor.getString(columnIndex);
-                        result.addProperty(originalColumnName, dateValue);
-                        break;
-                    case DateTimeOffset:
-                        String dateTimeOffsetValue = cursor.getString(columnIndex);
-                        result.addProperty(originalColumnName, dateTimeOffsetValue);
-                        break;
-                    case Other:
-                        JsonElement otherValue = parseOtherDataType(cursor.getString(columnIndex));
-                        result.add(originalColumnName, otherValue);
-                        break;
-                }
-            }
-        }
-
-        return result;
-    }
-
-    private JsonElement parseOtherDataType(String value) {
-        if (value == null) {
-            return null;
-        }
-
-        return new JsonParser().parse(value);
-    }
-
     private Statement generateUpsertStatement(String tableName, JsonObject[] items, boolean fromServer) {
         Statement result = new Statement();
 
@@ -567,6 +964,145 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         return result;
     }
 
+    private String generateUpsertSql(String invTableName, String[] invColumnNames) {
+        StringBuilder sql = new StringBuilder();
+
+        sql.append("INSERT OR REPLACE INTO \"");
+        sql.append(invTableName);
+        sql.append("\" (");
+
+        String delimiter = "";
+
+        for (String invColumnName : invColumnNames) {
+            sql.append(delimiter);
+            sql.append("\"");
+            sql.append(invColumnName);
+            sql.append("\"");
+            delimiter = ",";
+        }
+
+        sql.append(") VALUES (");
+
+        delimiter = "";
+
+        for (int i = 0; i < invColumnNames.length; i++) {
+            sql.append(delimiter);
+            sql.append("?");
+            delimiter = ",";
+        }
+
+        sql.append(")");
+
+        return sql.toString();
+    }
+
+    /**
+     * Reads the next JSON value, converted the same way appendInsertValuesSql
+     * converts JsonElements: booleans as 0/1, numbers as double and objects
+     * or arrays as their JSON text
+     */
+    private Object readValue(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL:
+                reader.nextNull();
+                return null;
+            case BOOLEAN:
+                return reader.nextBoolean() ? 1L : 0L;
+            case NUMBER:
+                return reader.nextDouble();
+            case STRING:
+                return reader.nextString();
+            default:
+                return new JsonParser().parse(reader).toString();
+        }
+    }
+
+    private static void bindValues(SQLiteProgram program, Object[] values) {
+        program.clearBindings();
+
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+
+            if (value == null) {
+                program.bindNull(i + 1);
+            } else if (value instanceof Long) {
+                program.bindLong(i + 1, (Long) value);
+            } else if (value instanceof Double) {
+                program.bindDouble(i + 1, (Double) value);
+            } else {
+                program.bindString(i + 1, value.toString());
+            }
+        }
+    }
+
+    /**
+     * Runs an INSERT, UPDATE or DELETE statement, reusing its compiled form
+     * from the statement cache
+     */
+    private void executeUpdate(SQLiteDatabase db, String sql, Object[] values) {
+        SQLiteStatement statement = this.mStatementCache.acquire(db, sql);
+
+        try {
+            bindValues(statement, values);
+            statement.executeUpdateDelete();
+        } finally {
+            this.mStatementCache.release(sql, statement);
+        }
+    }
+
+    private static String getCountSql(String invTableName, String whereClause) {
+        return "SELECT COUNT(*) FROM \"" + invTableName + "\"" + (whereClause != null ? " WHERE " + whereClause : "");
+    }
+
+    /**
+     * Counts the rows matching a where clause, reusing the compiled statement
+     * from the statement cache
+     */
+    private long queryCount(SQLiteDatabase db, String invTableName, String whereClause, Object[] values) {
+        String sql = getCountSql(invTableName, whereClause);
+
+        SQLiteStatement statement = this.mStatementCache.acquire(db, sql);
+
+        try {
+            bindValues(statement, values);
+            return statement.simpleQueryForLong();
+        } finally {
+            this.mStatementCache.release(sql, statement);
+        }
+    }
+
+    private String generateDeleteSql(String invTableName, int idsCount) {
+        StringBuilder sql = new StringBuilder();
+
+        sql.append("DELETE FROM \"");
+        sql.append(invTableName);
+        sql.append("\" WHERE \"id\"");
+
+        if (idsCount == 1) {
+            sql.append(" = ?");
+        } else {
+            sql.append(" IN (");
+
+            for (int i = 0; i < idsCount; i++) {
+                sql.append(i == 0 ? "?" : ",?");
+            }
+
+            sql.append(")");
+        }
+
+        return sql.toString();
+    }
+
+    private void deleteBatch(SQLiteDatabase db, String invTableName, String[] itemsIds) {
+        int maxSize = 999;
+
+        for (int offset = 0; offset < itemsIds.length; offset += maxSize) {
+            int batchSize = Math.min(maxSize, itemsIds.length - offset);
+
+            executeUpdate(db, generateDeleteSql(invTableName, batchSize), Arrays.copyOfRange(itemsIds, offset, offset + batchSize, Object[].class));
+        }
+    }
+
     private void appendInsertValuesSql(StringBuilder sql, List<Object> parameters,
                                        Map<String, ColumnDataInfo> tableDefinition, JsonObject item, boolean fromServer) {
         sql.append("(");
@@ -608,22 +1144,48 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         sql.append(")");
     }
 
-    private String[] getColumns(Query query, Map<String, ColumnDataInfo> table) {
-        String[] columns = table.keySet().toArray(new String[0]);
-
-        List<String> projection = query.getProjection();
+    /**
+     * Gets the row decoder of a table for a projection, built once and kept
+     * until the table definitions change
+     */
+    private SQLiteRowDecoder getRowDecoder(String invTableName, Map<String, ColumnDataInfo> table, List<String> projection) {
+        List<String> invColumnNames = null;
+        String key = invTableName;
 
         if (projection != null && projection.size() > 0) {
-            columns = normalizeColumnNames(projection).toArray(new String[0]);
+            invColumnNames = normalizeColumnNames(projection);
+            key = invTableName + "\n" + TextUtils.join(",", invColumnNames);
+        }
+
+        synchronized (this.mRowDecoders) {
+            SQLiteRowDecoder rowDecoder = this.mRowDecoders.get(key);
+
+            if (rowDecoder == null) {
+                String[] columns = invColumnNames != null ? invColumnNames.toArray(new String[0]) : table.keySet().toArray(new String[0]);
+
+                rowDecoder = new SQLiteRowDecoder(table, columns);
+                this.mRowDecoders.put(key, rowDecoder);
+            }
+
+            return rowDecoder;
         }
-        return columns;
     }
 
-    private String getWhereClause(Query query) throws MobileServiceLocalStoreException {
+    private String getWhereClause(String invTableName, Query query, List<Object> arguments) throws MobileServiceLocalStoreException {
         String whereClause;
 
+        List<String> fullTextColumnNames;
+
+        synchronized (this.mInitializedFullTextIndexes) {
+            fullTextColumnNames = this.mInitializedFullTextIndexes.get(invTableName);
+        }
+
         try {
-            whereClause = QuerySQLWriter.getWhereClause(query);
+            if (fullTextColumnNames != null) {
+                whereClause = QuerySQLWriter.getWhereClause(query, arguments, FULL_TEXT_INDEX_PREFIX + invTableName, fullTextColumnNames);
+            } else {
+                whereClause = QuerySQLWriter.getWhereClause(query, arguments);
+            }
         } catch (MobileServiceException e) {
             throw new MobileServiceLocalStoreException("Unable to build filter expression.", e);
         }
@@ -703,6 +1265,131 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         }
     }
     
+    private void createIndexes(SQLiteDatabase db, String invTableName) {
+        Map<String, String> indexes = this.mIndexes.containsKey(invTableName) ? this.mIndexes.get(invTableName) : new HashMap<String, String>();
+
+        List<String> staleIndexNames = new ArrayList<String>();
+
+        Cursor cursor = null;
+
+        try {
+            cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index' AND tbl_name = ?", new String[]{invTableName});
+
+            while (cursor.moveToNext()) {
+                String indexName = cursor.getString(0);
+
+                // only the indexes created from definitions are dropped
+                if ((indexName.startsWith(INDEX_PREFIX) || indexName.startsWith(UNIQUE_INDEX_PREFIX)) && !indexes.containsKey(indexName)) {
+                    staleIndexNames.add(indexName);
+                }
+            }
+        } finally {
+            if (cursor != null && !cursor.isClosed()) {
+                cursor.close();
+            }
+        }
+
+        for (String indexName : staleIndexNames) {
+            db.execSQL(String.format("DROP INDEX IF EXISTS \"%s\"", indexName));
+        }
+
+        for (String createSql : indexes.values()) {
+            db.execSQL(createSql);
+        }
+    }
+
+    /**
+     * Creates, rebuilds or drops the full text index of a table, and the
+     * triggers that keep it in sync with the table
+     */
+    private void createFullTextIndex(SQLiteDatabase db, String invTableName) {
+        String ftsTableName = FULL_TEXT_INDEX_PREFIX + invTableName;
+        List<String> invColumnNames = this.mFullTextIndexes.get(invTableName);
+
+        db.beginTransaction();
+
+        try {
+            for (String trigger : new String[]{"bi", "ai", "au", "ad"}) {
+                db.execSQL(String.format("DROP TRIGGER IF EXISTS \"%s_%s\"", ftsTableName, trigger));
+            }
+
+            if (invColumnNames == null) {
+                db.execSQL(String.format("DROP TABLE IF EXISTS \"%s\"", ftsTableName));
+            } else {
+                List<String> existingColumnNames = new ArrayList<String>();
+
+                Cursor cursor = null;
+
+                try {
+                    cursor = db.rawQuery(String.format("PRAGMA table_info(\"%s\");", ftsTableName), null);
+
+                    while (cursor.moveToNext()) {
+                        existingColumnNames.add(cursor.getString(cursor.getColumnIndex("name")));
+                    }
+                } finally {
+                    if (cursor != null && !cursor.isClosed()) {
+                        cursor.close();
+                    }
+                }
+
+                // the id is kept with the indexed text, so that reads do not
+                // depend on the rowids the index is maintained with
+                List<String> ftsColumnNames = new ArrayList<String>();
+                ftsColumnNames.add(QuerySQLWriter.FULL_TEXT_ID_COLUMN);
+                ftsColumnNames.addAll(invColumnNames);
+
+                String ftsColumns = "\"" + TextUtils.join("\",\"", ftsColumnNames) + "\"";
+                String columns = "\"id\",\"" + TextUtils.join("\",\"", invColumnNames) + "\"";
+                String newColumns = "new.\"id\",new.\"" + TextUtils.join("\",new.\"", invColumnNames) + "\"";
+
+                if (!existingColumnNames.equals(ftsColumnNames)) {
+                    db.execSQL(String.format("DROP TABLE IF EXISTS \"%s\"", ftsTableName));
+                    db.execSQL(String.format("CREATE VIRTUAL TABLE \"%s\" USING fts4(%s)", ftsTableName, ftsColumns));
+                    db.execSQL(String.format("INSERT INTO \"%s\" (docid,%s) SELECT rowid,%s FROM \"%s\"", ftsTableName, ftsColumns, columns, invTableName));
+                } else if (!isFullTextIndexInSync(db, ftsTableName, invTableName)) {
+                    // a VACUUM renumbered the rowids of the table
+                    db.execSQL(String.format("DELETE FROM \"%s\"", ftsTableName));
+                    db.execSQL(String.format("INSERT INTO \"%s\" (docid,%s) SELECT rowid,%s FROM \"%s\"", ftsTableName, ftsColumns, columns, invTableName));
+                }
+
+                // upserts replace rows, which removes the old row without firing delete triggers
+                db.execSQL(String.format("CREATE TRIGGER \"%1$s_bi\" BEFORE INSERT ON \"%2$s\" BEGIN "
+                        + "DELETE FROM \"%1$s\" WHERE docid IN (SELECT rowid FROM \"%2$s\" WHERE \"id\" = new.\"id\"); END", ftsTableName, invTableName));
+                db.execSQL(String.format("CREATE TRIGGER \"%1$s_ai\" AFTER INSERT ON \"%2$s\" BEGIN "
+                        + "INSERT INTO \"%1$s\" (docid,%3$s) VALUES (new.rowid,%4$s); END", ftsTableName, invTableName, ftsColumns, newColumns));
+                db.execSQL(String.format("CREATE TRIGGER \"%1$s_au\" AFTER UPDATE ON \"%2$s\" BEGIN "
+                        + "DELETE FROM \"%1$s\" WHERE docid = old.rowid; "
+                        + "INSERT INTO \"%1$s\" (docid,%3$s) VALUES (new.rowid,%4$s); END", ftsTableName, invTableName, ftsColumns, newColumns));
+                db.execSQL(String.format("CREATE TRIGGER \"%1$s_ad\" AFTER DELETE ON \"%2$s\" BEGIN "
+                        + "DELETE FROM \"%1$s\" WHERE docid = old.rowid; END", ftsTableName, invTableName));
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        synchronized (this.mInitializedFullTextIndexes) {
+            if (invColumnNames != null) {
+                this.mInitializedFullTextIndexes.put(invTableName, invColumnNames);
+            } else {
+                this.mInitializedFullTextIndexes.remove(invTableName);
+            }
+        }
+    }
+
+    /**
+     * Checks that every row of the full text index is keyed by the rowid of
+     * the row it indexes, which a VACUUM of the database does not preserve
+     */
+    private boolean isFullTextIndexInSync(SQLiteDatabase db, String ftsTableName, String invTableName) {
+        String sql = String.format("SELECT (SELECT COUNT(*) FROM \"%1$s\") = (SELECT COUNT(*) FROM \"%2$s\") "
+                + "AND NOT EXISTS (SELECT 1 FROM \"%1$s\" f LEFT JOIN \"%2$s\" t ON t.rowid = f.docid WHERE t.\"id\" IS NOT f.\"%3$s\")",
+                ftsTableName, invTableName, QuerySQLWriter.FULL_TEXT_ID_COLUMN);
+
+        return DatabaseUtils.longForQuery(db, sql, null) != 0;
+    }
+
     private SQLiteDatabase getWritableDatabaseSynchronized() {
         synchronized (mConcurrencyLock) {
             mConcurrencyCount++;
@@ -713,7 +1400,8 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
     private void closeDatabaseSynchronized(SQLiteDatabase db) {
         synchronized (mConcurrencyLock) {
             mConcurrencyCount--;
-            if (mConcurrencyCount == 0) {
+            if (mConcurrencyCount == 0 && !mPersistentConnection) {
+                mStatementCache.clear();
                 db.close();
             }
         }
@@ -723,4 +1411,23 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         private String sql;
         private List<Object> parameters;
     }
+
+    /**
+     * Creates the cursors of the queries with typed arguments, which the
+     * String arguments of SQLiteDatabase.query cannot carry
+     */
+    private static class BindArgumentsCursorFactory implements CursorFactory {
+        private Object[] mArguments;
+
+        BindArgumentsCursorFactory(Object[] arguments) {
+            this.mArguments = arguments;
+        }
+
+        @Override
+        public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+            bindValues(query, this.mArguments);
+
+            return new SQLiteCursor(masterQuery, editTable, query);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,156 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * SQLiteRowDecoder.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
+
+import android.database.Cursor;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.util.Map;
+
+/**
+ * Decodes the rows of a table for a given set of columns. The columns are
+ * queried in the order of getColumns, so each value is read by its position in
+ * the cursor with a reader chosen once for the column type.
+ */
+class SQLiteRowDecoder {
+
+    private static final ColumnReader BOOLEAN_READER = new ColumnReader() {
+        @Override
+        public void read(Cursor cursor, int index, String propertyName, JsonObject row, JsonParser parser) {
+            row.addProperty(propertyName, cursor.getInt(index) > 0);
+        }
+    };
+
+    private static final ColumnReader REAL_READER = new ColumnReader() {
+        @Override
+        public void read(Cursor cursor, int index, String propertyName, JsonObject row, JsonParser parser) {
+            row.addProperty(propertyName, cursor.getDouble(index));
+        }
+    };
+
+    private static final ColumnReader INTEGER_READER = new ColumnReader() {
+        @Override
+        public void read(Cursor cursor, int index, String propertyName, JsonObject row, JsonParser parser) {
+            row.addProperty(propertyName, cursor.getInt(index));
+        }
+    };
+
+    private static final ColumnReader STRING_READER = new ColumnReader() {
+        @Override
+        public void read(Cursor cursor, int index, String propertyName, JsonObject row, JsonParser parser) {
+            row.addProperty(propertyName, cursor.getString(index));
+        }
+    };
+
+    private static final ColumnReader OTHER_READER = new ColumnReader() {
+        @Override
+        public void read(Cursor cursor, int index, String propertyName, JsonObject row, JsonParser parser) {
+            String value = cursor.getString(index);
+            JsonElement element = value != null ? parser.parse(value) : null;
+
+            row.add(propertyName, element);
+        }
+    };
+
+    private final String[] mColumns;
+
+    private final String[] mPropertyNames;
+
+    private final ColumnReader[] mReaders;
+
+    private final JsonParser mParser;
+
+    /**
+     * Constructor for SQLiteRowDecoder
+     *
+     * @param table   the table definition
+     * @param columns the normalized names of the queried columns
+     */
+    SQLiteRowDecoder(Map<String, ColumnDataInfo> table, String[] columns) {
+        this.mColumns = columns;
+        this.mPropertyNames = new String[columns.length];
+        this.mReaders = new ColumnReader[columns.length];
+        this.mParser = new JsonParser();
+
+        for (int i = 0; i < columns.length; i++) {
+            ColumnDataInfo column = table.get(columns[i]);
+
+            // columns missing from the table definition are not returned
+            if (column != null) {
+                this.mPropertyNames[i] = column.getOriginalName();
+                this.mReaders[i] = getReader(column.getColumnDataType());
+            }
+        }
+    }
+
+    private static ColumnReader getReader(ColumnDataType columnDataType) {
+        switch (columnDataType) {
+            case Boolean:
+                return BOOLEAN_READER;
+            case Real:
+                return REAL_READER;
+            case Integer:
+                return INTEGER_READER;
+            case Other:
+                return OTHER_READER;
+            default:
+                return STRING_READER;
+        }
+    }
+
+    /**
+     * @return the normalized names of the columns to query, in cursor order
+     */
+    String[] getColumns() {
+        return this.mColumns;
+    }
+
+    /**
+     * Decodes the current row of a cursor created with the columns of
+     * getColumns
+     *
+     * @param cursor the cursor
+     * @return the row
+     */
+    JsonObject decode(Cursor cursor) {
+        JsonObject row = new JsonObject();
+
+        for (int i = 0; i < this.mReaders.length; i++) {
+            ColumnReader reader = this.mReaders[i];
+
+            if (reader != null) {
+                reader.read(cursor, i, this.mPropertyNames[i], row, this.mParser);
+            }
+        }
+
+        return row;
+    }
+
+    private interface ColumnReader {
+        void read(Cursor cursor, int index, String propertyName, JsonObject row, JsonParser parser);
+    }
+}
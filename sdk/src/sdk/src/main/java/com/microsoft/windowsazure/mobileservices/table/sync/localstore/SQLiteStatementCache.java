@@ -0,0 +1,118 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * SQLiteStatementCache.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the most recently used compiled statements of a database connection,
+ * keyed by their SQL text. A statement is taken out of the cache while it is
+ * in use, so concurrent callers never share one; a caller that finds it in use
+ * compiles its own copy.
+ */
+class SQLiteStatementCache {
+
+    private final int mMaxSize;
+
+    private final LinkedHashMap<String, SQLiteStatement> mStatements;
+
+    /**
+     * Constructor for SQLiteStatementCache
+     *
+     * @param maxSize the maximum number of statements kept
+     */
+    SQLiteStatementCache(int maxSize) {
+        this.mMaxSize = maxSize;
+        this.mStatements = new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true);
+    }
+
+    /**
+     * Takes the statement for the SQL text out of the cache, or compiles it
+     *
+     * @param db  the database the statement runs on
+     * @param sql the SQL text
+     * @return the compiled statement, to be handed back with release
+     */
+    SQLiteStatement acquire(SQLiteDatabase db, String sql) {
+        SQLiteStatement statement;
+
+        synchronized (this) {
+            statement = this.mStatements.remove(sql);
+        }
+
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+        }
+
+        return statement;
+    }
+
+    /**
+     * Hands a statement back to the cache
+     *
+     * @param sql       the SQL text
+     * @param statement the statement returned by acquire
+     */
+    void release(String sql, SQLiteStatement statement) {
+        statement.clearBindings();
+
+        List<SQLiteStatement> evicted = new ArrayList<SQLiteStatement>();
+
+        synchronized (this) {
+            if (this.mStatements.containsKey(sql)) {
+                evicted.add(statement);
+            } else {
+                this.mStatements.put(sql, statement);
+
+                while (this.mStatements.size() > this.mMaxSize) {
+                    Map.Entry<String, SQLiteStatement> eldest = this.mStatements.entrySet().iterator().next();
+                    this.mStatements.remove(eldest.getKey());
+                    evicted.add(eldest.getValue());
+                }
+            }
+        }
+
+        for (SQLiteStatement evictedStatement : evicted) {
+            evictedStatement.close();
+        }
+    }
+
+    /**
+     * Closes and removes all the statements. Must be called before the
+     * database connection is closed.
+     */
+    synchronized void clear() {
+        for (SQLiteStatement statement : this.mStatements.values()) {
+            statement.close();
+        }
+
+        this.mStatements.clear();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * StreamedRowsResult.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
+
+/**
+ * Summary of the rows read by {@link MobileServiceStreamingLocalStore#upsertFromServer}
+ */
+public class StreamedRowsResult {
+
+    private int mCount;
+
+    private String mLastItemId;
+
+    private String mLastUpdatedAt;
+
+    /**
+     * Constructor for StreamedRowsResult
+     *
+     * @param count         the number of rows read, including deleted rows
+     * @param lastItemId    the id of the last row read
+     * @param lastUpdatedAt the updatedAt value of the last row read, as sent by the server
+     */
+    public StreamedRowsResult(int count, String lastItemId, String lastUpdatedAt) {
+        mCount = count;
+        mLastItemId = lastItemId;
+        mLastUpdatedAt = lastUpdatedAt;
+    }
+
+    /**
+     * @return the number of rows read, including deleted rows
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return the id of the last row read
+     */
+    public String getLastItemId() {
+        return mLastItemId;
+    }
+
+    /**
+     * @return the updatedAt value of the last row read, as sent by the server
+     */
+    public String getLastUpdatedAt() {
+        return mLastUpdatedAt;
+    }
+}
@@ -23,9 +23,18 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices.table.sync.operations;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemColumns;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStore;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
 /**
  * Processes a table operation against a local store.
  */
@@ -51,6 +60,10 @@ public class LocalTableOperationProcessor implements TableOperationVisitor<Void>
 
     @Override
     public Void visit(UpdateOperation operation) throws Throwable {
+        JsonObject previousItem = this.mStore.lookup(operation.getTableName(), operation.getItemId());
+
+        operation.setChangedProperties(getChangedProperties(previousItem, this.mItem));
+
         this.mStore.upsert(operation.getTableName(), this.mItem, false);
         return null;
     }
@@ -65,6 +78,64 @@ public class LocalTableOperationProcessor implements TableOperationVisitor<Void>
         return null;
     }
 
+    /**
+     * Compares the properties of two versions of an item, ignoring case in
+     * names and ignoring system properties
+     *
+     * @return the lower case names of the changed properties, or null if there
+     * is no previous version
+     */
+    private static Set<String> getChangedProperties(JsonObject previousItem, JsonObject item) {
+        if (previousItem == null || item == null) {
+            return null;
+        }
+
+        Map<String, JsonElement> previousValues = new HashMap<String, JsonElement>();
+
+        for (Entry<String, JsonElement> property : previousItem.entrySet()) {
+            previousValues.put(property.getKey().toLowerCase(Locale.getDefault()), property.getValue());
+        }
+
+        Set<String> changedProperties = new HashSet<String>();
+
+        for (Entry<String, JsonElement> property : item.entrySet()) {
+            String name = property.getKey().toLowerCase(Locale.getDefault());
+
+            if (!isSystemProperty(name) && !isSameValue(previousValues.remove(name), property.getValue())) {
+                changedProperties.add(name);
+            }
+        }
+
+        // properties missing from the new version are cleared
+        for (Entry<String, JsonElement> property : previousValues.entrySet()) {
+            if (!isSystemProperty(property.getKey()) && !isSameValue(property.getValue(), null)) {
+                changedProperties.add(property.getKey());
+            }
+        }
+
+        return changedProperties;
+    }
+
+    private static boolean isSystemProperty(String name) {
+        return name.startsWith("__")
+                || name.equals(MobileServiceSystemColumns.Id)
+                || name.equalsIgnoreCase(MobileServiceSystemColumns.Version)
+                || name.equalsIgnoreCase(MobileServiceSystemColumns.CreatedAt)
+                || name.equalsIgnoreCase(MobileServiceSystemColumns.UpdatedAt)
+                || name.equalsIgnoreCase(MobileServiceSystemColumns.Deleted);
+    }
+
+    private static boolean isSameValue(JsonElement previousValue, JsonElement value) {
+        boolean previousIsNull = previousValue == null || previousValue.isJsonNull();
+        boolean isNull = value == null || value.isJsonNull();
+
+        if (previousIsNull || isNull) {
+            return previousIsNull && isNull;
+        }
+
+        return previousValue.equals(value);
+    }
+
     public JsonObject getItem() {
         return this.mItem;
     }
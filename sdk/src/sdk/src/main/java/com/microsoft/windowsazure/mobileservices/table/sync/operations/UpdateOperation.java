@@ -23,14 +23,19 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices.table.sync.operations;
 
-import com.google.gson.JsonObject;
-
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Class representing an update operation against remote table.
  */
 public class UpdateOperation extends AbstractTableOperation {
+    /**
+     * Lower case names of the properties changed by the update, or null if
+     * they are not known
+     */
+    private Set<String> mChangedProperties;
 
     /**
      * Constructor for UpdateOperation
@@ -51,7 +56,55 @@ public class UpdateOperation extends AbstractTableOperation {
      * @param createdAt
      */
     public UpdateOperation(String id, String tableName, String itemId, Date createdAt, MobileServiceTableOperationState state) {
+        this(id, tableName, itemId, createdAt, state, null);
+    }
+
+    /**
+     * Constructor for Update Operation
+     *
+     * @param id
+     * @param tableName
+     * @param itemId
+     * @param createdAt
+     * @param changedProperties the names of the changed properties, or null if they are not known
+     */
+    public UpdateOperation(String id, String tableName, String itemId, Date createdAt, MobileServiceTableOperationState state, Set<String> changedProperties) {
         super(id, tableName, itemId, createdAt, state, null);
+        this.mChangedProperties = changedProperties;
+    }
+
+    /**
+     * Gets the lower case names of the properties changed by the update
+     *
+     * @return the property names, or null if they are not known
+     */
+    public Set<String> getChangedProperties() {
+        return this.mChangedProperties;
+    }
+
+    /**
+     * Sets the names of the properties changed by the update
+     *
+     * @param changedProperties the property names, or null if they are not known
+     */
+    public void setChangedProperties(Set<String> changedProperties) {
+        this.mChangedProperties = changedProperties;
+    }
+
+    /**
+     * Adds the properties changed by a later update of the same item
+     *
+     * @param changedProperties the property names, or null if they are not known
+     */
+    public void mergeChangedProperties(Set<String> changedProperties) {
+        if (this.mChangedProperties == null || changedProperties == null) {
+            this.mChangedProperties = null;
+        } else {
+            Set<String> merged = new HashSet<String>(this.mChangedProperties);
+            merged.addAll(changedProperties);
+
+            this.mChangedProperties = merged;
+        }
     }
 
     @Override
@@ -45,6 +45,8 @@ class UpdateOperationCollapser implements TableOperationVisitor<TableOperation>
 
     @Override
     public TableOperation visit(UpdateOperation newOperation) {
+        this.mPreviousOperation.mergeChangedProperties(newOperation.getChangedProperties());
+
         return this.mPreviousOperation;
     }
 
@@ -13,6 +13,7 @@ import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStore;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.StreamedRowsResult;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -86,15 +87,38 @@ public class IncrementalPullStrategy extends PullStrategy {
         }
     }
 
+    public void onPageRead(JsonArray elements) {
+
+        if (elements == null || elements.size() <= 0) {
+            return;
+        }
+
+        maxUpdatedAt = getDateFromString(getLastUpdatedAt(elements));
+    }
+
     public void onResultsProcessed(JsonArray elements) {
 
-        if (elements.size() <= 0) {
+        if (elements == null || elements.size() <= 0) {
             return;
         }
 
+        saveMaxUpdatedDate(getLastUpdatedAt(elements));
+    }
+
+    private static String getLastUpdatedAt(JsonArray elements) {
+
         JsonObject lastElement = elements.get(elements.size() - 1).getAsJsonObject();
 
-        String lastElementUpdatedAt = lastElement.get(MobileServiceSystemColumns.UpdatedAt).getAsString();
+        return lastElement.get(MobileServiceSystemColumns.UpdatedAt).getAsString();
+    }
+
+    public void onResultsProcessed(StreamedRowsResult result) {
+
+        if (result.getCount() <= 0) {
+            return;
+        }
+
+        String lastElementUpdatedAt = result.getLastUpdatedAt();
 
         maxUpdatedAt = getDateFromString(lastElementUpdatedAt);
 
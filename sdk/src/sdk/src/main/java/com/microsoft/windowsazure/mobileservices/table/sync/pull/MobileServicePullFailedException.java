@@ -0,0 +1,57 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * MobileServicePullFailedException.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.pull;
+
+import java.util.Map;
+
+/**
+ * Class that represents the failure of one or more tables of a pull of
+ * several tables
+ */
+public class MobileServicePullFailedException extends Exception {
+    /**
+     * UID used for serialization
+     */
+    private static final long serialVersionUID = -4727465135328574720L;
+
+    private Map<MobileServicePullRequest, Throwable> mErrors;
+
+    /**
+     * Constructor for MobileServicePullFailedException
+     *
+     * @param errors the error of each failed pull request
+     */
+    public MobileServicePullFailedException(Map<MobileServicePullRequest, Throwable> errors) {
+        super(errors.size() + " of the pulled tables failed.", errors.isEmpty() ? null : errors.values().iterator().next());
+
+        this.mErrors = errors;
+    }
+
+    /**
+     * Gets the error of each failed pull request
+     */
+    public Map<MobileServicePullRequest, Throwable> getErrors() {
+        return this.mErrors;
+    }
+}
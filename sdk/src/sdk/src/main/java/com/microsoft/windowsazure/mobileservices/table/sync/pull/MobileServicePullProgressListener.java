@@ -0,0 +1,46 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * MobileServicePullProgressListener.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.pull;
+
+/**
+ * Notified as each table of a pull of several tables completes. Invoked on
+ * the thread that pulled the table, which pulls the next table once the
+ * listener returns. Implementations must not throw.
+ */
+public interface MobileServicePullProgressListener {
+    /**
+     * Invoked when a table has been pulled
+     *
+     * @param request the pull request of the table
+     */
+    void onPullCompleted(MobileServicePullRequest request);
+
+    /**
+     * Invoked when the pull of a table has failed
+     *
+     * @param request the pull request of the table
+     * @param error   the error that stopped the pull
+     */
+    void onPullFailed(MobileServicePullRequest request, Throwable error);
+}
@@ -0,0 +1,82 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * MobileServicePullRequest.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.pull;
+
+import com.microsoft.windowsazure.mobileservices.table.query.Query;
+
+/**
+ * Describes the pull of one table, as part of a pull of several tables
+ */
+public class MobileServicePullRequest {
+
+    private String mTableName;
+
+    private Query mQuery;
+
+    private String mQueryId;
+
+    /**
+     * Constructor for MobileServicePullRequest
+     *
+     * @param tableName the remote table name
+     * @param query     an optional query to filter results
+     * @param queryId   an optional query id, to pull incrementally
+     */
+    public MobileServicePullRequest(String tableName, Query query, String queryId) {
+        this.mTableName = tableName;
+        this.mQuery = query;
+        this.mQueryId = queryId;
+    }
+
+    /**
+     * Constructor for MobileServicePullRequest
+     *
+     * @param tableName the remote table name
+     * @param query     an optional query to filter results
+     */
+    public MobileServicePullRequest(String tableName, Query query) {
+        this(tableName, query, null);
+    }
+
+    /**
+     * Gets the remote table name
+     */
+    public String getTableName() {
+        return this.mTableName;
+    }
+
+    /**
+     * Gets the query used to filter results, or null
+     */
+    public Query getQuery() {
+        return this.mQuery;
+    }
+
+    /**
+     * Gets the query id used to pull incrementally, or null
+     */
+    public String getQueryId() {
+        return this.mQueryId;
+    }
+}
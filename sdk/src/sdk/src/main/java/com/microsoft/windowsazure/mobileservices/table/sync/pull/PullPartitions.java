@@ -0,0 +1,113 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * PullPartitions.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.pull;
+
+import com.microsoft.windowsazure.mobileservices.table.DateTimeOffset;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemColumns;
+import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Builds the partitions of a partitioned pull. Each partition is a filter
+ * on a range of values, and the partitions cover every row once. The first
+ * partition has no lower bound and the last one has no upper bound, so rows
+ * added after the boundaries were chosen are still pulled.
+ * <p/>
+ * Incremental pulls save a watermark per partition, by position. The same
+ * boundaries must be used by every pull with a given query id.
+ */
+public final class PullPartitions {
+
+    private PullPartitions() {
+    }
+
+    /**
+     * Partitions a pull by ranges of ids
+     *
+     * @param boundaries the ids that start each partition but the first, in
+     *                   ascending order
+     * @return the partition filters
+     */
+    public static List<Query> byId(String... boundaries) {
+        List<Object> values = new ArrayList<Object>();
+
+        for (String boundary : boundaries) {
+            values.add(boundary);
+        }
+
+        return byRanges(MobileServiceSystemColumns.Id, values);
+    }
+
+    /**
+     * Partitions a pull by windows of updatedAt values
+     *
+     * @param boundaries the dates that start each partition but the first, in
+     *                   ascending order
+     * @return the partition filters
+     */
+    public static List<Query> byUpdatedAt(Date... boundaries) {
+        List<Object> values = new ArrayList<Object>();
+
+        for (Date boundary : boundaries) {
+            values.add(new DateTimeOffset(boundary));
+        }
+
+        return byRanges(MobileServiceSystemColumns.UpdatedAt, values);
+    }
+
+    private static List<Query> byRanges(String field, List<Object> boundaries) {
+        if (boundaries.isEmpty()) {
+            throw new IllegalArgumentException("At least one partition boundary is required.");
+        }
+
+        List<Query> partitions = new ArrayList<Query>();
+
+        for (int i = 0; i <= boundaries.size(); i++) {
+            Query lower = i > 0 ? QueryOperations.field(field).ge(val(boundaries.get(i - 1))) : null;
+            Query upper = i < boundaries.size() ? QueryOperations.field(field).lt(val(boundaries.get(i))) : null;
+
+            if (lower == null) {
+                partitions.add(upper);
+            } else if (upper == null) {
+                partitions.add(lower);
+            } else {
+                partitions.add(lower.and(upper));
+            }
+        }
+
+        return partitions;
+    }
+
+    private static Query val(Object value) {
+        if (value instanceof Date) {
+            return QueryOperations.val((Date) value);
+        }
+
+        return QueryOperations.val((String) value);
+    }
+}
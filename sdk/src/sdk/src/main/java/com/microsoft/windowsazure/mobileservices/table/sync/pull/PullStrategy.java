@@ -1,10 +1,15 @@
 package com.microsoft.windowsazure.mobileservices.table.sync.pull;
 
+import android.util.Pair;
+
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceJsonTable;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemColumns;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.StreamedRowsResult;
 
 /**
  * Created by marianosanchez on 11/3/14.
@@ -29,12 +34,37 @@ public class PullStrategy {
     MobileServiceJsonTable table;
     int totalRead; // used to track how many we have read so far since the last delta
 
+    private Query keysetQuery; // the query the keyset pages are built from
+    private QueryOrder keyOrder; // the id order, when the pull can seek by id
+    private String lastItemId; // the id of the last row read
+    private int readSinceLastItemId; // rows read without id after the last id
+    private String nextLink; // the continuation link sent with the last page
+    private boolean serverPaged; // true once the server has sent a continuation link
+
     public PullStrategy(Query query, MobileServiceJsonTable table) {
 
         this.query = query;
         this.table = table;
     }
 
+    /**
+     * Resumes an interrupted pull after the row with the given id. Must be
+     * called before initialize, and only applies to pulls ordered by id.
+     *
+     * @param lastItemId the id of the last row read by the interrupted pull
+     */
+    public void resumeFrom(String lastItemId) {
+        this.lastItemId = lastItemId;
+    }
+
+    /**
+     * @return the id of the last row read, from which an interrupted pull
+     * ordered by id can be resumed
+     */
+    public String getLastItemId() {
+        return this.lastItemId;
+    }
+
     public void initialize() {
 
         query.includeDeleted();
@@ -54,11 +84,105 @@ public class PullStrategy {
         if (this.query.getSkip() < 0) {
             this.query.skip(0);
         }
+
+        this.keyOrder = getKeyOrder(this.query);
+
+        if (this.keyOrder != null) {
+            this.keysetQuery = this.query.deepClone();
+
+            if (this.lastItemId != null) {
+                setupKeysetQuery();
+            }
+        }
+    }
+
+    /**
+     * Gets the order of the pull when it is ordered by id only, so that the
+     * next page can seek past the last id instead of skipping the rows read
+     */
+    private static QueryOrder getKeyOrder(Query query) {
+        if (query.getOrderBy().size() != 1) {
+            return null;
+        }
+
+        Pair<String, QueryOrder> order = query.getOrderBy().get(0);
+
+        return MobileServiceSystemColumns.Id.equalsIgnoreCase(order.first.trim()) ? order.second : null;
+    }
+
+    private void setupKeysetQuery() {
+        Query keyFilter = QueryOperations.field(MobileServiceSystemColumns.Id);
+
+        if (this.keyOrder == QueryOrder.Ascending) {
+            keyFilter = keyFilter.gt(QueryOperations.val(this.lastItemId));
+        } else {
+            keyFilter = keyFilter.lt(QueryOperations.val(this.lastItemId));
+        }
+
+        Query pageQuery = this.keysetQuery.deepClone();
+
+        if (pageQuery.getQueryNode() != null) {
+            Query filter = QueryOperations.query(pageQuery.deepClone()).and(keyFilter);
+            pageQuery.setQueryNode(filter.getQueryNode());
+        } else {
+            pageQuery.setQueryNode(keyFilter.getQueryNode());
+        }
+
+        pageQuery.skip(this.readSinceLastItemId);
+
+        this.query = pageQuery;
+    }
+
+    private void onLastItemRead(String itemId, int count) {
+        if (count <= 0) {
+            return;
+        }
+
+        if (itemId != null) {
+            this.lastItemId = itemId;
+            this.readSinceLastItemId = 0;
+        } else {
+            this.readSinceLastItemId += count;
+        }
     }
 
+    /**
+     * Invoked when a page has been read, before its rows are written to the
+     * local store. Updates the state used to request the next page.
+     *
+     * @param elements the rows of the page
+     */
+    public void onPageRead(JsonArray elements) {
+
+        if (elements == null || elements.size() <= 0) {
+            return;
+        }
+
+        JsonElement lastElement = elements.get(elements.size() - 1);
+        JsonElement lastElementId = lastElement.isJsonObject() ? lastElement.getAsJsonObject().get(MobileServiceSystemColumns.Id) : null;
+
+        onLastItemRead(lastElementId != null && !lastElementId.isJsonNull() ? lastElementId.getAsString() : null, elements.size());
+    }
+
+    /**
+     * Invoked when the rows of a page have been written to the local store,
+     * in the same unit of work. Saves the state of the pull. May run on a
+     * different thread than the one reading the pages.
+     *
+     * @param elements the rows of the page
+     */
     public void onResultsProcessed(JsonArray elements) {
     }
 
+    /**
+     * Invoked when a page has been streamed directly into the local store
+     *
+     * @param result the summary of the rows read
+     */
+    public void onResultsProcessed(StreamedRowsResult result) {
+        onLastItemRead(result.getLastItemId(), result.getCount());
+    }
+
     public boolean moveToNextPage(int lastElementCount) {
 
         totalRead += lastElementCount;
@@ -66,12 +190,51 @@ public class PullStrategy {
         if (lastElementCount == 0)
             return false;
 
-
-        this.query.skip(totalRead);
+        if (this.keyOrder != null && this.lastItemId != null) {
+            setupKeysetQuery();
+        } else {
+            this.query.skip(totalRead);
+        }
 
         return true;
     }
 
+    /**
+     * Moves to the next page. When the server sent a continuation link with
+     * the last page, the next page is requested with that link instead of a
+     * query built by the strategy. A server paging with continuation links
+     * omits the link on the last page, which then ends the pull.
+     *
+     * @param lastElementCount the number of rows of the last page
+     * @param nextLink         the continuation link sent with the last page,
+     *                         or null
+     * @return true if there is a next page
+     */
+    public boolean moveToNextPage(int lastElementCount, String nextLink) {
+
+        // the strategy state is kept up to date to save the pull progress
+        boolean hasNextPage = moveToNextPage(lastElementCount);
+
+        if (nextLink != null && lastElementCount > 0) {
+            this.nextLink = nextLink;
+            this.serverPaged = true;
+
+            return true;
+        }
+
+        this.nextLink = null;
+
+        return hasNextPage && !this.serverPaged;
+    }
+
+    /**
+     * @return the continuation link to request the next page with, or null
+     * if the next page is requested with {@link #getLastQuery()}
+     */
+    public String getNextLink() {
+        return this.nextLink;
+    }
+
     public Query getLastQuery() {
         return this.query;
     }
@@ -0,0 +1,129 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+
+/**
+ * MobileServiceJsonPushBatchEncoder.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.push;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Default push batch encoder. A batch is posted as
+ * {"table": name, "operations": [{"id", "kind", "itemId", "item"}]}, where
+ * kind is insert, update or delete, and the response must be
+ * {"results": [{"status", "item", "error"}]}, with one result per operation
+ * in the same order. A 2xx status means the operation succeeded.
+ */
+public class MobileServiceJsonPushBatchEncoder implements MobileServicePushBatchEncoder {
+    private String mApiName;
+
+    /**
+     * Constructor for MobileServiceJsonPushBatchEncoder
+     *
+     * @param apiName the name of the custom API the batches are posted to
+     */
+    public MobileServiceJsonPushBatchEncoder(String apiName) {
+        if (apiName == null || apiName.trim().length() == 0) {
+            throw new IllegalArgumentException("apiName cannot be null or empty.");
+        }
+
+        this.mApiName = apiName;
+    }
+
+    @Override
+    public String getApiName() {
+        return this.mApiName;
+    }
+
+    @Override
+    public JsonElement encode(String tableName, List<TableOperation> operations, List<JsonObject> items) {
+        JsonArray encodedOperations = new JsonArray();
+
+        for (int i = 0; i < operations.size(); i++) {
+            TableOperation operation = operations.get(i);
+
+            JsonObject encodedOperation = new JsonObject();
+            encodedOperation.addProperty("id", operation.getId());
+            encodedOperation.addProperty("kind", operation.getKind().name().toLowerCase(Locale.US));
+            encodedOperation.addProperty("itemId", operation.getItemId());
+
+            if (items.get(i) != null) {
+                encodedOperation.add("item", items.get(i));
+            }
+
+            encodedOperations.add(encodedOperation);
+        }
+
+        JsonObject batch = new JsonObject();
+        batch.addProperty("table", tableName);
+        batch.add("operations", encodedOperations);
+
+        return batch;
+    }
+
+    @Override
+    public List<MobileServicePushBatchResult> decode(JsonElement response, List<TableOperation> operations) throws Exception {
+        if (response == null || !response.isJsonObject() || !response.getAsJsonObject().has("results")) {
+            throw new IllegalArgumentException("The batch response does not contain results.");
+        }
+
+        JsonArray encodedResults = response.getAsJsonObject().getAsJsonArray("results");
+
+        if (encodedResults.size() != operations.size()) {
+            throw new IllegalArgumentException("The batch response contains " + encodedResults.size() + " results for " + operations.size()
+                    + " operations.");
+        }
+
+        List<MobileServicePushBatchResult> results = new ArrayList<MobileServicePushBatchResult>(encodedResults.size());
+
+        for (JsonElement element : encodedResults) {
+            JsonObject encodedResult = element.getAsJsonObject();
+
+            int status = encodedResult.get("status").getAsInt();
+            JsonObject item = getObject(encodedResult, "item");
+
+            if (status >= 200 && status < 300) {
+                results.add(new MobileServicePushBatchResult(item));
+            } else {
+                String error = encodedResult.has("error") && !encodedResult.get("error").isJsonNull() ? encodedResult.get("error").getAsString()
+                        : "The operation failed with status " + status + ".";
+
+                results.add(new MobileServicePushBatchResult(status, error, item));
+            }
+        }
+
+        return results;
+    }
+
+    private static JsonObject getObject(JsonObject object, String memberName) {
+        JsonElement member = object.get(memberName);
+
+        return member != null && member.isJsonObject() ? member.getAsJsonObject() : null;
+    }
+}
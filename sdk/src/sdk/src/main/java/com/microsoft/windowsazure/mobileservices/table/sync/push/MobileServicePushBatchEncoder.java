@@ -0,0 +1,62 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+
+/**
+ * MobileServicePushBatchEncoder.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.push;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperation;
+
+import java.util.List;
+
+/**
+ * Encodes batches of table operations into a single request to a custom API,
+ * and decodes the result of each operation from its response.
+ */
+public interface MobileServicePushBatchEncoder {
+    /**
+     * @return the name of the custom API the batches are posted to
+     */
+    String getApiName();
+
+    /**
+     * Encodes a batch of operations on the same table, in queue order
+     *
+     * @param tableName  the table name
+     * @param operations the table operations
+     * @param items      the item of each operation, at the same position
+     * @return the request body
+     */
+    JsonElement encode(String tableName, List<TableOperation> operations, List<JsonObject> items);
+
+    /**
+     * Decodes the response to a batch
+     *
+     * @param response   the response body
+     * @param operations the table operations of the batch, in queue order
+     * @return the result of each operation, at the same position
+     * @throws Exception if the response cannot be decoded
+     */
+    List<MobileServicePushBatchResult> decode(JsonElement response, List<TableOperation> operations) throws Exception;
+}
@@ -0,0 +1,116 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+
+/**
+ * MobileServicePushBatchResult.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.push;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Result of a single table operation sent in a push batch
+ */
+public class MobileServicePushBatchResult {
+    /**
+     * True if the operation succeeded
+     */
+    private boolean mSuccessful;
+
+    /**
+     * The item returned for a successful operation
+     */
+    private JsonObject mItem;
+
+    /**
+     * The HTTP status code of a failed operation
+     */
+    private Integer mStatusCode;
+
+    /**
+     * The error message of a failed operation
+     */
+    private String mErrorMessage;
+
+    /**
+     * The server version of the item of a failed operation
+     */
+    private JsonObject mServerItem;
+
+    /**
+     * Constructor for a successful MobileServicePushBatchResult
+     *
+     * @param item the item returned by the server, or null
+     */
+    public MobileServicePushBatchResult(JsonObject item) {
+        this.mSuccessful = true;
+        this.mItem = item;
+    }
+
+    /**
+     * Constructor for a failed MobileServicePushBatchResult
+     *
+     * @param statusCode   the HTTP status code, or null
+     * @param errorMessage the error message
+     * @param serverItem   the server version of the item, or null
+     */
+    public MobileServicePushBatchResult(Integer statusCode, String errorMessage, JsonObject serverItem) {
+        this.mSuccessful = false;
+        this.mStatusCode = statusCode;
+        this.mErrorMessage = errorMessage;
+        this.mServerItem = serverItem;
+    }
+
+    /**
+     * @return true if the operation succeeded
+     */
+    public boolean isSuccessful() {
+        return this.mSuccessful;
+    }
+
+    /**
+     * @return the item returned for a successful operation
+     */
+    public JsonObject getItem() {
+        return this.mItem;
+    }
+
+    /**
+     * @return the HTTP status code of a failed operation
+     */
+    public Integer getStatusCode() {
+        return this.mStatusCode;
+    }
+
+    /**
+     * @return the error message of a failed operation
+     */
+    public String getErrorMessage() {
+        return this.mErrorMessage;
+    }
+
+    /**
+     * @return the server version of the item of a failed operation
+     */
+    public JsonObject getServerItem() {
+        return this.mServerItem;
+    }
+}
@@ -46,6 +46,11 @@ public class MobileServicePushCompletionResult {
      */
     private Throwable mInternalError;
 
+    /**
+     * Bytes of item content sent during push.
+     */
+    private long mUploadedBytes;
+
     /**
      * Constructor for MobileServicePushCompletionResult
      */
@@ -94,4 +99,19 @@ public class MobileServicePushCompletionResult {
     public void setInternalError(Throwable internalError) {
         this.mInternalError = internalError;
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the number of bytes of item content sent during push, in UTF-8.
+     * Request headers and URLs are not counted.
+     */
+    public long getUploadedBytes() {
+        return this.mUploadedBytes;
+    }
+
+    /**
+     * Sets the number of bytes of item content sent during push
+     */
+    public void setUploadedBytes(long uploadedBytes) {
+        this.mUploadedBytes = uploadedBytes;
+    }
+}
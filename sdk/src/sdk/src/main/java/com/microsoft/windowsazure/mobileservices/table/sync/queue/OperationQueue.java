@@ -25,8 +25,12 @@ package com.microsoft.windowsazure.mobileservices.table.sync.queue;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemColumns;
+import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
 import com.microsoft.windowsazure.mobileservices.table.serialization.DateSerializer;
@@ -40,14 +44,28 @@ import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOper
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationCollapser;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationError;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationKind;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationVisitor;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.UpdateOperation;
 
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -59,27 +77,61 @@ public class OperationQueue {
      * Table that stores operation queue items
      */
     private static final String OPERATION_QUEUE_TABLE = "__operations";
+    /**
+     * Time after which an idle group commit thread ends
+     */
+    private static final long GROUP_COMMIT_IDLE_MILLIS = 30000;
+    /**
+     * Number of queued operations read at a time on load
+     */
+    private static final int LOAD_PAGE_SIZE = 1000;
+    /**
+     * Minimum number of cancelled operations kept in the queue before it is
+     * compacted
+     */
+    private static final int COMPACT_MIN_CANCELLED = 64;
+    /**
+     * Columns read on load. The item of delete operations is only read when
+     * the operation is peeked.
+     */
+    private static final String[] LOAD_COLUMNS = {"id", "kind", "tablename", "itemid", MobileServiceSystemColumns.CreatedAt, "__queueloadedat",
+            "sequence", "state", "changedproperties"};
     private MobileServiceLocalStore mStore;
-    private Queue<OperationQueueItem> mQueue;
+    private OperationRing mQueue;
     private Queue<BookmarkQueueItem> mBookmarkQueue;
-    private Map<String, OperationQueueItem> mIdOperationMap;
-    private Map<String, Integer> mTableCountMap;
+    private Map<String, Map<String, OperationQueueItem>> mTableItemMap;
+    private Map<String, String> mTableNames;
+    private int mCount;
+    private Set<String> mDeferredDeleteIds;
     private Date mLoadedAt;
-    private long mSequence;
+    private long mPosition;
+    private boolean mChangedInTransaction;
     private ReadWriteLock mSyncLock;
+    private volatile long mGroupCommitWindow;
+    private BlockingQueue<PendingEnqueue> mPendingEnqueues;
+    private Thread mGroupCommitThread;
+    private Object mGroupCommitThreadLock;
+    private long mLoadTimeMillis;
+    private AtomicInteger mLazilyLoadedItemCount;
     private OperationQueue(MobileServiceLocalStore store) {
         this.mStore = store;
 
-        this.mQueue = new LinkedList<OperationQueueItem>();
+        this.mQueue = new OperationRing();
         this.mBookmarkQueue = new LinkedList<BookmarkQueueItem>();
 
-        this.mIdOperationMap = new HashMap<String, OperationQueueItem>();
-        this.mTableCountMap = new HashMap<String, Integer>();
+        this.mTableItemMap = new HashMap<String, Map<String, OperationQueueItem>>();
+        this.mTableNames = new HashMap<String, String>();
+        this.mDeferredDeleteIds = new HashSet<String>();
 
         this.mLoadedAt = new Date();
-        this.mSequence = 0;
+        this.mPosition = 0;
 
         this.mSyncLock = new ReentrantReadWriteLock(true);
+
+        this.mPendingEnqueues = new LinkedBlockingQueue<PendingEnqueue>();
+        this.mGroupCommitThreadLock = new Object();
+
+        this.mLazilyLoadedItemCount = new AtomicInteger();
     }
 
     /**
@@ -99,8 +151,12 @@ public class OperationQueue {
         columns.put("sequence", ColumnDataType.Real);
         columns.put("state", ColumnDataType.Real);
         columns.put("item", ColumnDataType.Other);
+        columns.put("changedproperties", ColumnDataType.Other);
 
         store.defineTable(OPERATION_QUEUE_TABLE, columns);
+
+        // the queue is loaded in this order
+        store.defineIndex(OPERATION_QUEUE_TABLE, Arrays.asList("__queueloadedat", "sequence"), false);
     }
 
     /**
@@ -114,38 +170,156 @@ public class OperationQueue {
     public static OperationQueue load(MobileServiceLocalStore store) throws ParseException, MobileServiceLocalStoreException {
         OperationQueue opQueue = new OperationQueue(store);
 
-        JsonElement operations = store.read(QueryOperations.tableName(OPERATION_QUEUE_TABLE).orderBy("__queueLoadedAt", QueryOrder.Ascending)
-                .orderBy("sequence", QueryOrder.Ascending));
+        opQueue.loadOperations();
 
-        if (operations.isJsonArray()) {
-            JsonArray array = (JsonArray) operations;
+        return opQueue;
+    }
 
-            for (JsonElement element : array) {
-                if (element.isJsonObject()) {
-                    OperationQueueItem opQueueItem = deserialize((JsonObject) element);
-                    TableOperation operation = opQueueItem.getOperation();
-                    opQueue.mQueue.add(opQueueItem);
+    /**
+     * Replaces the queued operations in memory with the ones saved in the
+     * local store, after a failed transaction was rolled back. Must be called
+     * with the sync lock held for writing.
+     */
+    private void reload() throws ParseException, MobileServiceLocalStoreException {
+        // the operations that were not rolled back keep their position, so
+        // that existing bookmarks still include them
+        Map<String, Long> positions = new HashMap<String, Long>();
+
+        for (OperationQueueItem opQueueItem : this.mQueue) {
+            positions.put(opQueueItem.getId(), opQueueItem.getPosition());
+        }
+
+        this.mQueue.clear();
+        this.mTableItemMap.clear();
+        this.mCount = 0;
 
-                    // '/' is a reserved character that cannot be used on string
-                    // ids.
-                    // We use it to build a unique compound string from
-                    // tableName and itemId
-                    String tableItemId = operation.getTableName() + "/" + operation.getItemId();
+        loadOperations(positions);
+    }
+
+    private void loadOperations() throws ParseException, MobileServiceLocalStoreException {
+        loadOperations(Collections.<String, Long>emptyMap());
+    }
 
-                    opQueue.mIdOperationMap.put(tableItemId, opQueueItem);
+    private void loadOperations(Map<String, Long> positions) throws ParseException, MobileServiceLocalStoreException {
+        long start = System.nanoTime();
+
+        // operations loaded from the same session share their load date
+        Map<String, Date> queueLoadedAts = new HashMap<String, Date>();
+
+        // each page starts after the last key of the previous one, so that
+        // the store seeks on the index instead of skipping the rows read
+        OperationQueueItem lastKey = null;
+        boolean keyMoved;
+        int pageCount;
+
+        do {
+            Query query = QueryOperations.tableName(OPERATION_QUEUE_TABLE).select(LOAD_COLUMNS);
+
+            if (lastKey != null) {
+                Date lastLoadedAt = lastKey.getQueueLoadedAt();
+
+                query = query.field("__queueloadedat").gt(lastLoadedAt)
+                        .or(QueryOperations.field("__queueloadedat").eq(lastLoadedAt).and().field("sequence").gt(lastKey.getSequence()));
+            }
 
-                    Integer tableCount = opQueue.mTableCountMap.get(operation.getTableName());
+            JsonElement operations = this.mStore.read(query.orderBy("__queueloadedat", QueryOrder.Ascending).orderBy("sequence", QueryOrder.Ascending)
+                    .top(LOAD_PAGE_SIZE));
 
-                    if (tableCount != null) {
-                        opQueue.mTableCountMap.put(operation.getTableName(), tableCount + 1);
-                    } else {
-                        opQueue.mTableCountMap.put(operation.getTableName(), 1);
+            OperationQueueItem pageStart = lastKey;
+            keyMoved = false;
+            pageCount = 0;
+
+            if (operations.isJsonArray()) {
+                JsonArray array = (JsonArray) operations;
+
+                for (JsonElement element : array) {
+                    if (element.isJsonObject()) {
+                        OperationQueueItem opQueueItem = deserialize((JsonObject) element, queueLoadedAts);
+
+                        // stores that ignore the filter return rows already read
+                        if (pageStart != null && compareKeys(opQueueItem, pageStart) <= 0) {
+                            continue;
+                        }
+
+                        if (lastKey == null || compareKeys(opQueueItem, lastKey) > 0) {
+                            lastKey = opQueueItem;
+                            keyMoved = true;
+                        }
+
+                        // dequeued, and deleted by the next commitDeferred
+                        if (this.mDeferredDeleteIds.contains(opQueueItem.getId())) {
+                            continue;
+                        }
+
+                        Long position = positions.get(opQueueItem.getId());
+                        opQueueItem.mPosition = position != null ? position : this.mPosition++;
+
+                        addOperationQueueItem(opQueueItem);
                     }
                 }
+
+                pageCount = array.size();
             }
+        } while (keyMoved && pageCount >= LOAD_PAGE_SIZE);
+
+        this.mLoadTimeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Orders queued operations by load date, then by sequence, as they are
+     * read from the store
+     */
+    private static int compareKeys(OperationQueueItem first, OperationQueueItem second) {
+        int result = first.getQueueLoadedAt().compareTo(second.getQueueLoadedAt());
+
+        if (result == 0) {
+            result = first.getSequence() < second.getSequence() ? -1 : (first.getSequence() == second.getSequence() ? 0 : 1);
         }
 
-        return opQueue;
+        return result;
+    }
+
+    /**
+     * Reads the item of a delete operation that was loaded without it
+     */
+    private TableOperation loadItem(OperationQueueItem opQueueItem) throws MobileServiceLocalStoreException {
+        synchronized (opQueueItem) {
+            if (!opQueueItem.isItemLoaded()) {
+                JsonObject element = this.mStore.lookup(OPERATION_QUEUE_TABLE, opQueueItem.getId());
+
+                JsonElement item = element != null ? element.get("item") : null;
+
+                opQueueItem.getOperation().setItem(item != null && item.isJsonObject() ? item.getAsJsonObject() : null);
+                opQueueItem.setItemLoaded();
+
+                this.mLazilyLoadedItemCount.incrementAndGet();
+            }
+
+            return opQueueItem.getOperation();
+        }
+    }
+
+    /**
+     * Gets metrics of the queue
+     *
+     * @return the metrics
+     */
+    public OperationQueueMetrics getMetrics() {
+        this.mSyncLock.readLock().lock();
+
+        try {
+            int residentItemCount = 0;
+
+            for (OperationQueueItem opQueueItem : this.mQueue) {
+                if (opQueueItem.getOperation().getItem() != null) {
+                    residentItemCount++;
+                }
+            }
+
+            return new OperationQueueMetrics(this.mLoadTimeMillis, this.mCount, residentItemCount, this.mLazilyLoadedItemCount.get());
+        } finally {
+            this.mSyncLock.readLock().unlock();
+        }
     }
 
     private static JsonObject serialize(OperationQueueItem opQueueItem) throws ParseException {
@@ -160,18 +334,58 @@ public class OperationQueue {
         element.addProperty("sequence", opQueueItem.getSequence());
         element.addProperty("state", operation.getOperationState().getValue());
         element.add("item", operation.getItem());
+        element.add("changedproperties", serializeChangedProperties(operation));
 
         return element;
     }
 
-    private static TableOperation createOperation(TableOperationKind type, String id, String table, String itemId, Date createdAt, MobileServiceTableOperationState state, JsonObject item) {
+    private static JsonElement serializeChangedProperties(TableOperation operation) {
+        Set<String> changedProperties = null;
+
+        if (operation.getKind() == TableOperationKind.Update) {
+            changedProperties = ((UpdateOperation) operation).getChangedProperties();
+        }
+
+        if (changedProperties == null) {
+            return JsonNull.INSTANCE;
+        }
+
+        JsonArray array = new JsonArray();
+
+        for (String property : changedProperties) {
+            array.add(new JsonPrimitive(property));
+        }
+
+        return array;
+    }
+
+    private static Set<String> deserializeChangedProperties(JsonElement element) {
+        if (element != null && element.isJsonPrimitive()) {
+            element = new JsonParser().parse(element.getAsString());
+        }
+
+        if (element == null || !element.isJsonArray()) {
+            return null;
+        }
+
+        Set<String> changedProperties = new HashSet<String>();
+
+        for (JsonElement property : element.getAsJsonArray()) {
+            changedProperties.add(property.getAsString());
+        }
+
+        return changedProperties;
+    }
+
+    private static TableOperation createOperation(TableOperationKind type, String id, String table, String itemId, Date createdAt, MobileServiceTableOperationState state, JsonObject item,
+                                                  Set<String> changedProperties) {
         TableOperation operation = null;
         switch (type) {
             case Insert:
                 operation = new InsertOperation(id, table, itemId, createdAt, state);
                 break;
             case Update:
-                operation = new UpdateOperation(id, table, itemId, createdAt, state);
+                operation = new UpdateOperation(id, table, itemId, createdAt, state, changedProperties);
                 break;
             case Delete:
                 operation = new DeleteOperation(id, table, itemId, createdAt, state, item);
@@ -180,20 +394,38 @@ public class OperationQueue {
         return operation;
     }
 
-    private static OperationQueueItem deserialize(JsonObject element) throws ParseException {
+    private OperationQueueItem deserialize(JsonObject element, Map<String, Date> queueLoadedAts) throws ParseException {
         String id = element.get("id").getAsString();
         TableOperationKind kind = TableOperationKind.parse(element.get("kind").getAsInt());
-        String tableName = element.get("tablename").getAsString();
+        String tableName = internTableName(element.get("tablename").getAsString());
         String itemId = element.get("itemid").getAsString();
         Date createdAt = DateSerializer.deserialize(element.get(MobileServiceSystemColumns.CreatedAt).getAsString());
-        Date queueLoadedAt = DateSerializer.deserialize(element.get("__queueloadedat").getAsString());
+
+        String queueLoadedAtValue = element.get("__queueloadedat").getAsString();
+        Date queueLoadedAt = queueLoadedAts.get(queueLoadedAtValue);
+
+        if (queueLoadedAt == null) {
+            queueLoadedAt = DateSerializer.deserialize(queueLoadedAtValue);
+            queueLoadedAts.put(queueLoadedAtValue, queueLoadedAt);
+        }
+
         long sequence = element.get("sequence").getAsLong();
         MobileServiceTableOperationState state = MobileServiceTableOperationState.parse(element.get("state").getAsInt());
-        JsonObject item = (element.get("item").isJsonNull()) ? null : element.get("item").getAsJsonObject();
+        JsonElement itemElement = element.get("item");
+        JsonObject item = itemElement == null || itemElement.isJsonNull() ? null : itemElement.getAsJsonObject();
+
+        Set<String> changedProperties = deserializeChangedProperties(element.get("changedproperties"));
+
+        TableOperation operation = createOperation(kind, id, tableName, itemId, createdAt, state, item, changedProperties);
+
+        OperationQueueItem opQueueItem = new OperationQueueItem(operation, queueLoadedAt, sequence, 0);
 
-        TableOperation operation = createOperation(kind, id, tableName, itemId, createdAt, state, item);
+        // only delete operations have an item, which is not read on load
+        if (kind == TableOperationKind.Delete && itemElement == null) {
+            opQueueItem.mItemLoaded = false;
+        }
 
-        return new OperationQueueItem(operation, queueLoadedAt, sequence);
+        return opQueueItem;
     }
 
     /**
@@ -212,29 +444,31 @@ public class OperationQueue {
                 operation.setOperationState(MobileServiceTableOperationState.Pending);
             }
 
-            // '/' is a reserved character that cannot be used on string ids.
-            // We use it to build a unique compound string from tableName and
-            // itemId
-            String tableItemId = operation.getTableName() + "/" + operation.getItemId();
+            OperationQueueItem prevOpQueueItem = getOperationQueueItem(operation.getTableName(), operation.getItemId());
 
-            if (this.mIdOperationMap.containsKey(tableItemId)) {
-                OperationQueueItem prevOpQueueItem = this.mIdOperationMap.get(tableItemId);
+            if (prevOpQueueItem != null) {
                 TableOperation prevOperation = prevOpQueueItem.getOperation();
 
                 TableOperation collapsedOperation = prevOperation.accept(new TableOperationCollapser(operation));
 
-                if (collapsedOperation == null || collapsedOperation == operation) {
-                    prevOpQueueItem.cancel();
+                // the collapse may have merged changes into the previous operation
+                this.mChangedInTransaction = true;
 
-                    removeOperationQueueItem(prevOpQueueItem);
+                if (collapsedOperation == null || collapsedOperation == operation) {
+                    cancelOperationQueueItem(prevOpQueueItem);
 
                     if (collapsedOperation == operation) {
                         enqueueOperation(operation);
                     }
+                } else if (prevOperation.getKind() == TableOperationKind.Update) {
+                    // the changed properties of the new update were merged
+                    this.mStore.upsert(OPERATION_QUEUE_TABLE, serialize(prevOpQueueItem), false);
                 }
 
                 dequeueCancelledOperations();
             } else {
+                this.mChangedInTransaction = true;
+
                 enqueueOperation(operation);
             }
 
@@ -258,7 +492,7 @@ public class OperationQueue {
             OperationQueueItem opQueueItem = this.mQueue.peek();
 
             if (opQueueItem != null) {
-                result = dequeueOperation(opQueueItem);
+                result = dequeueOperation(opQueueItem, false);
             }
 
             return result;
@@ -267,16 +501,113 @@ public class OperationQueue {
         }
     }
 
-    public void updateOperationAndItem(TableOperationError error, TableOperationKind kind, JsonObject item) throws Throwable {
-        String tableItemId = error.getTableName() + '/' + error.getItemId();
+    /**
+     * Commits the removal of the operations dequeued with
+     * Bookmark.dequeueDeferred, together with the given items, in a single
+     * store transaction. If the transaction fails, the operations stay in the
+     * store and their removal is committed by the next call.
+     *
+     * @param items the items to upsert, by table name
+     * @throws MobileServiceLocalStoreException
+     */
+    public void commitDeferred(Map<String, List<JsonObject>> items) throws MobileServiceLocalStoreException {
+        // the sync lock is always taken before the store transaction
+        this.mSyncLock.writeLock().lock();
+
+        try {
+            if (this.mDeferredDeleteIds.isEmpty() && items.isEmpty()) {
+                return;
+            }
 
+            this.mStore.beginTransaction();
+
+            try {
+                for (Map.Entry<String, List<JsonObject>> entry : items.entrySet()) {
+                    List<JsonObject> tableItems = entry.getValue();
+
+                    this.mStore.upsert(entry.getKey(), tableItems.toArray(new JsonObject[tableItems.size()]), true);
+                }
+
+                if (!this.mDeferredDeleteIds.isEmpty()) {
+                    this.mStore.delete(OPERATION_QUEUE_TABLE, this.mDeferredDeleteIds.toArray(new String[this.mDeferredDeleteIds.size()]));
+                }
+
+                this.mStore.setTransactionSuccessful();
+            } finally {
+                this.mStore.endTransaction();
+            }
+
+            this.mDeferredDeleteIds.clear();
+        } finally {
+            this.mSyncLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies a table operation to the local store and enqueues it. The local
+     * change and the queued operation are written in a single store
+     * transaction. With a group commit window, the calling thread waits while
+     * the operations enqueued by other threads during the window are added to
+     * the same transaction.
+     *
+     * @param operation      the table operation
+     * @param localProcessor the processor that applies the operation to the local store
+     * @throws Throwable
+     */
+    public void enqueue(TableOperation operation, TableOperationVisitor<Void> localProcessor) throws Throwable {
+        PendingEnqueue pending = new PendingEnqueue(operation, localProcessor);
+
+        if (this.mGroupCommitWindow > 0) {
+            synchronized (this.mGroupCommitThreadLock) {
+                this.mPendingEnqueues.add(pending);
+
+                if (this.mGroupCommitThread == null) {
+                    this.mGroupCommitThread = new GroupCommitThread(this);
+                    this.mGroupCommitThread.start();
+                }
+            }
+        } else {
+            commitGroup(Collections.singletonList(pending));
+        }
+
+        pending.awaitDone();
+
+        if (pending.mError != null) {
+            throw pending.mError;
+        }
+    }
+
+    /**
+     * Sets how long the first of several concurrent enqueue calls waits for
+     * the others, so that their writes are committed in one transaction. With
+     * 0, the default, each enqueue call is committed on its own thread.
+     *
+     * @param windowMillis the window in milliseconds, or 0 to disable group commit
+     */
+    public void setGroupCommitWindow(long windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("The group commit window cannot be negative.");
+        }
+
+        this.mGroupCommitWindow = windowMillis;
+    }
+
+    /**
+     * @return the group commit window in milliseconds
+     */
+    public long getGroupCommitWindow() {
+        return this.mGroupCommitWindow;
+    }
+
+    public void updateOperationAndItem(TableOperationError error, TableOperationKind kind, JsonObject item) throws Throwable {
         this.mSyncLock.writeLock().lock();
 
         try {
-            if (this.mIdOperationMap.containsKey(tableItemId)) {
-                OperationQueueItem itemToUpdate = this.mIdOperationMap.get(tableItemId);
+            OperationQueueItem itemToUpdate = getOperationQueueItem(error.getTableName(), error.getItemId());
+
+            if (itemToUpdate != null) {
                 TableOperation operation = itemToUpdate.getOperation();
-                TableOperation newOperation = createOperation(kind, operation.getId(), operation.getTableName(), operation.getItemId(), operation.getCreatedAt(), MobileServiceTableOperationState.Pending, item);
+                TableOperation newOperation = createOperation(kind, operation.getId(), operation.getTableName(), operation.getItemId(), operation.getCreatedAt(), MobileServiceTableOperationState.Pending, item, null);
                 itemToUpdate.setOperation(newOperation);
                 this.mStore.upsert(OPERATION_QUEUE_TABLE, serialize(itemToUpdate), false);
             } else {
@@ -291,14 +622,10 @@ public class OperationQueue {
         this.mSyncLock.writeLock().lock();
 
         try {
-            String tableItemId = operationError.getTableName() + "/" + operationError.getItemId();
-
-            if (this.mIdOperationMap.containsKey(tableItemId)) {
-                OperationQueueItem currentOperationQueueItem = this.mIdOperationMap.get(tableItemId);
+            OperationQueueItem currentOperationQueueItem = getOperationQueueItem(operationError.getTableName(), operationError.getItemId());
 
-                currentOperationQueueItem.cancel();
-
-                removeOperationQueueItem(currentOperationQueueItem);
+            if (currentOperationQueueItem != null) {
+                cancelOperationQueueItem(currentOperationQueueItem);
 
                 dequeueCancelledOperations();
             }
@@ -312,12 +639,13 @@ public class OperationQueue {
      * Peek the next table operation
      *
      * @return the table operation
+     * @throws MobileServiceLocalStoreException
      */
-    public TableOperation peek() {
+    public TableOperation peek() throws MobileServiceLocalStoreException {
         this.mSyncLock.readLock().lock();
 
         try {
-            return this.mQueue.peek() != null ? this.mQueue.peek().getOperation() : null;
+            return this.mQueue.peek() != null ? loadItem(this.mQueue.peek()) : null;
         } finally {
             this.mSyncLock.readLock().unlock();
         }
@@ -327,12 +655,13 @@ public class OperationQueue {
      * Get the next table operation
      *
      * @return the table operation
+     * @throws MobileServiceLocalStoreException
      */
-    public TableOperation element() {
+    public TableOperation element() throws MobileServiceLocalStoreException {
         this.mSyncLock.readLock().lock();
 
         try {
-            return this.mQueue.element() != null ? this.mQueue.element().getOperation() : null;
+            return loadItem(this.mQueue.element());
         } finally {
             this.mSyncLock.readLock().unlock();
         }
@@ -345,7 +674,7 @@ public class OperationQueue {
         this.mSyncLock.readLock().lock();
 
         try {
-            return this.mIdOperationMap.size();
+            return this.mCount;
         } finally {
             this.mSyncLock.readLock().unlock();
         }
@@ -360,7 +689,27 @@ public class OperationQueue {
         this.mSyncLock.readLock().lock();
 
         try {
-            return this.mTableCountMap.get(tableName) != null ? this.mTableCountMap.get(tableName) : 0;
+            Map<String, OperationQueueItem> itemMap = this.mTableItemMap.get(tableName);
+
+            return itemMap != null ? itemMap.size() : 0;
+        } finally {
+            this.mSyncLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the ids of the items with pending table operations for a
+     * specific table
+     *
+     * @param tableName the table name
+     */
+    public Set<String> getPendingItemIds(String tableName) {
+        this.mSyncLock.readLock().lock();
+
+        try {
+            Map<String, OperationQueueItem> itemMap = this.mTableItemMap.get(tableName);
+
+            return itemMap != null ? new HashSet<String>(itemMap.keySet()) : new HashSet<String>();
         } finally {
             this.mSyncLock.readLock().unlock();
         }
@@ -375,7 +724,7 @@ public class OperationQueue {
         this.mSyncLock.writeLock().lock();
 
         try {
-            BookmarkQueueItem bookmarkQueueItem = new BookmarkQueueItem(this.mLoadedAt, this.mSequence);
+            BookmarkQueueItem bookmarkQueueItem = new BookmarkQueueItem(this.mPosition);
             this.mBookmarkQueue.add(bookmarkQueueItem);
             return new Bookmark(this, bookmarkQueueItem);
         } finally {
@@ -401,53 +750,235 @@ public class OperationQueue {
     }
 
     private void enqueueOperation(TableOperation operation) throws ParseException, MobileServiceLocalStoreException {
-        OperationQueueItem opQueueItem = new OperationQueueItem(operation, this.mLoadedAt, this.mSequence++);
+        // the sequence is persisted to keep the queue order across loads,
+        // the position orders the operations in memory
+        long position = this.mPosition++;
+
+        OperationQueueItem opQueueItem = new OperationQueueItem(operation, this.mLoadedAt, position, position);
+
+        // a dequeued operation can be enqueued again before its removal is
+        // committed
+        this.mDeferredDeleteIds.remove(operation.getId());
 
         this.mStore.upsert(OPERATION_QUEUE_TABLE, serialize(opQueueItem), false);
 
+        addOperationQueueItem(opQueueItem);
+    }
+
+    private void addOperationQueueItem(OperationQueueItem opQueueItem) {
+        TableOperation operation = opQueueItem.getOperation();
+        String tableName = internTableName(operation.getTableName());
+
+        Map<String, OperationQueueItem> itemMap = this.mTableItemMap.get(tableName);
+
+        if (itemMap == null) {
+            itemMap = new HashMap<String, OperationQueueItem>();
+            this.mTableItemMap.put(tableName, itemMap);
+        }
+
+        itemMap.put(operation.getItemId(), opQueueItem);
+        this.mCount++;
+
         this.mQueue.add(opQueueItem);
+    }
 
-        // '/' is a reserved character that cannot be used on string ids.
-        // We use it to build a unique compound string from tableName and
-        // itemId
-        String tableItemId = operation.getTableName() + "/" + operation.getItemId();
+    private OperationQueueItem getOperationQueueItem(String tableName, String itemId) {
+        Map<String, OperationQueueItem> itemMap = this.mTableItemMap.get(tableName);
 
-        this.mIdOperationMap.put(tableItemId, opQueueItem);
+        return itemMap != null ? itemMap.get(itemId) : null;
+    }
 
-        Integer tableCount = this.mTableCountMap.get(operation.getTableName());
+    /**
+     * Returns a single instance of each table name, so that the operations
+     * loaded from the store do not each hold a copy of it
+     */
+    private String internTableName(String tableName) {
+        String interned = this.mTableNames.get(tableName);
 
-        if (tableCount != null) {
-            this.mTableCountMap.put(operation.getTableName(), tableCount + 1);
-        } else {
-            this.mTableCountMap.put(operation.getTableName(), 1);
+        if (interned == null) {
+            interned = tableName;
+            this.mTableNames.put(interned, interned);
         }
+
+        return interned;
     }
 
-    private TableOperation dequeueOperation(OperationQueueItem opQueueItem) throws MobileServiceLocalStoreException {
+    private void consumePendingEnqueues() {
+        while (true) {
+            PendingEnqueue first = pollPendingEnqueue(TimeUnit.MILLISECONDS.toNanos(GROUP_COMMIT_IDLE_MILLIS));
+
+            if (first == null) {
+                synchronized (this.mGroupCommitThreadLock) {
+                    if (this.mPendingEnqueues.isEmpty()) {
+                        this.mGroupCommitThread = null;
+                        return;
+                    }
+                }
+
+                continue;
+            }
+
+            List<PendingEnqueue> group = new ArrayList<PendingEnqueue>();
+            group.add(first);
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.mGroupCommitWindow);
+            long remaining;
+
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                PendingEnqueue next = pollPendingEnqueue(remaining);
+
+                if (next == null) {
+                    break;
+                }
+
+                group.add(next);
+            }
+
+            commitGroup(group);
+        }
+    }
+
+    /**
+     * Waits for the next enqueue call. An interruption only ends the wait,
+     * since the calls already submitted must still be committed.
+     */
+    private PendingEnqueue pollPendingEnqueue(long timeoutNanos) {
+        try {
+            return this.mPendingEnqueues.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            return this.mPendingEnqueues.poll();
+        }
+    }
+
+    /**
+     * Commits a group of enqueue calls in one transaction. If the transaction
+     * fails, the queue is reloaded from the store and each call is committed
+     * on its own, so that only the failing calls report an error.
+     */
+    private void commitGroup(List<PendingEnqueue> group) {
+        // the sync lock is always taken before the store transaction, as in
+        // dequeue, so that no thread waits for it while in a transaction
+        this.mSyncLock.writeLock().lock();
+
+        try {
+            if (group.size() > 1) {
+                try {
+                    commitInTransaction(group);
+
+                    for (PendingEnqueue pending : group) {
+                        pending.setDone(null);
+                    }
+
+                    return;
+                } catch (Throwable throwable) {
+                    reloadAfterFailure(group, throwable);
+                }
+            }
+
+            for (PendingEnqueue pending : group) {
+                if (pending.isDone()) {
+                    continue;
+                }
+
+                try {
+                    commitInTransaction(Collections.singletonList(pending));
+
+                    pending.setDone(null);
+                } catch (Throwable throwable) {
+                    pending.setDone(throwable);
+
+                    reloadAfterFailure(group, throwable);
+                }
+            }
+        } finally {
+            this.mSyncLock.writeLock().unlock();
+        }
+    }
+
+    private void commitInTransaction(List<PendingEnqueue> group) throws Throwable {
+        this.mChangedInTransaction = false;
+
+        this.mStore.beginTransaction();
+
+        try {
+            for (PendingEnqueue pending : group) {
+                pending.mOperation.accept(pending.mLocalProcessor);
+
+                enqueue(pending.mOperation);
+            }
+
+            this.mStore.setTransactionSuccessful();
+        } finally {
+            this.mStore.endTransaction();
+        }
+    }
+
+    /**
+     * Reloads the queue after a rolled back transaction, if the queue changed
+     * in memory before the failure. Failures before any change, such as an
+     * operation refused by the collapse or a failed local write, keep the
+     * queue as is. If the queue cannot be reloaded, the calls that are not
+     * done fail with the original error.
+     */
+    private void reloadAfterFailure(List<PendingEnqueue> group, Throwable error) {
+        if (!this.mChangedInTransaction) {
+            return;
+        }
+
+        try {
+            reload();
+        } catch (Throwable reloadError) {
+            for (PendingEnqueue pending : group) {
+                if (!pending.isDone()) {
+                    pending.setDone(error);
+                }
+            }
+        }
+    }
+
+    private TableOperation dequeueOperation(OperationQueueItem opQueueItem, boolean deferDelete) throws MobileServiceLocalStoreException {
         this.mQueue.poll();
 
-        removeOperationQueueItem(opQueueItem);
+        removeOperationQueueItem(opQueueItem, deferDelete);
 
         dequeueCancelledOperations();
 
         return opQueueItem.getOperation();
     }
 
-    private void removeOperationQueueItem(OperationQueueItem opQueueItem) throws MobileServiceLocalStoreException {
+    private void removeOperationQueueItem(OperationQueueItem opQueueItem, boolean deferDelete) throws MobileServiceLocalStoreException {
         TableOperation operation = opQueueItem.getOperation();
-        String tableItemId = operation.getTableItemId();
+        Map<String, OperationQueueItem> itemMap = this.mTableItemMap.get(operation.getTableName());
 
-        this.mIdOperationMap.remove(tableItemId);
+        if (itemMap != null && itemMap.remove(operation.getItemId()) != null) {
+            this.mCount--;
 
-        Integer tableCount = this.mTableCountMap.get(operation.getTableName());
+            if (itemMap.isEmpty()) {
+                this.mTableItemMap.remove(operation.getTableName());
+            }
+        }
 
-        if (tableCount != null && tableCount > 1) {
-            this.mTableCountMap.put(operation.getTableName(), tableCount - 1);
+        if (deferDelete) {
+            this.mDeferredDeleteIds.add(opQueueItem.getId());
         } else {
-            this.mTableCountMap.remove(operation.getTableName());
+            this.mStore.delete(OPERATION_QUEUE_TABLE, opQueueItem.getId());
         }
+    }
+
+    /**
+     * Removes an operation that may not be the next one. It stays in the
+     * queue as cancelled until it reaches the head or the queue is compacted.
+     */
+    private void cancelOperationQueueItem(OperationQueueItem opQueueItem) throws MobileServiceLocalStoreException {
+        cancelOperationQueueItem(opQueueItem, false);
+    }
 
-        this.mStore.delete(OPERATION_QUEUE_TABLE, opQueueItem.getId());
+    private void cancelOperationQueueItem(OperationQueueItem opQueueItem, boolean deferDelete) throws MobileServiceLocalStoreException {
+        opQueueItem.cancel();
+
+        removeOperationQueueItem(opQueueItem, deferDelete);
+
+        this.mQueue.cancelled();
     }
 
     private void dequeueCancelledOperations() {
@@ -462,7 +993,7 @@ public class OperationQueue {
         }
     }
 
-    private TableOperation dequeueBookmarked(BookmarkQueueItem bookmarkQueueItem) throws MobileServiceLocalStoreException {
+    private TableOperation dequeueBookmarked(BookmarkQueueItem bookmarkQueueItem, boolean deferDelete) throws MobileServiceLocalStoreException {
         this.mSyncLock.writeLock().lock();
 
         try {
@@ -475,7 +1006,7 @@ public class OperationQueue {
                 OperationQueueItem opQueueItem = this.mQueue.peek();
 
                 if (verifyBookmarkedOperation(bookmarkQueueItem, opQueueItem)) {
-                    result = dequeueOperation(opQueueItem);
+                    result = dequeueOperation(opQueueItem, deferDelete);
                 }
 
                 return result;
@@ -485,7 +1016,7 @@ public class OperationQueue {
         }
     }
 
-    private TableOperation peekBookmarked(BookmarkQueueItem bookmarkQueueItem) {
+    private TableOperation peekBookmarked(BookmarkQueueItem bookmarkQueueItem) throws MobileServiceLocalStoreException {
         this.mSyncLock.readLock().lock();
 
         try {
@@ -498,7 +1029,70 @@ public class OperationQueue {
                 OperationQueueItem opQueueItem = this.mQueue.peek();
 
                 if (verifyBookmarkedOperation(bookmarkQueueItem, opQueueItem)) {
-                    result = opQueueItem.getOperation();
+                    result = loadItem(opQueueItem);
+                }
+
+                return result;
+            }
+        } finally {
+            this.mSyncLock.readLock().unlock();
+        }
+    }
+
+    private TableOperation dequeueBookmarked(BookmarkQueueItem bookmarkQueueItem, TableOperation operation, boolean deferDelete)
+            throws MobileServiceLocalStoreException {
+        this.mSyncLock.writeLock().lock();
+
+        try {
+            if (bookmarkQueueItem.mCancelled) {
+                throw new IllegalStateException("The bookmark has been cancelled.");
+            } else if (!isCurrentBookmark(bookmarkQueueItem)) {
+                throw new IllegalStateException("There are other pending bookmarks to be processed.");
+            } else {
+                TableOperation result = null;
+                OperationQueueItem opQueueItem = getOperationQueueItem(operation.getTableName(), operation.getItemId());
+
+                if (opQueueItem != null && opQueueItem.getId().equals(operation.getId()) && verifyBookmarkedOperation(bookmarkQueueItem, opQueueItem)) {
+                    cancelOperationQueueItem(opQueueItem, deferDelete);
+
+                    dequeueCancelledOperations();
+
+                    result = operation;
+                }
+
+                return result;
+            }
+        } finally {
+            this.mSyncLock.writeLock().unlock();
+        }
+    }
+
+    private List<TableOperation> peekBookmarked(BookmarkQueueItem bookmarkQueueItem, int maxCount, boolean sameTable) throws MobileServiceLocalStoreException {
+        this.mSyncLock.readLock().lock();
+
+        try {
+            if (bookmarkQueueItem.mCancelled) {
+                throw new IllegalStateException("The bookmark has been cancelled.");
+            } else if (!isCurrentBookmark(bookmarkQueueItem)) {
+                throw new IllegalStateException("There are other pending bookmarks to be processed.");
+            } else {
+                List<TableOperation> result = new ArrayList<TableOperation>();
+                String tableName = null;
+
+                for (OperationQueueItem opQueueItem : this.mQueue) {
+                    if (result.size() >= maxCount || !verifyBookmarkedOperation(bookmarkQueueItem, opQueueItem)) {
+                        break;
+                    }
+
+                    TableOperation operation = loadItem(opQueueItem);
+
+                    if (tableName == null) {
+                        tableName = operation.getTableName();
+                    } else if (sameTable && !tableName.equals(operation.getTableName())) {
+                        break;
+                    }
+
+                    result.add(operation);
                 }
 
                 return result;
@@ -519,23 +1113,24 @@ public class OperationQueue {
     }
 
     private boolean verifyBookmarkedOperation(BookmarkQueueItem bookmarkQueueItem, OperationQueueItem opQueueItem) {
-        return bookmarkQueueItem != null
-                && opQueueItem != null
-                && (opQueueItem.getQueueLoadedAt().before(bookmarkQueueItem.mQueueLoadedAt) || (opQueueItem.getQueueLoadedAt().equals(
-                bookmarkQueueItem.mQueueLoadedAt) && opQueueItem.getSequence() < bookmarkQueueItem.mSequence));
+        return bookmarkQueueItem != null && opQueueItem != null && opQueueItem.getPosition() < bookmarkQueueItem.mPosition;
     }
 
     private static class OperationQueueItem {
         private TableOperation mOperation;
         private Date mQueueLoadedAt;
         private long mSequence;
+        private long mPosition;
         private boolean mCancelled;
+        private boolean mItemLoaded;
 
-        private OperationQueueItem(TableOperation operation, Date queueLoadedAt, long sequence) {
+        private OperationQueueItem(TableOperation operation, Date queueLoadedAt, long sequence, long position) {
             this.mOperation = operation;
             this.mQueueLoadedAt = queueLoadedAt;
             this.mSequence = sequence;
+            this.mPosition = position;
             this.mCancelled = false;
+            this.mItemLoaded = true;
         }
 
         public String getId() {
@@ -548,6 +1143,7 @@ public class OperationQueue {
 
         private void setOperation(TableOperation operation) {
             this.mOperation = operation;
+            this.mItemLoaded = true;
         }
 
         private Date getQueueLoadedAt() {
@@ -558,6 +1154,10 @@ public class OperationQueue {
             return this.mSequence;
         }
 
+        private long getPosition() {
+            return this.mPosition;
+        }
+
         private boolean isCancelled() {
             return this.mCancelled;
         }
@@ -565,20 +1165,216 @@ public class OperationQueue {
         private void cancel() {
             this.mCancelled = true;
         }
+
+        private boolean isItemLoaded() {
+            return this.mItemLoaded;
+        }
+
+        private void setItemLoaded() {
+            this.mItemLoaded = true;
+        }
+    }
+
+    private static class PendingEnqueue {
+        private TableOperation mOperation;
+        private TableOperationVisitor<Void> mLocalProcessor;
+        private Throwable mError;
+        private CountDownLatch mDone;
+
+        private PendingEnqueue(TableOperation operation, TableOperationVisitor<Void> localProcessor) {
+            this.mOperation = operation;
+            this.mLocalProcessor = localProcessor;
+            this.mDone = new CountDownLatch(1);
+        }
+
+        private boolean isDone() {
+            return this.mDone.getCount() == 0;
+        }
+
+        private void setDone(Throwable error) {
+            this.mError = error;
+            this.mDone.countDown();
+        }
+
+        /**
+         * Waits without giving up on interruption, since the caller holds the
+         * item locks until its change is committed
+         */
+        private void awaitDone() {
+            boolean interrupted = false;
+
+            while (true) {
+                try {
+                    this.mDone.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class GroupCommitThread extends Thread {
+        private OperationQueue mOpQueue;
+
+        private GroupCommitThread(OperationQueue opQueue) {
+            this.mOpQueue = opQueue;
+            this.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            this.mOpQueue.consumePendingEnqueues();
+        }
     }
 
     private static class BookmarkQueueItem {
-        private Date mQueueLoadedAt;
-        private long mSequence;
+        private long mPosition;
         private boolean mCancelled;
 
-        private BookmarkQueueItem(Date queueLoadedAt, long sequence) {
-            this.mQueueLoadedAt = queueLoadedAt;
-            this.mSequence = sequence;
+        private BookmarkQueueItem(long position) {
+            this.mPosition = position;
             this.mCancelled = false;
         }
     }
 
+    /**
+     * Array backed queue of operations. Operations cancelled before they
+     * reach the head are kept as tombstones, skipped on iteration, and
+     * dropped when they outnumber the live operations.
+     */
+    private static class OperationRing implements Iterable<OperationQueueItem> {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private OperationQueueItem[] mItems;
+        private int mHead;
+        private int mSize;
+        private int mCancelledCount;
+
+        private OperationRing() {
+            this.mItems = new OperationQueueItem[INITIAL_CAPACITY];
+        }
+
+        private void add(OperationQueueItem opQueueItem) {
+            if (this.mSize == this.mItems.length) {
+                resize(this.mItems.length * 2);
+            }
+
+            this.mItems[(this.mHead + this.mSize) % this.mItems.length] = opQueueItem;
+            this.mSize++;
+        }
+
+        private OperationQueueItem peek() {
+            return this.mSize > 0 ? this.mItems[this.mHead] : null;
+        }
+
+        private OperationQueueItem element() {
+            if (this.mSize == 0) {
+                throw new NoSuchElementException();
+            }
+
+            return this.mItems[this.mHead];
+        }
+
+        private OperationQueueItem poll() {
+            if (this.mSize == 0) {
+                return null;
+            }
+
+            OperationQueueItem opQueueItem = this.mItems[this.mHead];
+
+            this.mItems[this.mHead] = null;
+            this.mHead = (this.mHead + 1) % this.mItems.length;
+            this.mSize--;
+
+            if (opQueueItem.isCancelled()) {
+                this.mCancelledCount--;
+            }
+
+            return opQueueItem;
+        }
+
+        private void clear() {
+            this.mItems = new OperationQueueItem[INITIAL_CAPACITY];
+            this.mHead = 0;
+            this.mSize = 0;
+            this.mCancelledCount = 0;
+        }
+
+        /**
+         * Records that a queued operation was cancelled
+         */
+        private void cancelled() {
+            this.mCancelledCount++;
+
+            if (this.mCancelledCount >= COMPACT_MIN_CANCELLED && this.mCancelledCount * 2 > this.mSize) {
+                resize(Math.max(INITIAL_CAPACITY, (this.mSize - this.mCancelledCount) * 2));
+            }
+        }
+
+        /**
+         * Copies the operations that are not cancelled to a new array
+         */
+        private void resize(int capacity) {
+            OperationQueueItem[] items = new OperationQueueItem[capacity];
+            int size = 0;
+
+            for (int i = 0; i < this.mSize; i++) {
+                OperationQueueItem opQueueItem = this.mItems[(this.mHead + i) % this.mItems.length];
+
+                if (!opQueueItem.isCancelled()) {
+                    items[size++] = opQueueItem;
+                }
+            }
+
+            this.mItems = items;
+            this.mHead = 0;
+            this.mSize = size;
+            this.mCancelledCount = 0;
+        }
+
+        @Override
+        public Iterator<OperationQueueItem> iterator() {
+            return new Iterator<OperationQueueItem>() {
+                private int mIndex = skipCancelled(0);
+
+                @Override
+                public boolean hasNext() {
+                    return this.mIndex < mSize;
+                }
+
+                @Override
+                public OperationQueueItem next() {
+                    if (this.mIndex >= mSize) {
+                        throw new NoSuchElementException();
+                    }
+
+                    OperationQueueItem opQueueItem = mItems[(mHead + this.mIndex) % mItems.length];
+                    this.mIndex = skipCancelled(this.mIndex + 1);
+
+                    return opQueueItem;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        private int skipCancelled(int index) {
+            while (index < this.mSize && this.mItems[(this.mHead + index) % this.mItems.length].isCancelled()) {
+                index++;
+            }
+
+            return index;
+        }
+    }
+
     /**
      * Class that represents a push sync bookmark, and table operations within
      * it
@@ -599,18 +1395,77 @@ public class OperationQueue {
          * @throws MobileServiceLocalStoreException
          */
         public TableOperation dequeue() throws MobileServiceLocalStoreException {
-            return this.mOpQueue.dequeueBookmarked(this.mBookmarkQueueItem);
+            return this.mOpQueue.dequeueBookmarked(this.mBookmarkQueueItem, false);
+        }
+
+        /**
+         * Dequeue a bookmarked table operation that may not be the next one
+         *
+         * @param operation the table operation
+         * @return the table operation, or null if it is no longer queued
+         * @throws MobileServiceLocalStoreException
+         */
+        public TableOperation dequeue(TableOperation operation) throws MobileServiceLocalStoreException {
+            return this.mOpQueue.dequeueBookmarked(this.mBookmarkQueueItem, operation, false);
+        }
+
+        /**
+         * Dequeue the next bookmarked table operation, leaving it in the store
+         * until the next commitDeferred call
+         *
+         * @return the table operation
+         * @throws MobileServiceLocalStoreException
+         */
+        public TableOperation dequeueDeferred() throws MobileServiceLocalStoreException {
+            return this.mOpQueue.dequeueBookmarked(this.mBookmarkQueueItem, true);
+        }
+
+        /**
+         * Dequeue a bookmarked table operation that may not be the next one,
+         * leaving it in the store until the next commitDeferred call
+         *
+         * @param operation the table operation
+         * @return the table operation, or null if it is no longer queued
+         * @throws MobileServiceLocalStoreException
+         */
+        public TableOperation dequeueDeferred(TableOperation operation) throws MobileServiceLocalStoreException {
+            return this.mOpQueue.dequeueBookmarked(this.mBookmarkQueueItem, operation, true);
         }
 
         /**
          * Peek the next bookmarked table operation
          *
          * @return the table operation
+         * @throws MobileServiceLocalStoreException
          */
-        public TableOperation peek() {
+        public TableOperation peek() throws MobileServiceLocalStoreException {
             return this.mOpQueue.peekBookmarked(this.mBookmarkQueueItem);
         }
 
+        /**
+         * Peek the next bookmarked table operations that target the same
+         * table, in queue order
+         *
+         * @param maxCount the maximum number of operations
+         * @return the table operations, empty if there are none
+         * @throws MobileServiceLocalStoreException
+         */
+        public List<TableOperation> peek(int maxCount) throws MobileServiceLocalStoreException {
+            return this.mOpQueue.peekBookmarked(this.mBookmarkQueueItem, maxCount, true);
+        }
+
+        /**
+         * Peek the next bookmarked table operations, on any table, in queue
+         * order
+         *
+         * @param maxCount the maximum number of operations
+         * @return the table operations, empty if there are none
+         * @throws MobileServiceLocalStoreException
+         */
+        public List<TableOperation> peekAll(int maxCount) throws MobileServiceLocalStoreException {
+            return this.mOpQueue.peekBookmarked(this.mBookmarkQueueItem, maxCount, false);
+        }
+
         /**
          * @return true if the bookmark is the first and current in the queue
          */
@@ -0,0 +1,82 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+
+/**
+ * OperationQueueMetrics.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.queue;
+
+/**
+ * Metrics of the queue of table operations
+ */
+public class OperationQueueMetrics {
+    private long mLoadTimeMillis;
+    private int mOperationCount;
+    private int mResidentItemCount;
+    private int mLazilyLoadedItemCount;
+
+    /**
+     * Constructor for OperationQueueMetrics
+     *
+     * @param loadTimeMillis        the time taken to load the queue
+     * @param operationCount        the number of queued operations
+     * @param residentItemCount     the number of queued operations with an item in memory
+     * @param lazilyLoadedItemCount the number of items read after the queue was loaded
+     */
+    public OperationQueueMetrics(long loadTimeMillis, int operationCount, int residentItemCount, int lazilyLoadedItemCount) {
+        this.mLoadTimeMillis = loadTimeMillis;
+        this.mOperationCount = operationCount;
+        this.mResidentItemCount = residentItemCount;
+        this.mLazilyLoadedItemCount = lazilyLoadedItemCount;
+    }
+
+    /**
+     * @return the time taken to load the queue from the local store, in
+     * milliseconds
+     */
+    public long getLoadTimeMillis() {
+        return this.mLoadTimeMillis;
+    }
+
+    /**
+     * @return the number of queued operations
+     */
+    public int getOperationCount() {
+        return this.mOperationCount;
+    }
+
+    /**
+     * @return the number of queued operations whose item is held in memory.
+     * Only delete operations keep an item, and it is read when the operation
+     * is first peeked.
+     */
+    public int getResidentItemCount() {
+        return this.mResidentItemCount;
+    }
+
+    /**
+     * @return the number of items read from the local store after the queue
+     * was loaded
+     */
+    public int getLazilyLoadedItemCount() {
+        return this.mLazilyLoadedItemCount;
+    }
+}
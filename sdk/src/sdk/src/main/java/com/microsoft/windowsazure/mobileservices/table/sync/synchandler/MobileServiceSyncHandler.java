@@ -34,7 +34,11 @@ import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServicePu
 public interface MobileServiceSyncHandler {
 
     /**
-     * Executes a table operation against a remote store
+     * Executes a table operation against a remote store. When the push
+     * concurrency of the sync context is greater than 1, this method is
+     * called from several threads at the same time, for operations on
+     * different items, and must be thread-safe. When push batching is
+     * enabled, it is only called for the operations that failed in a batch.
      *
      * @param processor the remote table processor
      * @param operation the table operation
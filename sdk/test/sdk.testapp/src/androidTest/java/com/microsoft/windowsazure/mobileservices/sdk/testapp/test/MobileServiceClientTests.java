@@ -31,6 +31,7 @@ import com.microsoft.windowsazure.mobileservices.authentication.MobileServiceAut
 import com.microsoft.windowsazure.mobileservices.authentication.MobileServiceUser;
 import com.microsoft.windowsazure.mobileservices.http.HttpConstants;
 import com.microsoft.windowsazure.mobileservices.http.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.http.OkHttpClientFactoryImpl;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilter;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
@@ -44,6 +45,7 @@ import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.PersonTe
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceJsonTable;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceTable;
 import okhttp3.Headers;
+import okhttp3.OkHttpClient;
 import okhttp3.Protocol;
 import okhttp3.internal.http.StatusLine;
 
@@ -51,6 +53,7 @@ import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class MobileServiceClientTests extends InstrumentationTestCase {
     String appUrl = "";
@@ -734,6 +737,47 @@ public class MobileServiceClientTests extends InstrumentationTestCase {
         }
     }
 
+    public void testDefaultOkHttpClientFactoryShouldReuseClient() throws Throwable {
+
+        // Create client
+        MobileServiceClient client = null;
+        try {
+            client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+        } catch (MalformedURLException e) {
+            e.printStackTrace();
+        }
+
+        OkHttpClient firstOkClient = client.getOkHttpClientFactory().createOkHttpClient();
+        OkHttpClient secondOkClient = client.getOkHttpClientFactory().createOkHttpClient();
+
+        assertSame(firstOkClient, secondOkClient);
+
+        // A filtered client should share the same connection pool
+        MobileServiceClient filteredClient = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                return nextServiceFilterCallback.onNext(request);
+            }
+        });
+
+        assertSame(firstOkClient, filteredClient.getOkHttpClientFactory().createOkHttpClient());
+    }
+
+    public void testOkHttpClientFactoryShouldApplyConnectionSettings() throws Throwable {
+
+        OkHttpClientFactoryImpl factory = new OkHttpClientFactoryImpl(2, 30, TimeUnit.SECONDS, false);
+
+        OkHttpClient okClient = factory.createOkHttpClient();
+
+        assertEquals(1, okClient.protocols().size());
+        assertEquals(Protocol.HTTP_1_1, okClient.protocols().get(0));
+
+        factory.evictIdleConnections();
+
+        assertEquals(0, okClient.connectionPool().idleConnectionCount());
+    }
+
     interface MyInterface {
 
     }
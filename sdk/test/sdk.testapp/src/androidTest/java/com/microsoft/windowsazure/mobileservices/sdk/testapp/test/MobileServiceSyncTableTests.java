@@ -41,6 +41,7 @@ import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.mocks.Mob
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.helpers.EncodingUtilities;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.CustomFunctionTwoParameters;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.IdPropertyTestClasses.StringIdType;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceConflictExceptionJson;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceExceptionBase;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
@@ -48,13 +49,28 @@ import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
 import com.microsoft.windowsazure.mobileservices.table.serialization.DateSerializer;
 import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceJsonSyncTable;
 import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceSyncTable;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.SQLiteLocalStore;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.DeleteOperation;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.InsertOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.MobileServiceTableOperationState;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.RemoteTableOperationProcessor;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationError;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationKind;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.MobileServicePullProgressListener;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.MobileServicePullRequest;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.PullPartitions;
+import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServiceJsonPushBatchEncoder;
 import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServicePushFailedException;
 import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServicePushStatus;
 import com.microsoft.windowsazure.mobileservices.table.sync.queue.OperationErrorList;
+import com.microsoft.windowsazure.mobileservices.table.sync.queue.OperationQueue;
+import com.microsoft.windowsazure.mobileservices.table.sync.queue.OperationQueueMetrics;
+import com.microsoft.windowsazure.mobileservices.table.sync.synchandler.MobileServiceSyncHandlerException;
 import com.microsoft.windowsazure.mobileservices.table.sync.synchandler.SimpleSyncHandler;
+import okhttp3.Headers;
 import okhttp3.Protocol;
 import okhttp3.internal.http.StatusLine;
 
@@ -62,13 +78,22 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MobileServiceSyncTableTests extends InstrumentationTestCase {
     String appUrl = "";
@@ -218,6 +243,87 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
         assertEquals(serviceFilterContainer.Requests.size(), 3);
     }
 
+    public void testPullSkippingPendingItemsDoesNotPushOrOverwriteThem() throws Throwable {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
+                "[{\"id\":\"abc\",\"String\":\"Remote\"},{\"id\":\"def\",\"String\":\"World\"}]"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+        client.getSyncContext().setPullSkipsPendingItems(true);
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        JsonObject jsonObject = new JsonObject();
+        jsonObject.addProperty("id", "abc");
+        jsonObject.addProperty("String", "Local");
+
+        table.insert(jsonObject).get(); // pending insert
+
+        table.pull(null).get();
+
+        // no push, only the pull request
+        assertEquals(serviceFilterContainer.Requests.size(), 1);
+        assertEquals(serviceFilterContainer.Requests.get(0).Method, HttpConstants.GetMethod);
+
+        Map<String, JsonObject> items = store.Tables.get(table.getName().toLowerCase(Locale.getDefault()));
+
+        assertEquals(items.size(), 2);
+        assertEquals(items.get("abc").get("String").getAsString(), "Local");
+        assertEquals(client.getSyncContext().getPendingOperations(), 1);
+    }
+
+    public void testPullKeepsItemsChangedLocallyWhileThePageIsRead() throws Throwable {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        final ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        final MobileServiceJsonSyncTable[] tableHolder = new MobileServiceJsonSyncTable[1];
+
+        Function<ServiceFilterRequest, Void> onHandleRequest = new Function<ServiceFilterRequest, Void>() {
+            public Void apply(ServiceFilterRequest request) {
+                if (serviceFilterContainer.Requests.size() > 1) {
+                    return null;
+                }
+
+                JsonObject jsonObject = new JsonObject();
+                jsonObject.addProperty("id", "abc");
+                jsonObject.addProperty("String", "Local");
+
+                // the table is not locked while the page is requested
+                try {
+                    tableHolder[0].insert(jsonObject).get();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+
+                return null;
+            }
+        };
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, 200, onHandleRequest, false,
+                "[{\"id\":\"abc\",\"String\":\"Remote\"},{\"id\":\"def\",\"String\":\"World\"}]"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+        tableHolder[0] = table;
+
+        table.pull(QueryOperations.tableName(table.getName()).top(2)).get();
+
+        Map<String, JsonObject> items = store.Tables.get(table.getName().toLowerCase(Locale.getDefault()));
+
+        assertEquals(items.size(), 2);
+        assertEquals(items.get("abc").get("String").getAsString(), "Local");
+        assertEquals(client.getSyncContext().getPendingOperations(), 1);
+    }
+
     public void testPullDoesNotTriggerPushWhenThereIsNoOperationInTable() throws InterruptedException, ExecutionException, MalformedURLException {
         MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
         ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
@@ -493,6 +599,273 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
                                 "http://myapp.com/tables/stringidtype?$filter=String%20eq%20(%27world%27)&$top=50&$skip=0&$orderby=Id%20desc&__includeDeleted=true"));
     }
 
+    public void testPullSeeksPastLastIdForNextPage() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
+                "[{\"id\":\"abc\",\"String\":\"Hey\"},{\"id\":\"def\",\"String\":\"World\"}]"
+        ));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        Query query = QueryOperations.tableName(table.getName()).top(2).field("String").eq("world");
+
+        table.pull(query).get();
+
+        assertEquals(serviceFilterContainer.Requests.size(), 2);
+
+        assertEquals(
+                serviceFilterContainer.Requests.get(0).Url,
+                EncodingUtilities
+                        .percentEncodeSpaces(
+                                "http://myapp.com/tables/stringidtype?$filter=String%20eq%20(%27world%27)&$top=2&$skip=0&$orderby=id%20asc&__includeDeleted=true"));
+
+        assertEquals(
+                serviceFilterContainer.Requests.get(1).Url,
+                EncodingUtilities
+                        .percentEncodeSpaces(
+                                "http://myapp.com/tables/stringidtype?$filter=(String%20eq%20(%27world%27))%20and%20(id%20gt%20(%27def%27))&$top=2&$skip=0&$orderby=id%20asc&__includeDeleted=true"));
+    }
+
+    public void testPullWithPrefetchDepthWritesAllPages() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
+                "[{\"id\":\"abc\",\"String\":\"Hey\"},{\"id\":\"def\",\"String\":\"World\"}]",
+                "[{\"id\":\"ghi\",\"String\":\"Again\"}]"
+        ));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+        client.getSyncContext().setPullPrefetchDepth(2);
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        Query query = QueryOperations.tableName(table.getName()).top(2);
+
+        table.pull(query).get();
+
+        assertEquals(serviceFilterContainer.Requests.size(), 2);
+
+        assertEquals(
+                serviceFilterContainer.Requests.get(1).Url,
+                EncodingUtilities
+                        .percentEncodeSpaces(
+                                "http://myapp.com/tables/stringidtype?$filter=id%20gt%20(%27def%27)&$top=2&$skip=0&$orderby=id%20asc&__includeDeleted=true"));
+
+        assertEquals(store.Tables.get(table.getName().toLowerCase(Locale.getDefault())).size(), 3);
+        assertEquals(store.TransactionDepth, 0);
+    }
+
+    public void testPullWithPrefetchDepthRunsOnADirectNetworkExecutor() throws Throwable {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
+                "[{\"id\":\"abc\",\"String\":\"Hey\"},{\"id\":\"def\",\"String\":\"World\"}]",
+                "[{\"id\":\"ghi\",\"String\":\"Again\"}]"
+        ));
+
+        // the pull and the page requests run on the calling thread
+        client.setSyncNetworkExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+        client.getSyncContext().setPullPrefetchDepth(2);
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        ListenableFuture<Void> pullFuture = table.pull(QueryOperations.tableName(table.getName()).top(2));
+
+        assertTrue(pullFuture.isDone());
+
+        pullFuture.get();
+
+        assertEquals(serviceFilterContainer.Requests.size(), 2);
+        assertEquals(store.Tables.get(table.getName().toLowerCase(Locale.getDefault())).size(), 3);
+    }
+
+    public void testPullFollowsNextLink() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        final ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        final String nextLink = "http://myapp.com/tables/stringidtype?$top=2&$continuation=abc";
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+                response.setStatus((new StatusLine(Protocol.HTTP_2, 200, "")));
+
+                if (serviceFilterContainer.Requests.size() == 0) {
+                    response.setContent("[{\"id\":\"abc\",\"String\":\"Hey\"},{\"id\":\"def\",\"String\":\"World\"}]");
+                    response.setHeaders(new Headers.Builder().add("Link", nextLink + "; rel=next").build());
+                } else {
+                    // the last page has no continuation link
+                    response.setContent("[{\"id\":\"ghi\",\"String\":\"Again\"}]");
+                }
+
+                ServiceFilterRequestData serviceFilterRequestData = new ServiceFilterRequestData();
+                serviceFilterRequestData.Url = request.getUrl();
+                serviceFilterRequestData.Method = request.getMethod();
+
+                serviceFilterContainer.Requests.add(serviceFilterRequestData);
+
+                return nextServiceFilterCallback.onNext(new ServiceFilterRequestMock(response));
+            }
+        });
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        Query query = QueryOperations.tableName(table.getName()).top(2);
+
+        table.pull(query).get();
+
+        assertEquals(serviceFilterContainer.Requests.size(), 2);
+        assertEquals(serviceFilterContainer.Requests.get(1).Url, nextLink);
+
+        assertEquals(store.Tables.get(table.getName().toLowerCase(Locale.getDefault())).size(), 3);
+    }
+
+    public void testPullAllPullsEveryTableAndReportsProgress() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false, "[]"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        final List<String> pulledTables = Collections.synchronizedList(new ArrayList<String>());
+
+        List<MobileServicePullRequest> requests = new ArrayList<MobileServicePullRequest>();
+        requests.add(new MobileServicePullRequest("tableA", QueryOperations.tableName("tableA")));
+        requests.add(new MobileServicePullRequest("tableB", QueryOperations.tableName("tableB")));
+
+        // one table at a time, so that the filter sees the requests in order
+        client.getSyncContext().pullAll(requests, 1, new MobileServicePullProgressListener() {
+            @Override
+            public void onPullCompleted(MobileServicePullRequest request) {
+                pulledTables.add(request.getTableName());
+            }
+
+            @Override
+            public void onPullFailed(MobileServicePullRequest request, Throwable error) {
+            }
+        }).get();
+
+        assertEquals(serviceFilterContainer.Requests.size(), 2);
+        assertTrue(serviceFilterContainer.Requests.get(0).Url.startsWith("http://myapp.com/tables/tableA?"));
+        assertTrue(serviceFilterContainer.Requests.get(1).Url.startsWith("http://myapp.com/tables/tableB?"));
+
+        assertEquals(pulledTables.size(), 2);
+    }
+
+    public void testPullAllRunsOnTheNetworkExecutorOfTheClient() throws Throwable {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false, "[]"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        final AtomicInteger executedCount = new AtomicInteger();
+
+        // runs each task on the calling thread
+        client.setSyncNetworkExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executedCount.incrementAndGet();
+                command.run();
+            }
+        });
+
+        List<MobileServicePullRequest> requests = new ArrayList<MobileServicePullRequest>();
+        requests.add(new MobileServicePullRequest("tableA", QueryOperations.tableName("tableA")));
+        requests.add(new MobileServicePullRequest("tableB", QueryOperations.tableName("tableB")));
+        requests.add(new MobileServicePullRequest("tableC", QueryOperations.tableName("tableC")));
+
+        ListenableFuture<Void> pullAllFuture = client.getSyncContext().pullAll(requests, 2, null);
+
+        // two workers share the three tables
+        assertTrue(pullAllFuture.isDone());
+        assertEquals(2, executedCount.get());
+        assertEquals(serviceFilterContainer.Requests.size(), 3);
+
+        pullAllFuture.get();
+    }
+
+    public void testPartitionedPullPullsEachIdRange() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false, "[]"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        // one partition at a time, so that the filter sees the requests in order
+        table.pull(null, null, PullPartitions.byId("m"), 1).get();
+
+        assertEquals(serviceFilterContainer.Requests.size(), 2);
+        assertTrue(serviceFilterContainer.Requests.get(0).Url.contains("$filter=id%20lt%20(%27m%27)&"));
+        assertTrue(serviceFilterContainer.Requests.get(1).Url.contains("$filter=id%20ge%20(%27m%27)&"));
+    }
+
+    public void testPartitionedPrefetchingPullCompletesOnASingleThreadNetworkExecutor() throws Throwable {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false, "[]"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+        client.getSyncContext().setPullPrefetchDepth(1);
+
+        // the pull holds the only thread, so the other partition worker waits in line
+        client.setSyncNetworkExecutor(Executors.newSingleThreadExecutor());
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        table.pull(null, null, PullPartitions.byId("g", "m", "t"), 2).get(10, TimeUnit.SECONDS);
+
+        assertEquals(serviceFilterContainer.Requests.size(), 4);
+    }
+
     public void testIncrementalPullSucceeds() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
 
         MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
@@ -741,6 +1114,691 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
         client.getSyncContext().push().get();
     }
 
+    public void testBatchedPushSendsTheOperationsOfATableInOneRequest() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer,
+                "{\"results\":[{\"status\":201,\"item\":{\"id\":\"abc\",\"String\":\"Hey\"}},"
+                        + "{\"status\":409,\"error\":\"Conflict\",\"item\":{\"id\":\"def\",\"String\":\"World\"}}]}"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+        client.getSyncContext().setPushBatching(new MobileServiceJsonPushBatchEncoder("batch"), 10);
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        JsonObject item1 = new JsonObject();
+        item1.addProperty("id", "abc");
+        item1.addProperty("String", "what?");
+
+        JsonObject item2 = new JsonObject();
+        item2.addProperty("id", "def");
+        item2.addProperty("String", "how?");
+
+        table.insert(item1).get();
+        table.insert(item2).get();
+
+        try {
+            client.getSyncContext().push().get();
+            fail("MobileServicePushFailedException expected");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof MobileServicePushFailedException);
+
+            MobileServicePushFailedException pushException = (MobileServicePushFailedException) ex.getCause();
+
+            List<TableOperationError> errors = pushException.getPushCompletionResult().getOperationErrors();
+
+            assertEquals(1, errors.size());
+            assertEquals("def", errors.get(0).getItemId());
+            assertEquals(Integer.valueOf(409), errors.get(0).getStatusCode());
+        }
+
+        assertEquals(1, serviceFilterContainer.Requests.size());
+        assertEquals(appUrl + "api/batch", serviceFilterContainer.Requests.get(0).Url);
+        assertEquals(HttpConstants.PostMethod, serviceFilterContainer.Requests.get(0).Method);
+
+        JsonObject batch = new JsonParser().parse(serviceFilterContainer.Requests.get(0).Content).getAsJsonObject();
+
+        assertEquals("sometable", batch.get("table").getAsString());
+        assertEquals(2, batch.getAsJsonArray("operations").size());
+        assertEquals("abc", batch.getAsJsonArray("operations").get(0).getAsJsonObject().get("itemId").getAsString());
+        assertEquals("insert", batch.getAsJsonArray("operations").get(1).getAsJsonObject().get("kind").getAsString());
+
+        assertEquals("Hey", store.Tables.get("sometable").get("abc").get("String").getAsString());
+        assertEquals(1, client.getSyncContext().getPendingOperations());
+    }
+
+    public void testPushBatchEncoderWritesKindsIndependentlyOfTheDefaultLocale() {
+        Locale defaultLocale = Locale.getDefault();
+
+        try {
+            // the Turkish lowercase of INSERT is ınsert, with a dotless i
+            Locale.setDefault(new Locale("tr", "TR"));
+
+            List<TableOperation> operations = new ArrayList<TableOperation>();
+            operations.add(new InsertOperation("someTable", "abc"));
+
+            List<JsonObject> items = new ArrayList<JsonObject>();
+            items.add(null);
+
+            JsonObject batch = new MobileServiceJsonPushBatchEncoder("batch").encode("someTable", operations, items).getAsJsonObject();
+
+            assertEquals("insert", batch.getAsJsonArray("operations").get(0).getAsJsonObject().get("kind").getAsString());
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    public void testBatchedPushPassesFailedOperationsToTheSyncHandler() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer,
+                "{\"results\":[{\"status\":201,\"item\":{\"id\":\"abc\",\"String\":\"Hey\"}},"
+                        + "{\"status\":409,\"error\":\"Conflict\",\"item\":{\"id\":\"def\",\"String\":\"World\"}}]}"));
+
+        final List<String> handledItemIds = new ArrayList<String>();
+
+        // keeps the server version of conflicting items
+        SimpleSyncHandler handler = new SimpleSyncHandler() {
+            @Override
+            public JsonObject executeTableOperation(RemoteTableOperationProcessor processor, TableOperation operation) throws MobileServiceSyncHandlerException {
+                handledItemIds.add(operation.getItemId());
+
+                try {
+                    return operation.accept(processor);
+                } catch (MobileServiceConflictExceptionJson ex) {
+                    return ex.getValue();
+                } catch (Throwable throwable) {
+                    throw new MobileServiceSyncHandlerException(throwable);
+                }
+            }
+        };
+
+        client.getSyncContext().initialize(store, handler).get();
+        client.getSyncContext().setPushBatching(new MobileServiceJsonPushBatchEncoder("batch"), 10);
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        JsonObject item1 = new JsonObject();
+        item1.addProperty("id", "abc");
+        item1.addProperty("String", "what?");
+
+        JsonObject item2 = new JsonObject();
+        item2.addProperty("id", "def");
+        item2.addProperty("String", "how?");
+
+        table.insert(item1).get();
+        table.insert(item2).get();
+
+        client.getSyncContext().push().get();
+
+        assertEquals(1, handledItemIds.size());
+        assertEquals("def", handledItemIds.get(0));
+
+        assertEquals(1, serviceFilterContainer.Requests.size());
+        assertEquals(appUrl + "api/batch", serviceFilterContainer.Requests.get(0).Url);
+
+        assertEquals("Hey", store.Tables.get("sometable").get("abc").get("String").getAsString());
+        assertEquals("World", store.Tables.get("sometable").get("def").get("String").getAsString());
+        assertEquals(0, client.getSyncContext().getPendingOperations());
+    }
+
+    public void testConcurrentPushPushesEveryOperation() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, "{\"id\":\"abc\",\"String\":\"Hey\"}"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+        client.getSyncContext().setPushConcurrency(3);
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        for (int i = 0; i < 5; i++) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", "item" + i);
+            item.addProperty("String", "what?");
+
+            table.insert(item).get();
+        }
+
+        assertEquals(5, client.getSyncContext().getPendingOperations());
+
+        client.getSyncContext().push().get();
+
+        assertEquals(5, serviceFilterContainer.Requests.size());
+        assertEquals(0, client.getSyncContext().getPendingOperations());
+    }
+
+    public void testConcurrentPushCompletesOnASingleThreadNetworkExecutor() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, "{\"id\":\"abc\",\"String\":\"Hey\"}"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+        client.getSyncContext().setPushConcurrency(3);
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        for (int i = 0; i < 5; i++) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", "item" + i);
+            item.addProperty("String", "what?");
+
+            table.insert(item).get();
+        }
+
+        // the push call holds the only thread while its operations are pushed
+        client.setSyncNetworkExecutor(Executors.newSingleThreadExecutor());
+
+        client.getSyncContext().push().get(10, TimeUnit.SECONDS);
+
+        assertEquals(5, serviceFilterContainer.Requests.size());
+        assertEquals(0, client.getSyncContext().getPendingOperations());
+    }
+
+    public void testDeltaUpdatesPushOnlyTheChangedProperties() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+        MobileServiceSyncHandlerMock handler = new MobileServiceSyncHandlerMock();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, "{\"id\":\"abc\",\"String\":\"Hey\",\"Other\":\"Large\"}"));
+
+        client.getSyncContext().initialize(store, handler).get();
+        client.getSyncContext().setPushDeltaUpdates(true);
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        JsonObject item = new JsonObject();
+        item.addProperty("id", "abc");
+        item.addProperty("String", "what?");
+        item.addProperty("Other", "Large");
+        item.addProperty("version", "AAAA");
+
+        store.upsert("sometable", item, true);
+
+        JsonObject updatedItem = new JsonObject();
+        updatedItem.addProperty("id", "abc");
+        updatedItem.addProperty("String", "Hey");
+        updatedItem.addProperty("Other", "Large");
+        updatedItem.addProperty("version", "AAAA");
+
+        table.update(updatedItem).get();
+
+        // a second update of the same property is collapsed
+        updatedItem.addProperty("String", "Hello");
+
+        table.update(updatedItem).get();
+
+        client.getSyncContext().push().get();
+
+        assertEquals(1, serviceFilterContainer.Requests.size());
+        assertEquals(HttpConstants.PatchMethod, serviceFilterContainer.Requests.get(0).Method);
+
+        JsonObject content = new JsonParser().parse(serviceFilterContainer.Requests.get(0).Content).getAsJsonObject();
+
+        assertEquals("Hello", content.get("String").getAsString());
+        assertFalse(content.has("Other"));
+
+        assertEquals(serviceFilterContainer.Requests.get(0).Content.getBytes("UTF-8").length, handler.PushCompletionResult.getUploadedBytes());
+    }
+
+    public void testSyncCallsRunOnTheSyncExecutorOfTheClient() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        final AtomicInteger executedCount = new AtomicInteger();
+
+        // runs each call on the calling thread
+        Executor directExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executedCount.incrementAndGet();
+                command.run();
+            }
+        };
+
+        client.setSyncExecutor(directExecutor);
+        client.setSyncNetworkExecutor(directExecutor);
+
+        assertTrue(client.getSyncContext().initialize(store, new SimpleSyncHandler()).isDone());
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        JsonObject item = new JsonObject();
+        item.addProperty("id", "abc");
+        item.addProperty("String", "Hey");
+
+        ListenableFuture<JsonObject> insertFuture = table.insert(item);
+        ListenableFuture<JsonObject> lookUpFuture = table.lookUp("abc");
+
+        assertTrue(insertFuture.isDone());
+        assertTrue(lookUpFuture.isDone());
+        assertEquals(3, executedCount.get());
+
+        // clients created with a filter share the executor
+        MobileServiceClient filteredClient = client.withFilter(getTestFilter(new ServiceFilterContainer(), ""));
+
+        assertSame(client.getSyncExecutor(), filteredClient.getSyncExecutor());
+        assertSame(client.getSyncNetworkExecutor(), filteredClient.getSyncNetworkExecutor());
+    }
+
+    public void testLocalCallsFinishWhilePullsAreBlocked() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+
+        final CountDownLatch pullStarted = new CountDownLatch(1);
+        final CountDownLatch releasePulls = new CountDownLatch(1);
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(new ServiceFilter() {
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                pullStarted.countDown();
+
+                try {
+                    releasePulls.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+                response.setStatus(new StatusLine(Protocol.HTTP_2, 200, ""));
+                response.setContent("[]");
+
+                return nextServiceFilterCallback.onNext(new ServiceFilterRequestMock(response));
+            }
+        });
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        // more pulls than threads of the default executor of local calls
+        List<ListenableFuture<Void>> pulls = new ArrayList<ListenableFuture<Void>>();
+
+        for (int i = 0; i < 8; i++) {
+            pulls.add(table.pull(null));
+        }
+
+        try {
+            assertTrue(pullStarted.await(10, TimeUnit.SECONDS));
+
+            assertNull(table.lookUp("abc").get(10, TimeUnit.SECONDS));
+
+            for (ListenableFuture<Void> pull : pulls) {
+                assertFalse(pull.isDone());
+            }
+        } finally {
+            releasePulls.countDown();
+        }
+
+        for (ListenableFuture<Void> pull : pulls) {
+            pull.get();
+        }
+    }
+
+    public void testPushCommitsTheResultsOfSeveralOperationsInOneTransaction() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, "{\"id\":\"abc\",\"String\":\"Server\"}"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+        client.getSyncContext().setPushCommitSize(10);
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        for (String id : new String[]{"abc", "def", "ghi"}) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", id);
+            item.addProperty("String", "Local");
+
+            table.insert(item).get();
+        }
+
+        int transactionsBefore = store.TransactionCount;
+
+        client.getSyncContext().push().get();
+
+        assertEquals(3, serviceFilterContainer.Requests.size());
+        assertEquals(1, store.TransactionCount - transactionsBefore);
+        assertEquals(0, store.Tables.get("__operations").size());
+        assertEquals("Server", store.Tables.get("sometable").get("abc").get("String").getAsString());
+        assertEquals(0, client.getSyncContext().getPendingOperations());
+    }
+
+    public void testPushedOperationsNotCommittedAreSentAgainAfterTheQueueIsReloaded() throws Throwable {
+        final AtomicBoolean crashed = new AtomicBoolean();
+
+        // stands for a process that dies before the pushed results are committed
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock() {
+            @Override
+            public void beginTransaction() throws MobileServiceLocalStoreException {
+                if (crashed.get()) {
+                    throw new MobileServiceLocalStoreException("The process died.");
+                }
+
+                super.beginTransaction();
+            }
+        };
+
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, "{\"id\":\"abc\",\"String\":\"Server\"}"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+        client.getSyncContext().setPushCommitSize(10);
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        for (String id : new String[]{"abc", "def", "ghi"}) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", id);
+            item.addProperty("String", "Local");
+
+            table.insert(item).get();
+        }
+
+        crashed.set(true);
+
+        try {
+            client.getSyncContext().push().get();
+            fail("MobileServicePushFailedException expected");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof MobileServicePushFailedException);
+            assertEquals(MobileServicePushStatus.CancelledByLocalStoreError,
+                    ((MobileServicePushFailedException) ex.getCause()).getPushCompletionResult().getStatus());
+        }
+
+        assertEquals(3, serviceFilterContainer.Requests.size());
+        assertEquals(3, store.Tables.get("__operations").size());
+
+        crashed.set(false);
+
+        // the restarted app loads the queue, and pushes the three operations again
+        MobileServiceClient restartedClient = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        restartedClient = restartedClient.withFilter(getTestFilter(serviceFilterContainer, "{\"id\":\"abc\",\"String\":\"Server\"}"));
+
+        restartedClient.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        assertEquals(3, restartedClient.getSyncContext().getPendingOperations());
+
+        restartedClient.getSyncContext().push().get();
+
+        assertEquals(6, serviceFilterContainer.Requests.size());
+        assertEquals(0, store.Tables.get("__operations").size());
+    }
+
+    public void testGroupCommitWritesConcurrentInsertsInOneTransaction() throws Throwable {
+        final MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+        client.getSyncContext().setOperationQueueGroupCommitWindow(500);
+
+        final MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        int threadCount = 4;
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < threadCount; i++) {
+            final String id = "item" + i;
+
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+
+                        JsonObject item = new JsonObject();
+                        item.addProperty("id", id);
+
+                        table.insert(item).get();
+                    } catch (Throwable throwable) {
+                        errors.add(throwable);
+                    }
+                }
+            };
+
+            thread.start();
+            threads.add(thread);
+        }
+
+        int transactionsBefore = store.TransactionCount;
+
+        start.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, errors.size());
+        assertEquals(threadCount, client.getSyncContext().getPendingOperations());
+        assertEquals(threadCount, store.Tables.get("sometable").size());
+        assertTrue(store.TransactionCount - transactionsBefore < threadCount);
+        assertEquals(0, store.TransactionDepth);
+    }
+
+    public void testRefusedOperationDoesNotReloadTheQueue() throws Throwable {
+        final AtomicInteger queueReads = new AtomicInteger();
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock() {
+            @Override
+            public JsonElement read(Query query) throws MobileServiceLocalStoreException {
+                if ("__operations".equals(query.getTableName())) {
+                    queueReads.incrementAndGet();
+                }
+
+                return super.read(query);
+            }
+        };
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        JsonObject item = new JsonObject();
+        item.addProperty("id", "abc");
+
+        table.insert(item).get();
+
+        int readsBefore = queueReads.get();
+
+        try {
+            // refused by the collapse with the pending insert
+            table.insert(item).get();
+            fail("The second insert should have been refused.");
+        } catch (ExecutionException e) {
+            // expected
+        }
+
+        assertEquals(readsBefore, queueReads.get());
+        assertEquals(1, client.getSyncContext().getPendingOperations());
+        assertEquals(0, store.TransactionDepth);
+    }
+
+    public void testQueueLoadsTheItemOfDeleteOperationsWhenTheyArePushed() throws Throwable {
+        String dbName = "lazyQueueTest.db";
+
+        getInstrumentation().getTargetContext().deleteDatabase(dbName);
+
+        Map<String, ColumnDataType> columns = new HashMap<String, ColumnDataType>();
+        columns.put("id", ColumnDataType.String);
+        columns.put("string", ColumnDataType.String);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(getInstrumentation().getTargetContext(), dbName, null, 1);
+        store.defineTable("sometable", columns);
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        JsonObject item = new JsonObject();
+        item.addProperty("id", "abc");
+        item.addProperty("string", "Hey");
+
+        store.upsert("sometable", item, true);
+
+        client.getSyncTable("someTable").delete(item).get();
+
+        // a new context loads the queue saved by the first one
+        store = new SQLiteLocalStore(getInstrumentation().getTargetContext(), dbName, null, 1);
+        store.defineTable("sometable", columns);
+
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+        client = client.withFilter(getTestFilter(serviceFilterContainer, ""));
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        OperationQueueMetrics metrics = client.getSyncContext().getOperationQueueMetrics();
+
+        assertEquals(1, metrics.getOperationCount());
+        assertEquals(0, metrics.getResidentItemCount());
+        assertEquals(0, metrics.getLazilyLoadedItemCount());
+
+        client.getSyncContext().push().get();
+
+        assertEquals(1, serviceFilterContainer.Requests.size());
+        assertEquals(HttpConstants.DeleteMethod, serviceFilterContainer.Requests.get(0).Method);
+
+        metrics = client.getSyncContext().getOperationQueueMetrics();
+
+        assertEquals(0, metrics.getOperationCount());
+        assertEquals(1, metrics.getLazilyLoadedItemCount());
+
+        store.close();
+    }
+
+    public void testPushIsCancelledWhenTheItemOfADeleteOperationCannotBeLoaded() throws Throwable {
+        String dbName = "lazyQueueErrorTest.db";
+
+        getInstrumentation().getTargetContext().deleteDatabase(dbName);
+
+        Map<String, ColumnDataType> columns = new HashMap<String, ColumnDataType>();
+        columns.put("id", ColumnDataType.String);
+        columns.put("string", ColumnDataType.String);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(getInstrumentation().getTargetContext(), dbName, null, 1);
+        store.defineTable("sometable", columns);
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        JsonObject item = new JsonObject();
+        item.addProperty("id", "abc");
+        item.addProperty("string", "Hey");
+
+        store.upsert("sometable", item, true);
+
+        client.getSyncTable("someTable").delete(item).get();
+
+        // the queue of a new context is loaded without items, and reading
+        // the item of the delete operation fails
+        store = new SQLiteLocalStore(getInstrumentation().getTargetContext(), dbName, null, 1) {
+            @Override
+            public JsonObject lookup(String tableName, String itemId) throws MobileServiceLocalStoreException {
+                if ("__operations".equals(tableName)) {
+                    throw new MobileServiceLocalStoreException("lookup failed");
+                }
+
+                return super.lookup(tableName, itemId);
+            }
+        };
+
+        store.defineTable("sometable", columns);
+
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        client = new MobileServiceClient(appUrl, getInstrumentation().getTargetContext());
+        client = client.withFilter(getTestFilter(serviceFilterContainer, ""));
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        try {
+            client.getSyncContext().push().get();
+
+            fail("MobileServicePushFailedException expected");
+        } catch (Exception ex) {
+            assertTrue(ex.getCause() instanceof MobileServicePushFailedException);
+
+            MobileServicePushFailedException mspfe = (MobileServicePushFailedException) ex.getCause();
+
+            assertEquals(MobileServicePushStatus.CancelledByLocalStoreError, mspfe.getPushCompletionResult().getStatus());
+            assertEquals(0, serviceFilterContainer.Requests.size());
+            assertEquals(1, client.getSyncContext().getPendingOperations());
+        }
+
+        store.close();
+    }
+
+    public void testOperationQueueKeepsOrderWhenMostOperationsAreCancelled() throws Throwable {
+        int operationCount = 100000;
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+
+        OperationQueue.initializeStore(store);
+        OperationQueue opQueue = OperationQueue.load(store);
+
+        for (int i = 0; i < operationCount; i++) {
+            opQueue.enqueue(new InsertOperation("table" + (i % 4), "item" + i));
+        }
+
+        OperationQueue.Bookmark bookmark = opQueue.bookmark();
+
+        // an insert followed by a delete cancels both
+        for (int i = 1; i < operationCount; i += 2) {
+            opQueue.enqueue(new DeleteOperation("table" + (i % 4), "item" + i));
+        }
+
+        // not included in the bookmark
+        opQueue.enqueue(new InsertOperation("table0", "last"));
+
+        assertEquals(operationCount / 2 + 1, opQueue.countPending());
+        assertEquals(operationCount / 4 + 1, opQueue.countPending("table0"));
+        assertEquals(0, opQueue.countPending("table1"));
+        assertEquals(operationCount / 4, opQueue.getPendingItemIds("table2").size());
+
+        for (int i = 0; i < operationCount; i += 2) {
+            TableOperation operation = bookmark.dequeue();
+
+            assertNotNull(operation);
+            assertEquals("item" + i, operation.getItemId());
+        }
+
+        assertNull(bookmark.dequeue());
+
+        opQueue.unbookmark(bookmark);
+
+        assertEquals("last", opQueue.dequeue().getItemId());
+        assertEquals(0, opQueue.countPending());
+        assertEquals(0, store.Tables.get("__operations").size());
+    }
+
     public void testDeleteDoesNotUpsertResultOnStoreWhenOperationIsPushed() throws InterruptedException, ExecutionException, MalformedURLException {
         MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
         ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
@@ -133,6 +133,11 @@ public class SQLiteStoreQueryTests extends InstrumentationTestCase {
     // testQuery(query2, 0);
     // }
 
+    public void testQueryOnStringWithQuote() throws MobileServiceException, MobileServiceLocalStoreException {
+        Query query = QueryOperations.tableName(TestTable).field("col1").eq("it's").or().startsWith("col1", "'");
+        testQuery(query, 0);
+    }
+
     public void testQueryOnStringStartsWith() throws MobileServiceException, MobileServiceLocalStoreException {
         Query query1 = QueryOperations.tableName(TestTable).startsWith("col1", "qu");
 
@@ -364,6 +369,18 @@ public class SQLiteStoreQueryTests extends InstrumentationTestCase {
         }
     }
 
+    public void testQueryWithSkipAndNoTop() throws MobileServiceLocalStoreException {
+        Query query = QueryOperations.tableName(TestTable).skip(2);
+
+        JsonArray queryResults = runQuery(query);
+
+        assertEquals(queryResults.size(), getTestData().length - 2);
+
+        for (int i = 0; i < queryResults.size(); i++) {
+            assertEquals(queryResults.get(i).getAsJsonObject().get("id").getAsString(), getTestData()[i + 2].get("id").getAsString());
+        }
+    }
+
     public void testQueryWithTotalCount() throws MobileServiceLocalStoreException {
         Query query = QueryOperations.tableName(TestTable).top(5).includeInlineCount();
 
@@ -376,6 +393,30 @@ public class SQLiteStoreQueryTests extends InstrumentationTestCase {
         assertEquals(resultCount, 6);
     }
 
+    public void testQueryWithTotalCountAndSkip() throws MobileServiceException, MobileServiceLocalStoreException {
+        Query query = QueryOperations.tableName(TestTable).field("col5").eq(true).skip(1).includeInlineCount();
+
+        JsonObject queryResults = runQuery(query);
+
+        JsonArray results = queryResults.get("results").getAsJsonArray();
+        long resultCount = queryResults.get("count").getAsLong();
+
+        assertEquals(results.size(), 3);
+        assertEquals(resultCount, 4);
+    }
+
+    public void testQueryWithTotalCountAndSkipPastTheEnd() throws MobileServiceLocalStoreException {
+        Query query = QueryOperations.tableName(TestTable).skip(10).includeInlineCount();
+
+        JsonObject queryResults = runQuery(query);
+
+        JsonArray results = queryResults.get("results").getAsJsonArray();
+        long resultCount = queryResults.get("count").getAsLong();
+
+        assertEquals(results.size(), 0);
+        assertEquals(resultCount, 6);
+    }
+
     private JsonObject[] getTestData() {
 
         ArrayList<JsonObject> result = new ArrayList<JsonObject>();
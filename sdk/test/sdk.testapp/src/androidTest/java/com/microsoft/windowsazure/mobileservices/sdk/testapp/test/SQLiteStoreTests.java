@@ -19,23 +19,31 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
 import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
 import android.test.InstrumentationTestCase;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.helpers.SQLiteStoreTestsUtilities;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.CustomFunctionOneParameter;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.table.query.QuerySQLWriter;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.SQLiteLocalStore;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.StreamedRowsResult;
 
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 
@@ -75,6 +83,206 @@ public class SQLiteStoreTests extends InstrumentationTestCase {
         return getInstrumentation().getTargetContext();
     }
 
+    public void testInitializeCreatesAndDropsDefinedIndexes() throws MobileServiceLocalStoreException {
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        defineTestTable(store);
+        store.defineIndex(TestTable, Arrays.asList("createdAt"), false);
+        store.defineIndex(TestTable, Arrays.asList("createdAt", "id"), true);
+
+        store.initialize();
+        store.initialize();
+
+        assertEquals(2L, SQLiteStoreTestsUtilities.countIndexes(this.getContext(), TestDbName, TestTable));
+
+        store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        defineTestTable(store);
+        store.defineIndex(TestTable, Arrays.asList("createdAt"), false);
+
+        store.initialize();
+
+        assertEquals(1L, SQLiteStoreTestsUtilities.countIndexes(this.getContext(), TestDbName, TestTable));
+    }
+
+    public void testInitializeCreatesIndexesWhoseColumnNamesJoinTheSame() throws MobileServiceLocalStoreException {
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("a", ColumnDataType.String);
+        tableDefinition.put("a_b", ColumnDataType.String);
+        tableDefinition.put("b_c", ColumnDataType.String);
+        tableDefinition.put("c", ColumnDataType.String);
+
+        store.defineTable(TestTable, tableDefinition);
+
+        // both column lists join as "a_b_c"
+        store.defineIndex(TestTable, Arrays.asList("a_b", "c"), false);
+        store.defineIndex(TestTable, Arrays.asList("a", "b_c"), false);
+
+        store.initialize();
+
+        assertEquals(2L, SQLiteStoreTestsUtilities.countIndexes(this.getContext(), TestDbName, TestTable));
+    }
+
+    public void testDefineIndexThrowsWhenColumnIsNotDefined() throws MobileServiceLocalStoreException {
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        defineTestTable(store);
+
+        try {
+            store.defineIndex(TestTable, Arrays.asList("complete"), false);
+        } catch (MobileServiceLocalStoreException ex) {
+            return;
+        }
+
+        fail("MobileServiceLocalStoreException expected");
+    }
+
+    public void testFullTextIndexNarrowsTextFiltersAndFollowsWrites() throws MobileServiceLocalStoreException, MobileServiceException {
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("text", ColumnDataType.String);
+
+        store.defineTable(TestTable, tableDefinition);
+        store.defineFullTextIndex(TestTable, Arrays.asList("text"));
+        store.initialize();
+
+        String[] texts = new String[]{"Hello world", "hello there", "say hello world", "Worldwide"};
+
+        for (int i = 0; i < texts.length; i++) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", String.valueOf(i));
+            item.addProperty("text", texts[i]);
+
+            store.upsert(TestTable, item, false);
+        }
+
+        assertEquals(2, store.read(QueryOperations.tableName(TestTable).startsWith("text", "hello")).getAsJsonArray().size());
+        assertEquals(1, store.read(QueryOperations.tableName(TestTable).startsWith("text", "hello wor")).getAsJsonArray().size());
+        assertEquals(2, store.read(QueryOperations.tableName(TestTable).subStringOf("lo wor", "text")).getAsJsonArray().size());
+        assertEquals(3, store.read(QueryOperations.tableName(TestTable).subStringOf("orld", "text")).getAsJsonArray().size());
+
+        JsonObject updated = new JsonObject();
+        updated.addProperty("id", "0");
+        updated.addProperty("text", "Goodbye world");
+
+        store.upsert(TestTable, updated, false);
+        store.delete(TestTable, "2");
+
+        assertEquals(0, store.read(QueryOperations.tableName(TestTable).subStringOf("lo wor", "text")).getAsJsonArray().size());
+        assertEquals(1, store.read(QueryOperations.tableName(TestTable).startsWith("text", "goodbye w")).getAsJsonArray().size());
+    }
+
+    public void testFullTextFilterIsWrittenAsAMatchOnTheIndex() throws MobileServiceException {
+        List<Object> arguments = new ArrayList<Object>();
+
+        Query query = QueryOperations.tableName(TestTable).startsWith("text", "hello wor");
+
+        String whereClause = QuerySQLWriter.getWhereClause(query, arguments, "__fts_todo", Arrays.asList("text"));
+
+        assertTrue(whereClause.startsWith("(\"id\" IN (SELECT \"__itemid\" FROM \"__fts_todo\" WHERE \"text\" MATCH ?1) AND "));
+        assertEquals("\"hello\" \"wor*\"", arguments.get(0));
+    }
+
+    public void testFullTextFilterFoldsTheCaseOfAsciiLettersOnly() throws MobileServiceLocalStoreException, MobileServiceException {
+        List<Object> arguments = new ArrayList<Object>();
+
+        QuerySQLWriter.getWhereClause(QueryOperations.tableName(TestTable).subStringOf("un \u00c9lan", "text"), arguments, "__fts_todo", Arrays.asList("text"));
+
+        assertEquals("\"\u00c9lan*\"", arguments.get(0));
+
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("text", ColumnDataType.String);
+
+        store.defineTable(TestTable, tableDefinition);
+        store.defineFullTextIndex(TestTable, Arrays.asList("text"));
+        store.initialize();
+
+        String[] texts = new String[]{"\u00c9lan vital", "UN \u00c9LAN", "un \u00e9lan"};
+
+        for (int i = 0; i < texts.length; i++) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", String.valueOf(i));
+            item.addProperty("text", texts[i]);
+
+            store.upsert(TestTable, item, false);
+        }
+
+        // as with LIKE, the accented letters match in the same case only, while the ASCII letters match in any case
+        JsonArray results = store.read(QueryOperations.tableName(TestTable).subStringOf("un \u00c9lan", "text")).getAsJsonArray();
+
+        assertEquals(1, results.size());
+        assertEquals("1", results.get(0).getAsJsonObject().get("id").getAsString());
+
+        results = store.read(QueryOperations.tableName(TestTable).startsWith("text", "\u00c9lan")).getAsJsonArray();
+
+        assertEquals(1, results.size());
+        assertEquals("0", results.get(0).getAsJsonObject().get("id").getAsString());
+    }
+
+    public void testFullTextIndexIsRebuiltWhenItsRowidsNoLongerMatchTheTable() throws MobileServiceLocalStoreException, MobileServiceException {
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("text", ColumnDataType.String);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        store.defineTable(TestTable, tableDefinition);
+        store.defineFullTextIndex(TestTable, Arrays.asList("text"));
+        store.initialize();
+
+        String[] texts = new String[]{"Hello world", "hello there"};
+
+        for (int i = 0; i < texts.length; i++) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", String.valueOf(i));
+            item.addProperty("text", texts[i]);
+
+            store.upsert(TestTable, item, false);
+        }
+
+        // swaps the rowids of the two index rows, as a VACUUM renumbering the table would
+        String ftsTable = "\"__fts_" + TestTable + "\"";
+        String rowidOf = "(SELECT rowid FROM \"" + TestTable + "\" WHERE \"id\" = '%s')";
+
+        SQLiteStoreTestsUtilities.executeNonQuery(this.getContext(), TestDbName, "UPDATE " + ftsTable + " SET docid = -1 WHERE \"__itemid\" = '0'");
+        SQLiteStoreTestsUtilities.executeNonQuery(this.getContext(), TestDbName,
+                "UPDATE " + ftsTable + " SET docid = " + String.format(rowidOf, "0") + " WHERE \"__itemid\" = '1'");
+        SQLiteStoreTestsUtilities.executeNonQuery(this.getContext(), TestDbName,
+                "UPDATE " + ftsTable + " SET docid = " + String.format(rowidOf, "1") + " WHERE docid = -1");
+
+        store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        store.defineTable(TestTable, tableDefinition);
+        store.defineFullTextIndex(TestTable, Arrays.asList("text"));
+        store.initialize();
+
+        // deleting the first item must not remove the index row of the second
+        store.delete(TestTable, "0");
+
+        JsonArray results = store.read(QueryOperations.tableName(TestTable).startsWith("text", "hello")).getAsJsonArray();
+
+        assertEquals(1, results.size());
+        assertEquals("1", results.get(0).getAsJsonObject().get("id").getAsString());
+    }
+
     public void testLookupThrowsWhenStoreIsNotInitialized() {
         CustomFunctionOneParameter<SQLiteLocalStore, Void> storeAction = new CustomFunctionOneParameter<SQLiteLocalStore, Void>() {
             public Void apply(SQLiteLocalStore store) throws MobileServiceLocalStoreException {
@@ -461,6 +669,52 @@ public class SQLiteStoreTests extends InstrumentationTestCase {
         assertEquals(inserted.get("id").getAsString(), read.get("id").getAsString());
     }
 
+    public void testReadDecodesTypedColumnsOfProjection() throws MobileServiceLocalStoreException {
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("complete", ColumnDataType.Boolean);
+        tableDefinition.put("age", ColumnDataType.Integer);
+        tableDefinition.put("weight", ColumnDataType.Real);
+        tableDefinition.put("options", ColumnDataType.Other);
+
+        store.defineTable(TestTable, tableDefinition);
+        store.initialize();
+
+        JsonObject options = new JsonObject();
+        options.addProperty("color", "red");
+
+        JsonObject inserted = new JsonObject();
+        inserted.addProperty("id", "abc");
+        inserted.addProperty("complete", true);
+        inserted.addProperty("age", 42);
+        inserted.addProperty("weight", 70.5);
+        inserted.add("options", options);
+
+        store.upsert(TestTable, inserted, false);
+
+        for (int i = 0; i < 2; i++) {
+            Query query = QueryOperations.tableName(TestTable).select("id", "Complete", "options", "weight");
+
+            JsonArray results = store.read(query).getAsJsonArray();
+
+            assertEquals(1, results.size());
+
+            JsonObject read = results.get(0).getAsJsonObject();
+
+            assertEquals("abc", read.get("id").getAsString());
+            assertTrue(read.get("complete").getAsBoolean());
+            assertEquals(70.5, read.get("weight").getAsDouble());
+            assertEquals(options, read.get("options"));
+            assertFalse(read.has("age"));
+        }
+
+        assertEquals(42, store.lookup(TestTable, "abc").get("age").getAsInt());
+    }
+
     public void testUpsertInsertsTheRowWhenItDoesNotExist() throws MobileServiceLocalStoreException {
         prepareTodoTable();
 
@@ -634,6 +888,144 @@ public class SQLiteStoreTests extends InstrumentationTestCase {
         assertNull(lastItem);
     }
 
+    public void testLookupAndDeleteWithQuoteInId() throws MobileServiceLocalStoreException {
+        prepareTodoTable();
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        defineTestTable(store);
+        store.initialize();
+
+        JsonObject inserted = new JsonObject();
+        inserted.addProperty("id", "o'brien");
+        inserted.addProperty("createdAt", new Date().toString());
+
+        store.upsert(TestTable, inserted, false);
+
+        JsonObject itemRead = store.lookup(TestTable, "o'brien");
+
+        assertNotNull(itemRead);
+        assertEquals("o'brien", itemRead.get("id").getAsString());
+
+        store.delete(TestTable, "o'brien");
+
+        assertNull(store.lookup(TestTable, "o'brien"));
+    }
+
+    public void testUpsertFromServerUpsertsAndDeletesRows() throws Exception {
+        prepareTodoTable();
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        defineTestTable(store);
+        store.initialize();
+
+        JsonObject inserted = new JsonObject();
+        inserted.addProperty("id", "abc");
+        inserted.addProperty("createdAt", new Date().toString());
+
+        store.upsert(TestTable, inserted, false);
+
+        String page = "[{\"id\":\"def\",\"createdAt\":\"2014-01-01T00:00:00.000Z\",\"notDefined\":{\"a\":1}},"
+                + "{\"id\":\"abc\",\"deleted\":true,\"updatedAt\":\"2014-01-02T00:00:00.000Z\"}]";
+
+        StreamedRowsResult result = store.upsertFromServer(TestTable, new JsonReader(new StringReader(page)), null);
+
+        assertEquals(2, result.getCount());
+        assertEquals("abc", result.getLastItemId());
+        assertEquals("2014-01-02T00:00:00.000Z", result.getLastUpdatedAt());
+
+        assertNull(store.lookup(TestTable, "abc"));
+
+        JsonObject itemRead = store.lookup(TestTable, "def");
+
+        assertNotNull(itemRead);
+        assertEquals("2014-01-01T00:00:00.000Z", itemRead.get("createdAt").getAsString());
+
+        long count = SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, TestTable);
+        assertEquals(count, 1L);
+    }
+
+    public void testPersistentConnectionKeepsDatabaseOpenWithWriteAheadLogging() throws MobileServiceLocalStoreException {
+        prepareTodoTable();
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+        store.setPersistentConnection(true);
+        store.setSynchronousMode(SQLiteLocalStore.SynchronousMode.Normal);
+        store.setCacheSize(4000);
+
+        try {
+            defineTestTable(store);
+            store.initialize();
+
+            JsonObject inserted = new JsonObject();
+            inserted.addProperty("id", "abc");
+            inserted.addProperty("createdAt", new Date().toString());
+
+            store.upsert(TestTable, inserted, false);
+
+            assertNotNull(store.lookup(TestTable, "abc"));
+
+            SQLiteDatabase db = store.getReadableDatabase();
+
+            assertTrue(db.isOpen());
+            assertTrue(db.isWriteAheadLoggingEnabled());
+
+            store.delete(TestTable, "abc");
+
+            assertNull(store.lookup(TestTable, "abc"));
+            assertTrue(db.isOpen());
+        } finally {
+            store.close();
+        }
+    }
+
+    public void testTransactionCommitsOnlyWhenSuccessful() throws MobileServiceLocalStoreException {
+        prepareTodoTable();
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        defineTestTable(store);
+        store.initialize();
+
+        JsonObject first = new JsonObject();
+        first.addProperty("id", "abc");
+        first.addProperty("createdAt", new Date().toString());
+
+        JsonObject second = new JsonObject();
+        second.addProperty("id", "def");
+        second.addProperty("createdAt", new Date().toString());
+
+        // not marked as successful, rolled back
+        store.beginTransaction();
+
+        try {
+            store.upsert(TestTable, first, false);
+        } finally {
+            store.endTransaction();
+        }
+
+        assertNull(store.lookup(TestTable, "abc"));
+
+        // nested writes committed together
+        store.beginTransaction();
+
+        try {
+            store.upsert(TestTable, new JsonObject[]{first, second}, false);
+            store.delete(TestTable, new String[]{"def"});
+
+            store.setTransactionSuccessful();
+        } finally {
+            store.endTransaction();
+        }
+
+        assertNotNull(store.lookup(TestTable, "abc"));
+        assertNull(store.lookup(TestTable, "def"));
+
+        long count = SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, TestTable);
+        assertEquals(count, 1L);
+    }
+
     private void prepareTodoTable() throws MobileServiceLocalStoreException {
         SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
 
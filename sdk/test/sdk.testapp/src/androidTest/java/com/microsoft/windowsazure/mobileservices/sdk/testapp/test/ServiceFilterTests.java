@@ -23,17 +23,23 @@ import android.test.InstrumentationTestCase;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.JsonElement;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.http.NextServiceFilterCallback;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilter;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponseImpl;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.ServiceFilterRequestMock;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.filters.ServiceFilterResponseMock;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.PersonTestObject;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.ResultsContainer;
+import okhttp3.MediaType;
 import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
 import okhttp3.internal.http.StatusLine;
 
 import java.net.MalformedURLException;
@@ -368,4 +374,42 @@ public class ServiceFilterTests extends InstrumentationTestCase {
             }
         }
     }
-}
\ No newline at end of file
+
+    public void testStreamedResponseShouldBufferContentOnDemand() throws Throwable {
+        Response response = createOkHttpResponse("{\"id\":\"1\"}");
+
+        ServiceFilterResponseImpl serviceFilterResponse = new ServiceFilterResponseImpl(response, true);
+
+        assertTrue(serviceFilterResponse.isContentPending());
+
+        assertEquals("{\"id\":\"1\"}", serviceFilterResponse.getContent());
+        assertFalse(serviceFilterResponse.isContentPending());
+
+        JsonElement json = ServiceFilterResponseImpl.readJsonContent(serviceFilterResponse);
+
+        assertEquals("1", json.getAsJsonObject().get("id").getAsString());
+    }
+
+    public void testStreamedResponseShouldParseContentWithoutBuffering() throws Throwable {
+        Response response = createOkHttpResponse("[{\"id\":\"1\"},{\"id\":\"2\"}]");
+
+        ServiceFilterResponseImpl serviceFilterResponse = new ServiceFilterResponseImpl(response, true);
+
+        JsonElement json = ServiceFilterResponseImpl.readJsonContent(serviceFilterResponse);
+
+        assertEquals(2, json.getAsJsonArray().size());
+        assertFalse(serviceFilterResponse.isContentPending());
+    }
+
+    private Response createOkHttpResponse(String content) {
+        Request request = new Request.Builder().url(appUrl).build();
+
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(MediaType.parse("application/json"), content))
+                .build();
+    }
+}
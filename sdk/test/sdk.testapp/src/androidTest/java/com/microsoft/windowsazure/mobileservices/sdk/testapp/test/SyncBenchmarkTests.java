@@ -0,0 +1,693 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import android.test.InstrumentationTestCase;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.http.OkHttpClientFactory;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.framework.mocks.MobileServiceLocalStoreMock;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.helpers.BenchmarkUtilities;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.helpers.BenchmarkUtilities.BenchmarkBody;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.helpers.BenchmarkUtilities.LocalHttpServer;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.helpers.BenchmarkUtilities.TableResponder;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceJsonTable;
+import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceJsonSyncTable;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.SQLiteLocalStore;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.InsertOperation;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.UpdateOperation;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.PullPartitions;
+import com.microsoft.windowsazure.mobileservices.table.sync.queue.OperationQueue;
+import com.microsoft.windowsazure.mobileservices.table.sync.synchandler.SimpleSyncHandler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Timings of the request, sync and local store paths. The numbers are
+ * logged with the BenchmarkUtilities.BENCHMARK_TAG tag; the tests only fail
+ * when a path breaks, not when it is slow
+ */
+public class SyncBenchmarkTests extends InstrumentationTestCase {
+    private static final int SEQUENTIAL_REQUESTS = 1000;
+    private static final int QUEUED_OPERATIONS = 10000;
+    private static final int PUSHED_OPERATIONS = 1000;
+    private static final int LOCAL_CALLS = 10000;
+    private static final int PULLED_ITEMS = 5000;
+    private static final int PULLS = 5;
+    private static final int PULL_PAGE_SIZE = 50;
+    private static final int STORE_CALLS = 2000;
+    private static final String BENCHMARK_DB = "benchmark.db";
+    private static final String BENCHMARK_TABLE = "benchmarktable";
+    private static final int STORE_LOOKUPS = 100000;
+    private static final int STORED_ITEMS = 1000;
+    private static final int LARGE_TABLE_ITEMS = 100000;
+    private static final int PAGE_FETCHES = 20;
+    private static final int TEXT_SEARCHES = 100;
+    private static final int LARGE_PULL_ITEMS = 500000;
+    private static final int LARGE_PULL_PAGE_SIZE = 1000;
+    private static final int PARTITIONED_PULL_ITEMS = 20000;
+    private static final int PARTITIONED_PULL_PAGE_SIZE = 1000;
+    private static final int PULL_PARTITIONS = 4;
+    private static final long PULL_LATENCY_MILLIS = 20;
+    private static final int PENDING_PULL_ITEMS = 20000;
+    private static final int LONG_PULL_PAGE_SIZE = 200;
+    private static final int QUEUE_OPERATIONS = 100000;
+
+    public void testBenchmarkSequentialRequestsOnSharedAndNewHttpClients() throws Throwable {
+        LocalHttpServer server = new LocalHttpServer("{\"id\":\"abc\"}");
+
+        try {
+            final MobileServiceJsonTable sharedTable = new MobileServiceClient(server.getUrl(), getInstrumentation().getTargetContext())
+                    .getTable("someTable");
+
+            BenchmarkUtilities.measure("Requests on the shared OkHttpClient", SEQUENTIAL_REQUESTS, new BenchmarkBody() {
+                @Override
+                public void run(int iteration) throws Throwable {
+                    sharedTable.insert(newItem(iteration)).get();
+                }
+            });
+
+            int sharedConnections = server.getConnectionCount();
+
+            BenchmarkUtilities.report("Connections on the shared OkHttpClient", sharedConnections);
+
+            // the behavior before the client was shared: a new OkHttpClient per request
+            MobileServiceClient newClientPerRequest = new MobileServiceClient(server.getUrl(), getInstrumentation().getTargetContext());
+
+            newClientPerRequest.setAndroidHttpClientFactory(new OkHttpClientFactory() {
+                @Override
+                public OkHttpClient createOkHttpClient() {
+                    return new OkHttpClient();
+                }
+            });
+
+            final MobileServiceJsonTable newClientTable = newClientPerRequest.getTable("someTable");
+
+            BenchmarkUtilities.measure("Requests on a new OkHttpClient per request", SEQUENTIAL_REQUESTS, new BenchmarkBody() {
+                @Override
+                public void run(int iteration) throws Throwable {
+                    newClientTable.insert(newItem(iteration)).get();
+                }
+            });
+
+            BenchmarkUtilities.report("Connections on a new OkHttpClient per request", server.getConnectionCount() - sharedConnections);
+
+            assertTrue(sharedConnections < SEQUENTIAL_REQUESTS);
+        } finally {
+            server.close();
+        }
+    }
+
+    public void testBenchmarkOperationQueueEnqueueAndLoad() throws Throwable {
+        final MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+
+        MobileServiceClient client = new MobileServiceClient("http://myapp.com/", getInstrumentation().getTargetContext());
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        final MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        BenchmarkUtilities.measure("Local inserts queued", QUEUED_OPERATIONS, new BenchmarkBody() {
+            @Override
+            public void run(int iteration) throws Throwable {
+                table.insert(newItem(iteration)).get();
+            }
+        });
+
+        BenchmarkUtilities.measure("Operation queue loads of " + client.getSyncContext().getPendingOperations() + " operations", 10, new BenchmarkBody() {
+            @Override
+            public void run(int iteration) throws Throwable {
+                new MobileServiceClient("http://myapp.com/", getInstrumentation().getTargetContext()).getSyncContext()
+                        .initialize(store, new SimpleSyncHandler()).get();
+            }
+        });
+    }
+
+    public void testBenchmarkOperationQueueEnqueueCollapseAndDequeue() throws Throwable {
+        final MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+
+        OperationQueue.initializeStore(store);
+        final OperationQueue opQueue = OperationQueue.load(store);
+
+        // the warm-up runs take items too, so the items are numbered apart
+        // from the iterations
+        final int[] nextItem = new int[1];
+
+        BenchmarkUtilities.measure("Operation queue enqueues of inserts", QUEUE_OPERATIONS, new BenchmarkBody() {
+            @Override
+            public void run(int iteration) throws Throwable {
+                int item = nextItem[0]++;
+
+                opQueue.enqueue(new InsertOperation("table" + (item % 4), "item" + item));
+            }
+        });
+
+        int operationCount = nextItem[0];
+        nextItem[0] = 0;
+
+        // an update of an item with a pending insert collapses into the insert
+        BenchmarkUtilities.measure("Operation queue collapses of updates", QUEUE_OPERATIONS, new BenchmarkBody() {
+            @Override
+            public void run(int iteration) throws Throwable {
+                int item = nextItem[0]++;
+
+                opQueue.enqueue(new UpdateOperation("table" + (item % 4), "item" + item));
+            }
+        });
+
+        assertEquals(operationCount, opQueue.countPending());
+
+        BenchmarkUtilities.measure("Operation queue dequeues", QUEUE_OPERATIONS, new BenchmarkBody() {
+            @Override
+            public void run(int iteration) throws Throwable {
+                assertNotNull(opQueue.dequeue());
+            }
+        });
+
+        assertNull(opQueue.dequeue());
+        assertEquals(0, store.Tables.get("__operations").size());
+    }
+
+    public void testBenchmarkPushOfQueuedOperationsCommittedOneByOneAndInBatches() throws Throwable {
+        LocalHttpServer server = new LocalHttpServer(new TableResponder(0));
+
+        try {
+            for (int commitSize : new int[]{1, 50}) {
+                final MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+
+                final MobileServiceClient client = new MobileServiceClient(server.getUrl(), getInstrumentation().getTargetContext());
+
+                client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+                client.getSyncContext().setPushCommitSize(commitSize);
+
+                final MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+                final int[] pushTransactions = new int[1];
+
+                BenchmarkUtilities.measure("Pushes of " + PUSHED_OPERATIONS + " queued inserts, commit size " + commitSize, 5, new BenchmarkBody() {
+                    @Override
+                    public void run(int iteration) throws Throwable {
+                        for (int i = 0; i < PUSHED_OPERATIONS; i++) {
+                            table.insert(newItem(iteration * PUSHED_OPERATIONS + i)).get();
+                        }
+
+                        int transactions = store.TransactionCount;
+
+                        client.getSyncContext().push().get();
+
+                        pushTransactions[0] = store.TransactionCount - transactions;
+                    }
+                });
+
+                BenchmarkUtilities.report("Store transactions per push, commit size " + commitSize, pushTransactions[0]);
+
+                assertEquals(0, client.getSyncContext().getPendingOperations());
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    public void testBenchmarkLocalLookUpsOnTheSyncExecutorAndOnAThreadPerCall() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+
+        MobileServiceClient client = new MobileServiceClient("http://myapp.com/", getInstrumentation().getTargetContext());
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        final MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+        table.insert(newItem(0)).get();
+
+        BenchmarkUtilities.measure("Local lookUps on the sync executor", LOCAL_CALLS, new BenchmarkBody() {
+            @Override
+            public void run(int iteration) throws Throwable {
+                table.lookUp("item0").get();
+            }
+        });
+
+        // the behavior before the sync executor: a new thread per call
+        client.setSyncExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                new Thread(command).start();
+            }
+        });
+
+        BenchmarkUtilities.measure("Local lookUps on a thread per call", LOCAL_CALLS, new BenchmarkBody() {
+            @Override
+            public void run(int iteration) throws Throwable {
+                table.lookUp("item0").get();
+            }
+        });
+    }
+
+    public void testBenchmarkPullOfPagesWithAndWithoutPrefetching() throws Throwable {
+        final LocalHttpServer server = new LocalHttpServer(new TableResponder(PULLED_ITEMS));
+
+        try {
+            for (int depth : new int[]{0, 1}) {
+                MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+
+                MobileServiceClient client = new MobileServiceClient(server.getUrl(), getInstrumentation().getTargetContext());
+
+                client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+                client.getSyncContext().setPullPrefetchDepth(depth);
+
+                final MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+                BenchmarkUtilities.measure("Pulls of " + PULLED_ITEMS + " items, prefetch depth " + depth, PULLS, new BenchmarkBody() {
+                    @Override
+                    public void run(int iteration) throws Throwable {
+                        int requests = server.getRequestCount();
+
+                        table.pull(null).get();
+
+                        // one request per page of the default size, and one
+                        // more for the empty page that ends the pull
+                        assertEquals(PULLED_ITEMS / PULL_PAGE_SIZE + 1, server.getRequestCount() - requests);
+                    }
+                });
+
+                assertEquals(PULLED_ITEMS, store.Tables.get("sometable").size());
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    public void testBenchmarkStoreCallsOnAPersistentAndOnAReopenedConnection() throws Throwable {
+        for (boolean persistent : new boolean[]{true, false}) {
+            String connection = persistent ? "persistent connection" : "connection opened per call";
+
+            final SQLiteLocalStore store = newBenchmarkStore(persistent);
+
+            try {
+                store.initialize();
+
+                BenchmarkUtilities.measure("Store upserts, " + connection, STORE_CALLS, new BenchmarkBody() {
+                    @Override
+                    public void run(int iteration) throws Throwable {
+                        store.upsert(BENCHMARK_TABLE, newItem(iteration), false);
+                    }
+                });
+
+                BenchmarkUtilities.measure("Store lookups, " + connection, STORE_CALLS, new BenchmarkBody() {
+                    @Override
+                    public void run(int iteration) throws Throwable {
+                        store.lookup(BENCHMARK_TABLE, "item" + iteration);
+                    }
+                });
+
+                // 70% lookups, 20% upserts, 10% deletes
+                BenchmarkUtilities.measure("Store lookup/upsert/delete mix, " + connection, STORE_CALLS, new BenchmarkBody() {
+                    @Override
+                    public void run(int iteration) throws Throwable {
+                        int call = iteration % 10;
+
+                        if (call == 0) {
+                            store.delete(BENCHMARK_TABLE, "item" + iteration);
+                        } else if (call <= 2) {
+                            store.upsert(BENCHMARK_TABLE, newItem(iteration), false);
+                        } else {
+                            store.lookup(BENCHMARK_TABLE, "item" + iteration);
+                        }
+                    }
+                });
+            } finally {
+                store.close();
+            }
+        }
+    }
+
+    public void testBenchmarkStoreLookupsAndReadsWithBoundIds() throws Throwable {
+        final SQLiteLocalStore store = newBenchmarkStore(true);
+
+        try {
+            store.initialize();
+
+            JsonObject[] items = new JsonObject[STORED_ITEMS];
+
+            for (int i = 0; i < STORED_ITEMS; i++) {
+                items[i] = newItem(i);
+            }
+
+            store.upsert(BENCHMARK_TABLE, items, false);
+
+            // each lookup binds its id to the cached statement
+            BenchmarkUtilities.measure("Store lookups of " + STORED_ITEMS + " ids", STORE_LOOKUPS, new BenchmarkBody() {
+                @Override
+                public void run(int iteration) throws Throwable {
+                    assertNotNull(store.lookup(BENCHMARK_TABLE, "item" + (iteration % STORED_ITEMS)));
+                }
+            });
+
+            // the reads only differ by their constant, so they share one statement
+            BenchmarkUtilities.measure("Store reads filtered by id", STORE_CALLS, new BenchmarkBody() {
+                @Override
+                public void run(int iteration) throws Throwable {
+                    store.read(QueryOperations.tableName(BENCHMARK_TABLE).field("id").eq("item" + (iteration % STORED_ITEMS)));
+                }
+            });
+        } finally {
+            store.close();
+        }
+    }
+
+    public void testBenchmarkStorePageFetchesAtIncreasingPageNumbers() throws Throwable {
+        final SQLiteLocalStore store = newBenchmarkStore(true);
+
+        try {
+            store.initialize();
+
+            fillBenchmarkStore(store, LARGE_TABLE_ITEMS);
+
+            // the time of a page with its total count should not grow with its number
+            for (final int page : new int[]{0, 10, 100, 1000, LARGE_TABLE_ITEMS / PULL_PAGE_SIZE - 1}) {
+                BenchmarkUtilities.measure("Store page " + page + " of " + PULL_PAGE_SIZE + " items with the total count", PAGE_FETCHES, new BenchmarkBody() {
+                    @Override
+                    public void run(int iteration) throws Throwable {
+                        JsonObject result = store.read(QueryOperations.tableName(BENCHMARK_TABLE).orderBy("id", QueryOrder.Ascending).includeInlineCount()
+                                .top(PULL_PAGE_SIZE).skip(page * PULL_PAGE_SIZE)).getAsJsonObject();
+
+                        assertEquals(LARGE_TABLE_ITEMS, result.get("count").getAsInt());
+                        assertEquals(PULL_PAGE_SIZE, result.getAsJsonArray("results").size());
+                    }
+                });
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    public void testBenchmarkStoreTextSearchesWithLikeAndWithAFullTextIndex() throws Throwable {
+        for (boolean fullText : new boolean[]{false, true}) {
+            final SQLiteLocalStore store = newBenchmarkStore(true);
+
+            try {
+                if (fullText) {
+                    store.defineFullTextIndex(BENCHMARK_TABLE, Arrays.asList("String"));
+                }
+
+                store.initialize();
+
+                for (int first = 0; first < LARGE_TABLE_ITEMS; first += 1000) {
+                    JsonObject[] items = new JsonObject[1000];
+
+                    for (int i = 0; i < items.length; i++) {
+                        items[i] = newItem(first + i);
+                        items[i].addProperty("String", "Hey " + (first + i));
+                    }
+
+                    store.upsert(BENCHMARK_TABLE, items, false);
+                }
+
+                // matches item 4242 and items 42420 to 42429
+                BenchmarkUtilities.measure("Store startswith searches over " + LARGE_TABLE_ITEMS + " items, " + (fullText ? "full text index" : "LIKE"),
+                        TEXT_SEARCHES, new BenchmarkBody() {
+                            @Override
+                            public void run(int iteration) throws Throwable {
+                                assertEquals(11, store.read(QueryOperations.tableName(BENCHMARK_TABLE).startsWith("String", "Hey 4242")).getAsJsonArray().size());
+                            }
+                        });
+            } finally {
+                store.close();
+            }
+        }
+    }
+
+    public void testBenchmarkPullOfALargeTableWithKeysetAndWithSkipPaging() throws Throwable {
+        // keyset paging seeks past the last id when the pull is ordered by id
+        // only, any other order pages with a growing $skip
+        Query keysetQuery = QueryOperations.tableName("someTable").top(LARGE_PULL_PAGE_SIZE);
+        Query skipQuery = QueryOperations.tableName("someTable").orderBy("String", QueryOrder.Ascending).top(LARGE_PULL_PAGE_SIZE);
+
+        for (final Query query : new Query[]{keysetQuery, skipQuery}) {
+            String paging = query == keysetQuery ? "keyset paging" : "$skip paging";
+
+            TableResponder responder = new TableResponder(LARGE_PULL_ITEMS);
+            final LocalHttpServer server = new LocalHttpServer(responder);
+
+            try {
+                final AtomicInteger upsertedCount = new AtomicInteger();
+
+                // counts the pulled rows instead of keeping them in memory
+                MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock() {
+                    @Override
+                    public void upsert(String tableName, JsonObject item, boolean fromServer) {
+                        upsertedCount.incrementAndGet();
+                    }
+
+                    @Override
+                    public void upsert(String tableName, JsonObject[] items, boolean fromServer) {
+                        upsertedCount.addAndGet(items.length);
+                    }
+                };
+
+                MobileServiceClient client = new MobileServiceClient(server.getUrl(), getInstrumentation().getTargetContext());
+
+                client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+                final MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+                BenchmarkUtilities.measure("Pull of " + LARGE_PULL_ITEMS + " items, " + paging, 1, new BenchmarkBody() {
+                    @Override
+                    public void run(int iteration) throws Throwable {
+                        table.pull(query).get();
+                    }
+                });
+
+                // the rows the backend read to answer the pages
+                BenchmarkUtilities.report("Rows scanned by the backend, " + paging, responder.getScannedRowCount());
+
+                assertEquals(LARGE_PULL_ITEMS, upsertedCount.get());
+                assertEquals(LARGE_PULL_ITEMS / LARGE_PULL_PAGE_SIZE + 1, server.getRequestCount());
+            } finally {
+                server.close();
+            }
+        }
+    }
+
+    public void testBenchmarkPullOfATableInOneStreamAndInPartitions() throws Throwable {
+        final LocalHttpServer server = new LocalHttpServer(new TableResponder(PARTITIONED_PULL_ITEMS));
+
+        // each page waits for the latency of the network, which the
+        // partitions pulled concurrently overlap
+        server.setLatencyMillis(PULL_LATENCY_MILLIS);
+
+        String[] boundaries = new String[PULL_PARTITIONS - 1];
+
+        for (int i = 0; i < boundaries.length; i++) {
+            boundaries[i] = TableResponder.getId((i + 1) * PARTITIONED_PULL_ITEMS / PULL_PARTITIONS);
+        }
+
+        final List<Query> partitions = PullPartitions.byId(boundaries);
+        final Query query = QueryOperations.tableName("someTable").top(PARTITIONED_PULL_PAGE_SIZE);
+
+        try {
+            for (final boolean partitioned : new boolean[]{false, true}) {
+                String stream = partitioned ? PULL_PARTITIONS + " partitions" : "one page stream";
+
+                MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+
+                MobileServiceClient client = new MobileServiceClient(server.getUrl(), getInstrumentation().getTargetContext());
+
+                client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+                final MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+                BenchmarkUtilities.measure("Pulls of " + PARTITIONED_PULL_ITEMS + " items with " + PULL_LATENCY_MILLIS + " ms of latency, " + stream,
+                        PULLS, new BenchmarkBody() {
+                            @Override
+                            public void run(int iteration) throws Throwable {
+                                int requests = server.getRequestCount();
+
+                                if (partitioned) {
+                                    table.pull(query, null, partitions, PULL_PARTITIONS).get();
+                                } else {
+                                    table.pull(query).get();
+                                }
+
+                                // every stream ends with an empty page
+                                int streams = partitioned ? PULL_PARTITIONS : 1;
+
+                                assertEquals(PARTITIONED_PULL_ITEMS / PARTITIONED_PULL_PAGE_SIZE + streams, server.getRequestCount() - requests);
+                            }
+                        });
+
+                assertEquals(PARTITIONED_PULL_ITEMS, store.Tables.get("sometable").size());
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    public void testBenchmarkPullSkippingItemsWithPendingOperations() throws Throwable {
+        final LocalHttpServer server = new LocalHttpServer(new TableResponder(PENDING_PULL_ITEMS));
+
+        final Query query = QueryOperations.tableName("someTable").top(LARGE_PULL_PAGE_SIZE);
+
+        try {
+            for (int pendingCount : new int[]{1, 100, 10000}) {
+                MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+
+                MobileServiceClient client = new MobileServiceClient(server.getUrl(), getInstrumentation().getTargetContext());
+
+                client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+                client.getSyncContext().setPullSkipsPendingItems(true);
+
+                final MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+                // local versions of rows of the table, which the pull must keep
+                for (int i = 0; i < pendingCount; i++) {
+                    JsonObject item = new JsonObject();
+                    item.addProperty("id", TableResponder.getId(i));
+                    item.addProperty("String", "Local");
+
+                    table.insert(item).get();
+                }
+
+                BenchmarkUtilities.measure("Pulls of " + PENDING_PULL_ITEMS + " items, " + pendingCount + " pending operations", PULLS,
+                        new BenchmarkBody() {
+                            @Override
+                            public void run(int iteration) throws Throwable {
+                                int requests = server.getRequestCount();
+
+                                table.pull(query).get();
+
+                                // no push before the pull
+                                assertEquals(PENDING_PULL_ITEMS / LARGE_PULL_PAGE_SIZE + 1, server.getRequestCount() - requests);
+                            }
+                        });
+
+                assertEquals(pendingCount, client.getSyncContext().getPendingOperations());
+                assertEquals(PENDING_PULL_ITEMS, store.Tables.get("sometable").size());
+                assertEquals("Local", store.Tables.get("sometable").get(TableResponder.getId(pendingCount - 1)).get("String").getAsString());
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    public void testBenchmarkLocalInsertsDuringALongPull() throws Throwable {
+        LocalHttpServer server = new LocalHttpServer(new TableResponder(PARTITIONED_PULL_ITEMS));
+
+        // small pages over a slow network, so that the pull lasts seconds
+        server.setLatencyMillis(PULL_LATENCY_MILLIS);
+
+        try {
+            MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+
+            MobileServiceClient client = new MobileServiceClient(server.getUrl(), getInstrumentation().getTargetContext());
+
+            client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+            MobileServiceJsonSyncTable table = client.getSyncTable("someTable");
+
+            ListenableFuture<Void> pull = table.pull(QueryOperations.tableName("someTable").top(LONG_PULL_PAGE_SIZE));
+
+            int inserts = 0;
+            long totalNanos = 0;
+            long maxNanos = 0;
+
+            // the table is only locked while each page is written, so the
+            // inserts wait for a page at most, not for the whole pull
+            do {
+                long start = System.nanoTime();
+
+                table.insert(newItem(inserts)).get();
+
+                long elapsedNanos = System.nanoTime() - start;
+
+                totalNanos += elapsedNanos;
+                maxNanos = Math.max(maxNanos, elapsedNanos);
+                inserts++;
+            } while (!pull.isDone());
+
+            pull.get();
+
+            BenchmarkUtilities.report("Local inserts during a pull of " + PARTITIONED_PULL_ITEMS + " items", inserts);
+            BenchmarkUtilities.report("Mean local insert latency during a pull, microseconds", totalNanos / inserts / 1000);
+            BenchmarkUtilities.report("Max local insert latency during a pull, microseconds", maxNanos / 1000);
+
+            assertEquals(PARTITIONED_PULL_ITEMS / LONG_PULL_PAGE_SIZE + 1, server.getRequestCount());
+            assertEquals(inserts, client.getSyncContext().getPendingOperations());
+            assertEquals(PARTITIONED_PULL_ITEMS + inserts, store.Tables.get("sometable").size());
+        } finally {
+            server.close();
+        }
+    }
+
+    private static JsonObject newItem(int index) {
+        JsonObject item = new JsonObject();
+        item.addProperty("id", "item" + index);
+        item.addProperty("String", "Hey");
+
+        return item;
+    }
+
+    /**
+     * Creates a store on an empty database, with a table of the items built
+     * by newItem. The store is not initialized yet.
+     */
+    private SQLiteLocalStore newBenchmarkStore(boolean persistentConnection) throws MobileServiceLocalStoreException {
+        getInstrumentation().getTargetContext().deleteDatabase(BENCHMARK_DB);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(getInstrumentation().getTargetContext(), BENCHMARK_DB, null, 1);
+        store.setPersistentConnection(persistentConnection);
+
+        Map<String, ColumnDataType> columns = new HashMap<String, ColumnDataType>();
+        columns.put("id", ColumnDataType.String);
+        columns.put("String", ColumnDataType.String);
+
+        store.defineTable(BENCHMARK_TABLE, columns);
+
+        return store;
+    }
+
+    /**
+     * Upserts count items built by newItem, a thousand per transaction
+     */
+    private static void fillBenchmarkStore(SQLiteLocalStore store, int count) throws MobileServiceLocalStoreException {
+        for (int first = 0; first < count; first += 1000) {
+            JsonObject[] items = new JsonObject[Math.min(1000, count - first)];
+
+            for (int i = 0; i < items.length; i++) {
+                items[i] = newItem(first + i);
+            }
+
+            store.upsert(BENCHMARK_TABLE, items, false);
+        }
+    }
+}
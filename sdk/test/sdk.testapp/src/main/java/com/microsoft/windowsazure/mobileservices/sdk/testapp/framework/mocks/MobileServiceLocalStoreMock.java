@@ -34,6 +34,8 @@ public class MobileServiceLocalStoreMock implements MobileServiceLocalStore {
     public List<Query> DeleteQueries = new ArrayList<Query>();
     public Queue<String> ReadResponses = new LinkedList<String>();
     public Function<Query, JsonElement> readAsyncFunc;
+    public int TransactionDepth = 0;
+    public int TransactionCount = 0;
 
     @Override
     public void initialize() throws MobileServiceLocalStoreException {
@@ -45,6 +47,11 @@ public class MobileServiceLocalStoreMock implements MobileServiceLocalStore {
 
     }
 
+    @Override
+    public void defineIndex(String tableName, List<String> columnNames, boolean unique) throws MobileServiceLocalStoreException {
+
+    }
+
     @Override
     public JsonElement read(Query query) throws MobileServiceLocalStoreException {
 
@@ -147,6 +154,24 @@ public class MobileServiceLocalStoreMock implements MobileServiceLocalStore {
         return;
     }
 
+    @Override
+    public void beginTransaction() throws MobileServiceLocalStoreException {
+        if (this.TransactionDepth == 0) {
+            this.TransactionCount++;
+        }
+
+        this.TransactionDepth++;
+    }
+
+    @Override
+    public void setTransactionSuccessful() throws MobileServiceLocalStoreException {
+    }
+
+    @Override
+    public void endTransaction() throws MobileServiceLocalStoreException {
+        this.TransactionDepth--;
+    }
+
     private Map<String, JsonObject> GetTable(String tableName) {
         if (!this.Tables.containsKey(tableName)) {
             this.Tables.put(tableName, new LinkedHashMap<String, JsonObject>());
@@ -0,0 +1,408 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test.helpers;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Timing helpers for the benchmark tests. The results are written to the
+ * log with the BENCHMARK_TAG tag, one line per measure, so that runs before
+ * and after a change can be compared
+ */
+public class BenchmarkUtilities {
+
+    public static final String BENCHMARK_TAG = "MobileServicesBenchmark";
+
+    /**
+     * Body of a measure, run once per iteration
+     */
+    public interface BenchmarkBody {
+        void run(int iteration) throws Throwable;
+    }
+
+    /**
+     * Runs the body for the given number of iterations, after a warm-up run
+     * of a tenth of them, and logs the elapsed time
+     *
+     * @param name       the name of the measure
+     * @param iterations the number of iterations
+     * @param body       the body of the measure
+     * @return the elapsed time in milliseconds
+     */
+    public static long measure(String name, int iterations, BenchmarkBody body) throws Throwable {
+        for (int i = 0; i < iterations / 10; i++) {
+            body.run(i);
+        }
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            body.run(i);
+        }
+
+        long elapsedMillis = Math.max((System.nanoTime() - start) / 1000000, 1);
+
+        Log.i(BENCHMARK_TAG, String.format(Locale.US, "%s: %d iterations in %d ms, %.1f per second", name, iterations, elapsedMillis,
+                iterations * 1000.0 / elapsedMillis));
+
+        return elapsedMillis;
+    }
+
+    /**
+     * Logs a value measured by a benchmark, such as a count of connections
+     *
+     * @param name  the name of the value
+     * @param value the value
+     */
+    public static void report(String name, long value) {
+        Log.i(BENCHMARK_TAG, String.format(Locale.US, "%s: %d", name, value));
+    }
+
+    /**
+     * Builds the content of the response to a request of a LocalHttpServer
+     */
+    public interface Responder {
+        /**
+         * @param method  the method of the request
+         * @param target  the decoded target of the request, with its query
+         *                string
+         * @param content the content of the request
+         * @return the JSON content of the response
+         */
+        String respond(String method, String target, String content) throws Exception;
+    }
+
+    /**
+     * A stand-in for a table of a mobile service. Reads return pages of the
+     * rows item0000000, item0000001... in id order, honoring $top, $skip and
+     * the comparisons of the id with a constant in $filter, and return an
+     * empty page past the end. Writes echo the item sent.
+     *
+     * The rows a database would scan to answer each read, the rows skipped
+     * plus the rows returned, are counted, so that the cost of a $skip
+     * against a seek past the last id does not depend on the device
+     */
+    public static class TableResponder implements Responder {
+        private static final Pattern TOP_PATTERN = Pattern.compile("\\$top=(\\d+)");
+        private static final Pattern SKIP_PATTERN = Pattern.compile("\\$skip=(\\d+)");
+        private static final Pattern ID_PATTERN = Pattern.compile("\\bid (gt|ge|lt|le) \\(?'([^']*)'");
+
+        private final int mRowCount;
+        private final AtomicLong mScannedRowCount = new AtomicLong();
+
+        public TableResponder(int rowCount) {
+            mRowCount = rowCount;
+        }
+
+        public static String getId(int index) {
+            return String.format(Locale.US, "item%07d", index);
+        }
+
+        public long getScannedRowCount() {
+            return mScannedRowCount.get();
+        }
+
+        @Override
+        public String respond(String method, String target, String content) throws Exception {
+            if (!method.equals("GET")) {
+                return content.length() > 0 ? content : "{}";
+            }
+
+            int start = 0;
+            int end = mRowCount;
+
+            Matcher idMatcher = ID_PATTERN.matcher(target);
+
+            while (idMatcher.find()) {
+                String operator = idMatcher.group(1);
+                String value = idMatcher.group(2);
+
+                if (operator.equals("gt")) {
+                    start = Math.max(start, getFirstIndexAfter(value, true));
+                } else if (operator.equals("ge")) {
+                    start = Math.max(start, getFirstIndexAfter(value, false));
+                } else if (operator.equals("lt")) {
+                    end = Math.min(end, getFirstIndexAfter(value, false));
+                } else {
+                    end = Math.min(end, getFirstIndexAfter(value, true));
+                }
+            }
+
+            int top = getParameter(target, TOP_PATTERN, 50);
+            int skip = getParameter(target, SKIP_PATTERN, 0);
+
+            int first = Math.min(start + skip, Math.max(end, start));
+            int last = Math.min(first + top, Math.max(end, start));
+
+            mScannedRowCount.addAndGet(skip + (last - first));
+
+            StringBuilder page = new StringBuilder("[");
+
+            for (int i = first; i < last; i++) {
+                if (i > first) {
+                    page.append(',');
+                }
+
+                page.append("{\"id\":\"").append(getId(i)).append("\",\"String\":\"Hey\"}");
+            }
+
+            return page.append(']').toString();
+        }
+
+        /**
+         * Gets the index of the first row whose id is greater than the value,
+         * or greater or equal to it when strictly is false
+         */
+        private int getFirstIndexAfter(String value, boolean strictly) {
+            int low = 0;
+            int high = mRowCount;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                int comparison = getId(middle).compareTo(value);
+
+                if (comparison < 0 || (strictly && comparison == 0)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+
+        private static int getParameter(String target, Pattern pattern, int defaultValue) {
+            Matcher matcher = pattern.matcher(target);
+
+            return matcher.find() ? Integer.parseInt(matcher.group(1)) : defaultValue;
+        }
+    }
+
+    /**
+     * A local HTTP/1.1 server that answers every request with the JSON
+     * content built by a responder, optionally after a delay standing for
+     * the latency of the network. It keeps connections alive and counts the
+     * requests and the accepted connections, that is the TCP handshakes made
+     * by the client
+     */
+    public static class LocalHttpServer {
+        private final ServerSocket mServerSocket;
+        private final Responder mResponder;
+        private final AtomicInteger mConnectionCount = new AtomicInteger();
+        private final AtomicInteger mRequestCount = new AtomicInteger();
+        private volatile long mLatencyMillis;
+
+        public LocalHttpServer(final String responseContent) throws IOException {
+            this(new Responder() {
+                @Override
+                public String respond(String method, String target, String content) {
+                    return responseContent;
+                }
+            });
+        }
+
+        public LocalHttpServer(Responder responder) throws IOException {
+            mResponder = responder;
+
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+            Thread acceptThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    acceptConnections();
+                }
+            });
+
+            acceptThread.setDaemon(true);
+            acceptThread.start();
+        }
+
+        public String getUrl() {
+            return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/";
+        }
+
+        public int getConnectionCount() {
+            return mConnectionCount.get();
+        }
+
+        public int getRequestCount() {
+            return mRequestCount.get();
+        }
+
+        /**
+         * Sets the delay before each response
+         *
+         * @param latencyMillis the delay in milliseconds
+         */
+        public void setLatencyMillis(long latencyMillis) {
+            mLatencyMillis = latencyMillis;
+        }
+
+        public void close() throws IOException {
+            mServerSocket.close();
+        }
+
+        private void acceptConnections() {
+            while (!mServerSocket.isClosed()) {
+                try {
+                    final Socket socket = mServerSocket.accept();
+
+                    mConnectionCount.incrementAndGet();
+
+                    Thread connectionThread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            serveConnection(socket);
+                        }
+                    });
+
+                    connectionThread.setDaemon(true);
+                    connectionThread.start();
+                } catch (IOException e) {
+                    // the server was closed
+                }
+            }
+        }
+
+        private void serveConnection(Socket socket) {
+            try {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+
+                String[] requestLine = new String[1];
+                int contentLength;
+
+                while ((contentLength = readHeaders(in, requestLine)) >= 0) {
+                    byte[] content = new byte[contentLength];
+
+                    for (int read = 0; read < contentLength; ) {
+                        int count = in.read(content, read, contentLength - read);
+
+                        if (count < 0) {
+                            return;
+                        }
+
+                        read += count;
+                    }
+
+                    mRequestCount.incrementAndGet();
+
+                    out.write(getResponse(requestLine[0], new String(content, "UTF-8")));
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // the client closed the connection
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // already closed
+                }
+            }
+        }
+
+        private byte[] getResponse(String requestLine, String content) throws IOException {
+            String[] parts = requestLine.split(" ");
+            String status = "200 OK";
+            byte[] responseContent;
+
+            try {
+                if (mLatencyMillis > 0) {
+                    Thread.sleep(mLatencyMillis);
+                }
+
+                responseContent = mResponder.respond(parts[0], URLDecoder.decode(parts.length > 1 ? parts[1] : "/", "UTF-8"), content).getBytes("UTF-8");
+            } catch (Exception e) {
+                status = "500 Internal Server Error";
+                responseContent = new byte[0];
+            }
+
+            return concat(("HTTP/1.1 " + status + "\r\nContent-Type: application/json\r\nContent-Length: " + responseContent.length + "\r\n\r\n")
+                    .getBytes("UTF-8"), responseContent);
+        }
+
+        /**
+         * Reads the request line and headers of a request, and returns the
+         * length of its content, or -1 at the end of the connection
+         */
+        private static int readHeaders(InputStream in, String[] requestLine) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int contentLength = 0;
+            boolean isRequestLine = true;
+            int c;
+
+            while ((c = in.read()) >= 0) {
+                if (c == '\r') {
+                    continue;
+                }
+
+                if (c != '\n') {
+                    line.append((char) c);
+                    continue;
+                }
+
+                if (line.length() == 0) {
+                    if (isRequestLine) {
+                        continue;
+                    }
+
+                    return contentLength;
+                }
+
+                String header = line.toString();
+
+                if (isRequestLine) {
+                    requestLine[0] = header;
+                } else if (header.toLowerCase(Locale.US).startsWith("content-length:")) {
+                    contentLength = Integer.parseInt(header.substring("content-length:".length()).trim());
+                }
+
+                isRequestLine = false;
+                line.setLength(0);
+            }
+
+            return -1;
+        }
+
+        private static byte[] concat(byte[] first, byte[] second) {
+            byte[] result = new byte[first.length + second.length];
+
+            System.arraycopy(first, 0, result, 0, first.length);
+            System.arraycopy(second, 0, result, first.length, second.length);
+
+            return result;
+        }
+    }
+}
@@ -33,6 +33,13 @@ public class SQLiteStoreTestsUtilities extends SQLiteOpenHelper {
         return u.countRows(tableName);
     }
 
+    public static long countIndexes(Context context, String dbName, String tableName) {
+        SQLiteStoreTestsUtilities u =
+                new SQLiteStoreTestsUtilities(context, dbName);
+
+        return u.countIndexes(tableName);
+    }
+
     public void dropTestTable(String tableName) {
         executeNonQuery("DROP TABLE IF EXISTS " + tableName);
     }
@@ -49,6 +56,19 @@ public class SQLiteStoreTestsUtilities extends SQLiteOpenHelper {
         return count;
     }
 
+    public long countIndexes(String tableName) {
+        SQLiteDatabase db = this.getReadableDatabase();
+
+        String countQuery = "SELECT COUNT(1) from sqlite_master WHERE type = 'index' AND tbl_name = ? AND sql IS NOT NULL";
+
+        SQLiteStatement s = db.compileStatement(countQuery);
+        s.bindString(1, tableName);
+
+        long count = s.simpleQueryForLong();
+
+        return count;
+    }
+
     public void truncate(String tableName) {
         executeNonQuery("DELETE FROM " + tableName);
     }